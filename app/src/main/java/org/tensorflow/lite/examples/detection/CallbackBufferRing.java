@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import android.hardware.Camera;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * A fixed set of preallocated NV21 callback buffers for the legacy camera API, with tracking of
+ * who holds each one. With a single buffer the camera stalls until the app hands it back; with
+ * several, the camera fills one while the app is still working on another.
+ *
+ * <p>A buffer is either queued in the camera or held by the app between {@link
+ * #onDelivered(byte[])} and {@link #release(byte[])}. Releasing a buffer twice, or one that did not
+ * come from this ring, is logged and ignored rather than queued again.
+ *
+ * <p>The app holds at most one buffer at a time, since processImage hands each frame back before
+ * the next one is delivered; the others stay queued, so the camera keeps capturing into them while
+ * the app is busy with its frame instead of waiting for it.
+ */
+public class CallbackBufferRing {
+  private static final Logger LOGGER = new Logger();
+
+  private final int count;
+  private byte[][] buffers = new byte[0][];
+  private boolean[] heldByApp = new boolean[0];
+  private Camera camera;
+
+  /** @param count Number of buffers to keep in flight, at least 1. */
+  public CallbackBufferRing(final int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Need at least one callback buffer, got " + count);
+    }
+    this.count = count;
+  }
+
+  /**
+   * Queues every buffer the app does not hold in the camera, allocating them first if the preview
+   * size changed. Buffers the app still holds are queued by {@link #release(byte[])}. The camera
+   * must already use setPreviewCallbackWithBuffer.
+   */
+  public synchronized void attach(final Camera camera, final int width, final int height) {
+    final int size = ImageUtils.getYUVByteSize(width, height);
+    if (buffers.length != count || buffers[0].length != size) {
+      LOGGER.i("Allocating %d callback buffers of %d bytes", count, size);
+      buffers = new byte[count][size];
+      heldByApp = new boolean[count];
+    }
+    this.camera = camera;
+    for (int i = 0; i < count; ++i) {
+      // The app may still be converting a buffer delivered before a camera restart.
+      if (!heldByApp[i]) {
+        camera.addCallbackBuffer(buffers[i]);
+      }
+    }
+  }
+
+  /** Forgets the camera; buffers released afterwards are not queued anywhere. */
+  public synchronized void detach() {
+    camera = null;
+  }
+
+  /** Records that the camera handed a filled buffer to the app. */
+  public synchronized void onDelivered(final byte[] buffer) {
+    final int index = indexOf(buffer);
+    if (index < 0) {
+      LOGGER.w("Camera delivered a buffer that is not from the ring");
+      return;
+    }
+    heldByApp[index] = true;
+  }
+
+  /** Hands a buffer the app is done with back to the camera. */
+  public synchronized void release(final byte[] buffer) {
+    final int index = indexOf(buffer);
+    if (index < 0 || !heldByApp[index]) {
+      LOGGER.w("Ignoring release of a buffer the app does not hold");
+      return;
+    }
+    heldByApp[index] = false;
+    if (camera != null) {
+      camera.addCallbackBuffer(buffer);
+    }
+  }
+
+  /** Returns the number of buffers currently held by the app. */
+  public synchronized int getHeldCount() {
+    int held = 0;
+    for (final boolean h : heldByApp) {
+      if (h) {
+        ++held;
+      }
+    }
+    return held;
+  }
+
+  private int indexOf(final byte[] buffer) {
+    for (int i = 0; i < buffers.length; ++i) {
+      if (buffers[i] == buffer) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -33,6 +33,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.os.Trace;
 import androidx.annotation.NonNull;
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
@@ -42,6 +43,7 @@ import androidx.appcompat.widget.Toolbar;
 
 import android.speech.tts.TextToSpeech;
 import android.util.Size;
+import android.util.SizeF;
 import android.view.Surface;
 import android.view.View;
 import android.view.ViewTreeObserver;
@@ -54,8 +56,10 @@ import android.widget.Toast;
 import java.nio.ByteBuffer;
 import java.util.Locale;
 
+import org.tensorflow.lite.examples.detection.env.CameraIntrinsics;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvResampler;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
 
 public abstract class CameraActivity extends AppCompatActivity
@@ -68,6 +72,11 @@ public abstract class CameraActivity extends AppCompatActivity
   private static final int PERMISSIONS_REQUEST = 1;
 
   private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
+  // Preview buffers for the legacy camera API: one being filled by the camera, one being
+  // resampled, and a spare so the camera never waits for the app.
+  private static final int NUM_CALLBACK_BUFFERS = 3;
+  // Assumed when the camera does not report its field of view; typical for phone main cameras.
+  private static final float DEFAULT_HORIZONTAL_VIEW_ANGLE = 60.0f;
   protected int previewWidth = 0;
   protected int previewHeight = 0;
   private boolean debug = false;
@@ -78,8 +87,17 @@ public abstract class CameraActivity extends AppCompatActivity
   private byte[][] yuvBytes = new byte[3][];
   private int[] rgbBytes = null;
   private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  // When the current frame arrived, in the SystemClock.elapsedRealtimeNanos() time base shared
+  // with sensor events.
+  private long frameTimeNs;
+  // Field of view across the frame's width in degrees, or NaN until the camera reported it.
+  private volatile float horizontalViewAngle = Float.NaN;
   private Runnable postInferenceCallback;
   private Runnable imageConverter;
+  private final FrameRateController frameRateController = new FrameRateController();
+  private final CallbackBufferRing callbackBuffers = new CallbackBufferRing(NUM_CALLBACK_BUFFERS);
 
   protected TextToSpeech tts;
   private LinearLayout bottomSheetLayout;
@@ -100,8 +118,18 @@ public abstract class CameraActivity extends AppCompatActivity
 
     setContentView(R.layout.activity_camera);
 
-    tts = new TextToSpeech(this, null);
-    tts.setLanguage(Locale.US);
+    tts =
+        new TextToSpeech(
+            this,
+            new TextToSpeech.OnInitListener() {
+              @Override
+              public void onInit(final int status) {
+                if (status == TextToSpeech.SUCCESS) {
+                  tts.setLanguage(Locale.US);
+                }
+                onTextToSpeechInit(status);
+              }
+            });
 
     if (hasPermission()) {
       setFragment();
@@ -188,13 +216,27 @@ public abstract class CameraActivity extends AppCompatActivity
     return yuvBytes[0];
   }
 
+  /** Returns when the current frame arrived, comparable to sensor event timestamps. */
+  protected long getFrameTimeNanos() {
+    return frameTimeNs;
+  }
+
+  /** Returns the pinhole model of the camera for frames of the current preview size. */
+  protected CameraIntrinsics getCameraIntrinsics() {
+    final float viewAngle = horizontalViewAngle;
+    return CameraIntrinsics.fromViewAngle(
+        previewWidth,
+        previewHeight,
+        viewAngle > 0 && viewAngle < 180 ? viewAngle : DEFAULT_HORIZONTAL_VIEW_ANGLE);
+  }
+
   /** Callback for android.hardware.Camera API */
   @Override
   public void onPreviewFrame(final byte[] bytes, final Camera camera) {
-    if (isProcessingFrame) {
-      LOGGER.w("Dropping frame!");
-      return;
-    }
+    frameRateController.onFrameArrived();
+    // Unlike Camera2 images, buffers are delivered on the thread that processes them, and
+    // processImage releases each one before returning, so no frame is ever delivered mid-process.
+    callbackBuffers.onDelivered(bytes);
 
     try {
       // Initialize the storage bitmaps once when the resolution is known.
@@ -203,14 +245,16 @@ public abstract class CameraActivity extends AppCompatActivity
         previewHeight = previewSize.height;
         previewWidth = previewSize.width;
         rgbBytes = new int[previewWidth * previewHeight];
+        horizontalViewAngle = camera.getParameters().getHorizontalViewAngle();
         onPreviewSizeChosen(new Size(previewSize.width, previewSize.height), 90);
       }
     } catch (final Exception e) {
       LOGGER.e(e, "Exception!");
+      callbackBuffers.release(bytes);
       return;
     }
 
-    isProcessingFrame = true;
+    frameTimeNs = SystemClock.elapsedRealtimeNanos();
     yuvBytes[0] = bytes;
     yRowStride = previewWidth;
 
@@ -226,8 +270,7 @@ public abstract class CameraActivity extends AppCompatActivity
         new Runnable() {
           @Override
           public void run() {
-            camera.addCallbackBuffer(bytes);
-            isProcessingFrame = false;
+            callbackBuffers.release(bytes);
           }
         };
     processImage();
@@ -249,18 +292,21 @@ public abstract class CameraActivity extends AppCompatActivity
       if (image == null) {
         return;
       }
+      frameRateController.onFrameArrived();
 
       if (isProcessingFrame) {
         image.close();
         return;
       }
       isProcessingFrame = true;
+      // Image timestamps may not share the sensors' time base, so take the arrival time.
+      frameTimeNs = SystemClock.elapsedRealtimeNanos();
       Trace.beginSection("imageAvailable");
       final Plane[] planes = image.getPlanes();
       fillBytes(planes, yuvBytes);
       yRowStride = planes[0].getRowStride();
-      final int uvRowStride = planes[1].getRowStride();
-      final int uvPixelStride = planes[1].getPixelStride();
+      uvRowStride = planes[1].getRowStride();
+      uvPixelStride = planes[1].getPixelStride();
 
       imageConverter =
           new Runnable() {
@@ -341,10 +387,13 @@ public abstract class CameraActivity extends AppCompatActivity
     super.onDestroy();
   }
 
-  protected synchronized void runInBackground(final Runnable r) {
-    if (handler != null) {
-      handler.post(r);
-    }
+  /**
+   * Posts r to the inference thread.
+   *
+   * @return Whether r was posted; false while the inference thread is stopped.
+   */
+  protected synchronized boolean runInBackground(final Runnable r) {
+    return handler != null && handler.post(r);
   }
 
   @Override
@@ -420,6 +469,16 @@ public abstract class CameraActivity extends AppCompatActivity
                 || isHardwareLevelSupported(
                     characteristics, CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_FULL);
         LOGGER.i("Camera API lv2?: %s", useCamera2API);
+
+        final float[] focalLengths =
+            characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        final SizeF sensorSize =
+            characteristics.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+        if (focalLengths != null && focalLengths.length > 0 && sensorSize != null) {
+          horizontalViewAngle =
+              (float)
+                  Math.toDegrees(2 * Math.atan(sensorSize.getWidth() / (2 * focalLengths[0])));
+        }
         return cameraId;
       }
     } catch (CameraAccessException e) {
@@ -449,10 +508,14 @@ public abstract class CameraActivity extends AppCompatActivity
               getDesiredPreviewFrameSize());
 
       camera2Fragment.setCamera(cameraId);
+      camera2Fragment.setFrameRateController(frameRateController);
       fragment = camera2Fragment;
     } else {
-      fragment =
+      LegacyCameraConnectionFragment legacyFragment =
           new LegacyCameraConnectionFragment(this, getLayoutId(), getDesiredPreviewFrameSize());
+      legacyFragment.setFrameRateController(frameRateController);
+      legacyFragment.setCallbackBufferRing(callbackBuffers);
+      fragment = legacyFragment;
     }
 
     getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
@@ -475,6 +538,33 @@ public abstract class CameraActivity extends AppCompatActivity
     return debug;
   }
 
+  /**
+   * Resamples the frame being processed straight from its YUV planes. Only valid from
+   * processImage, before readyForNextImage() hands the frame back to the camera.
+   */
+  protected void resampleFrame(
+      final YuvResampler resampler, final YuvResampler.Target[] targets) {
+    if (useCamera2API) {
+      resampler.writeYUV420(
+          targets,
+          yuvBytes[0],
+          yuvBytes[1],
+          yuvBytes[2],
+          previewWidth,
+          previewHeight,
+          yRowStride,
+          uvRowStride,
+          uvPixelStride);
+    } else {
+      resampler.writeNV21(targets, yuvBytes[0], previewWidth, previewHeight);
+    }
+  }
+
+  /** Returns the controller that adapts the camera frame rate to what the pipeline consumes. */
+  protected FrameRateController getFrameRateController() {
+    return frameRateController;
+  }
+
   protected void readyForNextImage() {
     if (postInferenceCallback != null) {
       postInferenceCallback.run();
@@ -534,6 +624,9 @@ public abstract class CameraActivity extends AppCompatActivity
     inferenceTimeTextView.setText(inferenceTime);
   }
 
+  /** Called on the main thread once the TextToSpeech engine finished initializing. */
+  protected void onTextToSpeechInit(final int status) {}
+
   protected abstract void processImage();
 
   protected abstract void onPreviewSizeChosen(final Size size, final int rotation);
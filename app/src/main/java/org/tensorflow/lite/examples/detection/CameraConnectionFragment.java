@@ -44,6 +44,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.text.TextUtils;
+import android.util.Range;
 import android.util.Size;
 import android.util.SparseIntArray;
 import android.view.LayoutInflater;
@@ -130,6 +131,32 @@ public class CameraConnectionFragment extends Fragment {
   private CaptureRequest.Builder previewRequestBuilder;
   /** {@link CaptureRequest} generated by {@link #previewRequestBuilder} */
   private CaptureRequest previewRequest;
+  /** Frame rate ranges the camera supports, as {min, max} fps. */
+  private int[][] fpsRanges;
+
+  private FrameRateController frameRateController;
+
+  /** Applies frame rate changes to the repeating preview request. Runs on the camera thread. */
+  private final FrameRateController.FpsRangeSink fpsRangeSink =
+      new FrameRateController.FpsRangeSink() {
+        @Override
+        public boolean setFpsRange(final int min, final int max) {
+          if (captureSession == null) {
+            return false;
+          }
+          previewRequestBuilder.set(
+              CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<Integer>(min, max));
+          previewRequest = previewRequestBuilder.build();
+          try {
+            captureSession.setRepeatingRequest(previewRequest, captureCallback, backgroundHandler);
+          } catch (final CameraAccessException | IllegalStateException e) {
+            // IllegalStateException: the session is being closed.
+            LOGGER.e(e, "Exception!");
+            return false;
+          }
+          return true;
+        }
+      };
   /** {@link CameraDevice.StateCallback} is called when {@link CameraDevice} changes its state. */
   private final CameraDevice.StateCallback stateCallback =
       new CameraDevice.StateCallback() {
@@ -316,6 +343,11 @@ public class CameraConnectionFragment extends Fragment {
     this.cameraId = cameraId;
   }
 
+  /** Lets the controller lower the capture frame rate while the pipeline cannot keep up. */
+  public void setFrameRateController(final FrameRateController frameRateController) {
+    this.frameRateController = frameRateController;
+  }
+
   /** Sets up member variables related to camera. */
   private void setUpCameraOutputs() {
     final Activity activity = getActivity();
@@ -328,6 +360,16 @@ public class CameraConnectionFragment extends Fragment {
 
       sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
 
+      final Range<Integer>[] availableFpsRanges =
+          characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+      if (availableFpsRanges != null) {
+        fpsRanges = new int[availableFpsRanges.length][];
+        for (int i = 0; i < availableFpsRanges.length; ++i) {
+          fpsRanges[i] =
+              new int[] {availableFpsRanges[i].getLower(), availableFpsRanges[i].getUpper()};
+        }
+      }
+
       // Danger, W.R.! Attempting to use too large a preview size could  exceed the camera
       // bus' bandwidth limitation, resulting in gorgeous previews but the storage of
       // garbage capture data.
@@ -381,6 +423,9 @@ public class CameraConnectionFragment extends Fragment {
   private void closeCamera() {
     try {
       cameraOpenCloseLock.acquire();
+      if (frameRateController != null) {
+        frameRateController.detach();
+      }
       if (null != captureSession) {
         captureSession.close();
         captureSession = null;
@@ -472,6 +517,9 @@ public class CameraConnectionFragment extends Fragment {
                 previewRequest = previewRequestBuilder.build();
                 captureSession.setRepeatingRequest(
                     previewRequest, captureCallback, backgroundHandler);
+                if (frameRateController != null) {
+                  frameRateController.attach(fpsRanges, 1, fpsRangeSink);
+                }
               } catch (final CameraAccessException e) {
                 LOGGER.e(e, "Exception!");
               }
@@ -19,10 +19,7 @@ package org.tensorflow.lite.examples.detection;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.graphics.Paint.Style;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.media.ImageReader.OnImageAvailableListener;
@@ -35,20 +32,36 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Toast;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.tensorflow.lite.examples.detection.customview.OverlayView;
 import org.tensorflow.lite.examples.detection.customview.OverlayView.DrawCallback;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.LatencyRecorder;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.LumaPyramid;
+import org.tensorflow.lite.examples.detection.env.LumaPyramidPool;
+import org.tensorflow.lite.examples.detection.env.PerceptualHash;
+import org.tensorflow.lite.examples.detection.env.VersionedReference;
+import org.tensorflow.lite.examples.detection.env.YuvResampler;
 import org.tensorflow.lite.examples.detection.tflite.Classifier;
-import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tflite.DetectorManifest;
+import org.tensorflow.lite.examples.detection.tflite.DetectorRegistry;
+import org.tensorflow.lite.examples.detection.tflite.Detections;
+import org.tensorflow.lite.examples.detection.tflite.LabelTable;
+import org.tensorflow.lite.examples.detection.tflite.ModelCache;
+import org.tensorflow.lite.examples.detection.tflite.SizePriors;
+import org.tensorflow.lite.examples.detection.tflite.SwappableDetector;
+import org.tensorflow.lite.examples.detection.tracking.GyroMotionCompensator;
+import org.tensorflow.lite.examples.detection.tracking.GyroSource;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
+import org.tensorflow.lite.examples.detection.tracking.SensorGyroSource;
+import org.tensorflow.lite.examples.detection.tracking.TrackClassifierCascade;
 import org.w3c.dom.Text;
 
 /**
@@ -58,34 +71,142 @@ import org.w3c.dom.Text;
 public class DetectorActivity extends CameraActivity implements OnImageAvailableListener {
   private static final Logger LOGGER = new Logger();
 
-  // Configuration values for the prepackaged SSD model.
-  private static final int TF_OD_API_INPUT_SIZE = 300;
-  private static final boolean TF_OD_API_IS_QUANTIZED = true;
-  private static final String TF_OD_API_MODEL_FILE = "detect.tflite";
-  private static final String TF_OD_API_LABELS_FILE = "file:///android_asset/labelmap.txt";
-  private static final DetectorMode MODE = DetectorMode.TF_OD_API;
+  // The detection model to start with.
+  private static final DetectorManifest DEFAULT_DETECTOR = DetectorRegistry.SSD_MOBILENET_V1_QUANT;
   // Minimum detection confidence to track a detection.
   private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
   private static final boolean MAINTAIN_ASPECT = false;
   private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
   private static final boolean SAVE_PREVIEW_BITMAP = false;
   private static final float TEXT_SIZE_DIP = 10;
+  // Enough for optical flow to follow motions of a few dozen pixels.
+  private static final int PYRAMID_LEVELS = 4;
+  // Obstacles nearer than this are announced after each depth inference.
+  private static final float OBSTACLE_WARNING_M = 1.5f;
+  // Largest side of the region around the tracks that every other detection zooms in on, as a
+  // fraction of the frame's. The smallest is where the region's shorter side reaches the detector
+  // input size, see configureCrop.
+  private static final float MAX_ZOOM_FRACTION = 0.7f;
+  // A model registered in DetectorRegistry under this name refines the labels of tracked objects.
+  // None ships with the app, so the second stage stays off until one is added to the assets,
+  // registered and this is set.
+  private static final boolean USE_SECONDARY_CLASSIFIER = false;
+  private static final String SECONDARY_CLASSIFIER = "secondary_classifier";
+  // Second-stage results scoring lower keep the detector's label.
+  private static final float MINIMUM_CONFIDENCE_SECONDARY = 0.5f;
+  // Views remembered, how many hash bits a returning view may differ in, and for how long their
+  // detections and their distances are reused. Distances are spoken to someone about to walk, so
+  // they are only repeated for a view seen moments ago.
+  private static final int SCENE_CACHE_SIZE = 16;
+  private static final int SCENE_MATCH_BITS = 4;
+  private static final long SCENE_DETECTIONS_MAX_AGE_MS = 10000;
+  private static final long SCENE_DEPTH_MAX_AGE_MS = 1000;
+  // Left, ahead and right, as in initiateTextToSpeech.
+  private static final String[] OBSTACLE_SECTORS = {
+    "slightly to the left of you", "in front of you", "slightly to the right of you"
+  };
   OverlayView trackingOverlay;
   private Integer sensorOrientation;
 
-  private Model depthModel;
+  private StartupOrchestrator startup;
+  // Guards the handoff of models loaded by startup tasks against onStop and onDestroy.
+  private final Object loadLock = new Object();
+  private boolean destroyed;
+  private boolean stopped;
+  // Whether a task acquiring the depth model is running.
+  private boolean depthModelLoading;
 
-  private Classifier detector;
+  private ModelFactory modelFactory;
+  // Acquired from modelFactory while the activity is started, and released in onStop so that a
+  // hidden app lets the factory evict it under memory pressure.
+  private volatile Model depthModel;
+
+  // Null until the startup task has loaded it; frames are skipped until then.
+  private volatile SwappableDetector detector;
+  // The second stage and its manifest; null unless one is registered and loaded.
+  private volatile Classifier secondaryClassifier;
+  private volatile DetectorManifest secondaryManifest;
+  // Created by processImage once the second stage is loaded; only touched there afterwards.
+  private TrackClassifierCascade classifierCascade;
+  private YuvResampler.Target[] classifierTargets;
+  private int cropSize;
+  // Whether the detector input and its transforms match the detector; only touched in
+  // processImage.
+  private boolean cropConfigured;
 
   private long lastProcessingTimeMs;
+  // Latency of the first frames after load, to check that warm-up removed the first-run spike.
+  private final LatencyRecorder detectorLatency = new LatencyRecorder("Detector", 30);
+  private final LatencyRecorder depthLatency = new LatencyRecorder("Depth", 5);
+  // Trades depth resolution, detection and depth rate, and threads for heat and battery.
+  private QualityGovernor qualityGovernor;
+  // Detector threads chosen in the UI, or 0 to use the quality level's maximum.
+  private volatile int requestedNumThreads;
+  // Frames seen since the detector last ran; only touched in processImage.
+  private int framesSinceDetection = Integer.MAX_VALUE;
+  // When depth inference last started; written in processImage, read by taps.
+  private volatile long lastDepthStartMs;
+  // Distances from box sizes, and the scale of the depth output; null if the priors are missing.
+  private volatile DistanceEstimator distanceEstimator;
+  // Nearest depth per sector of the depth output; only used on the inference thread.
+  private final ObstacleScanner obstacleScanner =
+      new ObstacleScanner(OBSTACLE_SECTORS.length, 0.05f, 0.25f);
+  // Results of recently seen views, reused when the camera sweeps back to one of them.
+  private final SceneCache sceneCache =
+      new SceneCache(
+          SCENE_CACHE_SIZE, SCENE_MATCH_BITS, SCENE_DETECTIONS_MAX_AGE_MS, SCENE_DEPTH_MAX_AGE_MS);
+  // Hash and screen orientation of the latest frame; written in processImage, read by taps.
+  private volatile long frameHash;
+  private volatile int frameOrientation;
+  // Hash of the last frame detections were produced for; only touched in processImage.
+  private long detectedHash;
+  // Hash of the last frame distances were measured on; written in processImage, read by taps.
+  private volatile long measuredHash;
+  // Only filled when SAVE_PREVIEW_BITMAP is set; model inputs are resampled from the YUV planes.
   private Bitmap rgbFrameBitmap = null;
   private Bitmap croppedBitmap = null;
-  private Bitmap cropCopyBitmap = null;
-  private Bitmap depthCroppedFrame = null;
   private Matrix frameToDepthTransform;
-  private List<Classifier.Recognition> detections;
+  // Number of bands each frame is resampled and each pyramid built in; the calling camera thread
+  // takes one band, resampleExecutor the others.
+  private int numBands;
+  // Writes the detector and depth inputs straight from the camera planes in one banded pass.
+  // Created once with resampleExecutor; only the pyramid pool depends on the preview size.
+  private YuvResampler resampler;
+  // Runs the bands of both the resampler and the pyramid builds, which never overlap.
+  private ExecutorService resampleExecutor;
+  private LumaPyramidPool pyramidPool;
+  private YuvResampler.Target detectorInput;
+  // Chooses the region around the tracks for zoomed detections.
+  private ZoomRegionSelector zoomSelector;
+  // Whether the next detection may zoom in, and whether detectorInput is set up for a zoomed
+  // region rather than the whole frame; only touched in processImage.
+  private boolean zoomNext;
+  private boolean detectorZoomed;
+  private final RectF trackedBounds = new RectF();
+  private final RectF zoomRegion = new RectF();
+  // Transforms of the zoomed region, refilled for each zoomed detection. The detection task is done
+  // with them before it clears computingDetection, which the next detection waits for.
+  private final Matrix frameToZoomCrop = new Matrix();
+  private final Matrix zoomCropToFrame = new Matrix();
+  private final Matrix zoomCropToCrop = new Matrix();
+  private YuvResampler.Target depthInput;
+  private YuvResampler.Target[] detectorTargets;
+  private YuvResampler.Target[] depthTargets;
+  private YuvResampler.Target[] detectorAndDepthTargets;
+  // Set by a tap on the UI thread, consumed by the next processImage. When the tap was answered
+  // from the scene cache, the inference only looks for obstacles.
+  private volatile boolean depthRequested;
+  private volatile boolean obstaclesOnlyRequested;
+  // Set when the depth input has been captured, cleared once its inference finished.
+  private volatile boolean depthInFlight;
+  // Latest raw detections in crop coordinates, published by the inference thread and read by
+  // onTouchEvent on the UI thread.
+  private final VersionedReference<Detections> detections =
+      new VersionedReference<Detections>(null);
+  // Working batch refilled by the detector on every frame.
+  private Detections frameResults;
 
-  private boolean computingDetection = false;
+  private volatile boolean computingDetection = false;
 
   private long timestamp = 0;
 
@@ -95,6 +216,9 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   private Matrix detectToDepthTransform;
 
   private MultiBoxTracker tracker;
+  private GyroSource gyroSource;
+  // Forwards gyroscope samples to the compensator of the current preview size, if any yet.
+  private final DelegatingGyroListener gyroListener = new DelegatingGyroListener();
 
   private BorderedText borderedText;
 
@@ -106,30 +230,12 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     borderedText = new BorderedText(textSizePx);
     borderedText.setTypeface(Typeface.MONOSPACE);
 
-    tracker = new MultiBoxTracker(this);
-
-    int cropSize = TF_OD_API_INPUT_SIZE;
-
-    try {
-      detector =
-          TFLiteObjectDetectionAPIModel.create(
-              getAssets(),
-              TF_OD_API_MODEL_FILE,
-              TF_OD_API_LABELS_FILE,
-              TF_OD_API_INPUT_SIZE,
-              TF_OD_API_IS_QUANTIZED);
-      cropSize = TF_OD_API_INPUT_SIZE;
-    } catch (final IOException e) {
-      e.printStackTrace();
-      LOGGER.e(e, "Exception initializing classifier!");
-      Toast toast =
-          Toast.makeText(
-              getApplicationContext(), "Classifier could not be initialized", Toast.LENGTH_SHORT);
-      toast.show();
-      finish();
+    // Called again on every resume. The tracker is kept, as setFrameConfiguration below drops its
+    // tracks and releases the frames it still holds; a new one would strand them in the pool.
+    if (tracker == null) {
+      tracker = new MultiBoxTracker(this);
     }
 
-    detections = new ArrayList<>();
     previewWidth = size.getWidth();
     previewHeight = size.getHeight();
 
@@ -138,6 +244,53 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
     LOGGER.i("Initializing at size %dx%d", previewWidth, previewHeight);
     rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
+
+    if (pyramidPool == null
+        || pyramidPool.getWidth() != previewWidth
+        || pyramidPool.getHeight() != previewHeight) {
+      pyramidPool =
+          new LumaPyramidPool(
+              previewWidth, previewHeight, PYRAMID_LEVELS, numBands, resampleExecutor);
+    }
+    final QualityGovernor.Level quality = qualityGovernor.getLevel();
+    configureDepth(quality.getDepthWidth(), quality.getDepthHeight());
+
+    trackingOverlay = (OverlayView) findViewById(R.id.tracking_overlay);
+    trackingOverlay.addCallback(
+        new DrawCallback() {
+          @Override
+          public void drawCallback(final Canvas canvas) {
+            tracker.draw(canvas);
+            if (isDebug()) {
+              tracker.drawDebug(canvas);
+            }
+          }
+        });
+
+    tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+    // The tracker works in frame coordinates, so the camera's own orientation applies.
+    final GyroMotionCompensator motionCompensator =
+        new GyroMotionCompensator(getCameraIntrinsics(), rotation);
+    tracker.setMotionCompensator(motionCompensator);
+    gyroListener.setDelegate(motionCompensator);
+
+    try {
+      distanceEstimator =
+          new DistanceEstimator(
+              SizePriors.load(getAssets(), SizePriors.DEFAULT_FILENAME),
+              getCameraIntrinsics(),
+              previewWidth,
+              previewHeight,
+              sensorOrientation);
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception loading object sizes!");
+    }
+  }
+
+  /** Sizes the detector input and the transforms that depend on it. */
+  private void configureCrop(final DetectorManifest manifest) {
+    cropSize = manifest.getInputSize();
+    LOGGER.i("Detector input size %dx%d", cropSize, cropSize);
     croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
 
     frameToCropTransform =
@@ -145,105 +298,340 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
             previewWidth, previewHeight,
             cropSize, cropSize,
             sensorOrientation, MAINTAIN_ASPECT);
+    configureDepthToDetectTransforms();
+
+    cropToFrameTransform = new Matrix();
+    frameToCropTransform.invert(cropToFrameTransform);
+
+    // A smaller region would have fewer pixels than the input along its shorter side and only be
+    // upsampled, adding no detail over the full frame.
+    final float minZoomFraction =
+        Math.min(1f, (float) cropSize / Math.min(previewWidth, previewHeight));
+    zoomSelector =
+        new ZoomRegionSelector(previewWidth, previewHeight, minZoomFraction, MAX_ZOOM_FRACTION);
+
+    detectorInput =
+        manifest.isQuantized()
+            ? YuvResampler.Target.uint8(cropSize, cropSize)
+            : YuvResampler.Target.float32(
+                cropSize,
+                cropSize,
+                DetectorManifest.FLOAT_INPUT_MEAN,
+                DetectorManifest.FLOAT_INPUT_STD);
+    detectorInput.setTransform(frameToCropTransform);
+    detectorZoomed = false;
+    detectorTargets = new YuvResampler.Target[] {detectorInput};
+    detectorAndDepthTargets = new YuvResampler.Target[] {detectorInput, depthInput};
+  }
+
+  /**
+   * Sizes the depth input and the transforms that depend on it, and warms the depth model up at
+   * the new size on the inference thread, ahead of the next depth inference. Only called while no
+   * depth inference is reading the input.
+   */
+  private void configureDepth(final int width, final int height) {
+    LOGGER.i("Depth input size %dx%d", width, height);
+    final Model depthModel = this.depthModel;
+    if (depthModel != null) {
+      runInBackground(() -> warmUpDepth(depthModel, width, height));
+    }
     frameToDepthTransform = ImageUtils.getTransformationMatrix(
             previewWidth, previewHeight,
-            640,448,
+            width, height,
             sensorOrientation, MAINTAIN_ASPECT);
+    depthInput = YuvResampler.Target.float32(width, height, 0f, 255f);
+    depthInput.setTransform(frameToDepthTransform);
+    depthTargets = new YuvResampler.Target[] {depthInput};
+    if (detectorInput != null) {
+      detectorAndDepthTargets = new YuvResampler.Target[] {detectorInput, depthInput};
+      configureDepthToDetectTransforms();
+    }
+  }
+
+  private static void warmUpDepth(final Model depthModel, final int width, final int height) {
+    final long warmUpMs = depthModel.warmUp(width, height);
+    if (warmUpMs > 0) {
+      LOGGER.i("Depth model warmed up at %dx%d in %dms", width, height, warmUpMs);
+    }
+  }
+
+  private void configureDepthToDetectTransforms() {
     depthToDetectTransform = ImageUtils.getTransformationMatrix(
-            640,448,
+            depthInput.getWidth(), depthInput.getHeight(),
             cropSize, cropSize,
             sensorOrientation, MAINTAIN_ASPECT);
     detectToDepthTransform = ImageUtils.getTransformationMatrix(
             cropSize, cropSize,
-            640,448,
+            depthInput.getWidth(), depthInput.getHeight(),
             sensorOrientation, MAINTAIN_ASPECT);
+  }
 
-    cropToFrameTransform = new Matrix();
-    frameToCropTransform.invert(cropToFrameTransform);
+  /** Applies the thread count chosen in the UI, capped by the current quality level. */
+  private void applyNumThreads() {
+    final int maxThreads = qualityGovernor.getLevel().getMaxThreads();
+    final int requested = requestedNumThreads;
+    final int numThreads = requested > 0 ? Math.min(requested, maxThreads) : maxThreads;
+    runInBackground(
+        () -> {
+          final SwappableDetector detector = this.detector;
+          if (detector != null) {
+            detector.setNumThreads(numThreads);
+          }
+        });
+  }
 
-    trackingOverlay = (OverlayView) findViewById(R.id.tracking_overlay);
-    trackingOverlay.addCallback(
-        new DrawCallback() {
+  @Override
+  public synchronized void onStart() {
+    super.onStart();
+    synchronized (loadLock) {
+      stopped = false;
+      if (depthModel == null && !depthModelLoading) {
+        loadDepthModel();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void onResume() {
+    super.onResume();
+    gyroSource.start(gyroListener);
+  }
+
+  @Override
+  public synchronized void onPause() {
+    gyroSource.stop();
+    super.onPause();
+  }
+
+  @Override
+  public synchronized void onStop() {
+    // The inference thread, the only user of the depth model, has already been stopped in onPause.
+    synchronized (loadLock) {
+      stopped = true;
+      if (depthModel != null) {
+        modelFactory.release(ModelFactory.GeneralModel.PYDNET_PP);
+        depthModel = null;
+      }
+    }
+    super.onStop();
+  }
+
+  @Override
+  public synchronized void onDestroy() {
+    startup.shutdown();
+    if (resampleExecutor != null) {
+      resampleExecutor.shutdown();
+    }
+    // The inference thread has already been stopped in onPause.
+    synchronized (loadLock) {
+      destroyed = true;
+      if (detector != null) {
+        detector.close();
+        detector = null;
+      }
+      if (secondaryClassifier != null) {
+        secondaryClassifier.close();
+        secondaryClassifier = null;
+      }
+    }
+    super.onDestroy();
+  }
+
+  @Override
+  protected void onCreate(Bundle savedInstanceState) {
+    // Start loading models before the layout and camera are set up so that both overlap.
+    startup =
+        new StartupOrchestrator(
+            (name, e) -> finishWithToast("Startup failed: " + name + " could not be loaded"));
+    modelFactory = ModelFactory.getInstance(this);
+    numBands = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    if (numBands > 1) {
+      resampleExecutor = Executors.newFixedThreadPool(numBands - 1);
+    }
+    resampler = new YuvResampler(numBands, resampleExecutor);
+    gyroSource = new SensorGyroSource(this);
+    qualityGovernor =
+        new QualityGovernor(
+            new QualityGovernor.DeviceConditions(this),
+            new QualityGovernor.Listener() {
+              @Override
+              public void onLevelChanged(final QualityGovernor.Level level) {
+                // The depth input is resized by processImage once no inference is using it.
+                applyNumThreads();
+              }
+            });
+    startLoading();
+    super.onCreate(savedInstanceState);
+  }
+
+  /**
+   * Loads the label table, the detector and the depth model in parallel. The camera preview runs
+   * meanwhile; processImage skips frames until the detector is available.
+   */
+  private void startLoading() {
+    startup.submit(
+        "labels",
+        new Runnable() {
           @Override
-          public void drawCallback(final Canvas canvas) {
-            tracker.draw(canvas);
-            if (isDebug()) {
-              tracker.drawDebug(canvas);
+          public void run() {
+            try {
+              LabelTable.load(getAssets(), DEFAULT_DETECTOR.getLabelFilename());
+              SizePriors.load(getAssets(), SizePriors.DEFAULT_FILENAME);
+            } catch (final IOException e) {
+              LOGGER.e(e, "Exception preloading labels!");
             }
           }
         });
+    startup.submit(
+        "detector",
+        new Runnable() {
+          @Override
+          public void run() {
+            final SwappableDetector loaded;
+            try {
+              loaded =
+                  SwappableDetector.create(
+                      getAssets(),
+                      ModelCache.getInstance(DetectorActivity.this),
+                      DEFAULT_DETECTOR);
+            } catch (final IOException e) {
+              LOGGER.e(e, "Exception initializing classifier!");
+              finishWithToast("Classifier could not be initialized");
+              return;
+            }
+            synchronized (loadLock) {
+              if (destroyed) {
+                loaded.close();
+                return;
+              }
+              detector = loaded;
+            }
+          }
+        });
+    final DetectorManifest secondary =
+        USE_SECONDARY_CLASSIFIER ? DetectorRegistry.get(SECONDARY_CLASSIFIER) : null;
+    if (secondary != null) {
+      startup.submit(
+          "secondary classifier",
+          new Runnable() {
+            @Override
+            public void run() {
+              final Classifier loaded;
+              try {
+                loaded =
+                    DetectorRegistry.create(
+                        getAssets(), ModelCache.getInstance(DetectorActivity.this), secondary);
+              } catch (final IOException | RuntimeException e) {
+                // Optional: the detector's labels are drawn without it.
+                LOGGER.e(e, "Exception loading secondary classifier, keeping detector labels");
+                return;
+              }
+              synchronized (loadLock) {
+                if (destroyed) {
+                  loaded.close();
+                  return;
+                }
+                secondaryManifest = secondary;
+                secondaryClassifier = loaded;
+              }
+            }
+          });
+    }
+    synchronized (loadLock) {
+      loadDepthModel();
+    }
+  }
 
-    tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+  /**
+   * Acquires the depth model on a loader thread, loading it if the factory evicted it while the
+   * activity was stopped. Holds loadLock.
+   */
+  private void loadDepthModel() {
+    depthModelLoading = true;
+    startup.submit(
+        "depth model",
+        new Runnable() {
+          @Override
+          public void run() {
+            final Model loaded = modelFactory.acquire(ModelFactory.GeneralModel.PYDNET_PP);
+            final QualityGovernor.Level quality = qualityGovernor.getLevel();
+            warmUpDepth(loaded, quality.getDepthWidth(), quality.getDepthHeight());
+            synchronized (loadLock) {
+              depthModelLoading = false;
+              if (destroyed || stopped) {
+                modelFactory.release(ModelFactory.GeneralModel.PYDNET_PP);
+                return;
+              }
+              depthModel = loaded;
+            }
+          }
+        });
+  }
+
+  /** Tells the user that something the app cannot run without failed to load, and closes it. */
+  private void finishWithToast(final String message) {
+    runOnUiThread(
+        () -> {
+          Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
+          finish();
+        });
   }
 
   @Override
-  protected void onCreate(Bundle savedInstanceState) {
-    super.onCreate(savedInstanceState);
-    depthModel = new ModelFactory(getApplicationContext()).getModel(0);
-    depthCroppedFrame =
-            Bitmap.createBitmap(640,448, Config.ARGB_8888);
+  protected void onTextToSpeechInit(final int status) {
+    if (status == TextToSpeech.SUCCESS) {
+      startup.markReady("TTS");
+    } else {
+      LOGGER.w("TextToSpeech failed to initialize: %d", status);
+    }
   }
 
   @Override
   public boolean onTouchEvent(MotionEvent e) {
     super.onTouchEvent(e);
-    if (detections == null || detections.size() == 0) {
+    final Detections touched = detections.get();
+    if (touched == null || touched.size() == 0) {
       return true;
     }
     switch (e.getActionMasked()) {
       case (MotionEvent.ACTION_DOWN):
 //        tts.speak("Test", TextToSpeech.QUEUE_ADD, null, "Test");
         if (croppedBitmap != null) {
-//          frameToDepthTransform
-          final Canvas canvas = new Canvas(depthCroppedFrame);
-          canvas.drawBitmap(rgbFrameBitmap, frameToDepthTransform, null);
-          float[] pixels = getPixelFromBitmap(depthCroppedFrame);
-          float[] inf = doInference(pixels);
-//          int tries = 1;
-//          float[][] runs = new float[tries][640*446];
-//          for (int i = 0; i < tries; i++) {
-//            runs[i] = doInference(pixels);
-//          }
-//          float[] inf = new float[640*446];
-//          for (int i = 0; i <640*446; i++) {
-//            for (int j = 0; j < tries; j++) {
-//              inf[i] += runs[j][i];
-//            }
-//            inf[i] /= tries;
-//          }
-          for (Classifier.Recognition r : detections) {
-            if (r.getConfidence() < .6)
-              continue;
-            RectF scaled = new RectF(r.getLocation());
-            detectToDepthTransform.mapRect(scaled);
-
-            double dtot = 0.0;
-//            LOGGER.i(Integer.toString(inf.length));
-            int tot = (int) (scaled.width()*scaled.height());
-            for (int y = (int)scaled.top; y < (int)scaled.bottom; y++) {
-              for (int x = (int)scaled.left; x < (int)scaled.right; x++) {
-                if (x >= 640 || x < 0) {
-                  tot--;
-                  continue;
-                }
-                if (y >= 448 || y < 0) {
-                  tot--;
-                  continue;
-                }
-//                if ()
-                if (y * 640 + x >= 640*448)
-                  continue;
-                dtot += inf[y*640+x];
-              }
+          // A view the camera has come back to within moments of measuring it is answered from
+          // its cached distances. A view that stayed put is measured again, like detections.
+          final long hash = frameHash;
+          final SceneCache.DepthSummary cached =
+              PerceptualHash.distance(hash, measuredHash) > SCENE_MATCH_BITS
+                  ? sceneCache.getDepthSummary(hash, frameOrientation, SystemClock.uptimeMillis())
+                  : null;
+          if (cached != null) {
+            announceDepthSummary(cached);
+            // Obstacles may have moved in since; only the latest depth output warns about them.
+            // An inference already running is recent enough.
+            if (depthModel != null && !depthInFlight) {
+              obstaclesOnlyRequested = true;
+              depthRequested = true;
             }
-            double dist = dtot / tot;
-//            LOGGER.i("[DETECTION]: "+ r.getTitle() + ": " + Double.toString(dist));
-
-              initiateTextToSpeech(scaled, r.getTitle(), (float) dist /8);
-//            tts.speak("The " + r.getTitle() + " is "
-//                    + String.format("%.2f", dist / 8) + " meters in front of you.", TextToSpeech.QUEUE_ADD, null , "objext_distance");
+            return true;
           }
-
+          // Answer from box sizes at once if depth would have to wait for loading, a running
+          // inference or the quality level's interval.
+          final boolean depthWaits =
+              depthModel == null
+                  || depthInFlight
+                  || SystemClock.uptimeMillis() - lastDepthStartMs
+                      < qualityGovernor.getLevel().getMinDepthIntervalMs();
+          if (depthWaits && announceSizeDistances(touched) > 0) {
+            return true;
+          }
+          if (depthModel == null) {
+            LOGGER.w("Depth model is still loading");
+            return true;
+          }
+          // The depth input is taken from the next camera frame in processImage, while its
+          // planes are still valid.
+          obstaclesOnlyRequested = false;
+          depthRequested = true;
         }
         return true;
       default:
@@ -251,14 +639,171 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     }
   }
 
-  private float[] doInference(float[] input){
-    return depthModel.doInference(input, 640,448);
-//    int[] coloredInference = colorMapper.applyColorMap(inference, NUMBER_THREADS);
-//    outputDisp.setPixels(coloredInference, 0, resolution.getWidth(), 0, 0, resolution.getWidth(), resolution.getHeight());
-//    outputDispResized = Bitmap.createScaledBitmap(outputDisp,  halfScreenSize.getWidth(), halfScreenSize.getHeight(), false);
-//    outputRGB = Bitmap.createScaledBitmap(croppedFrame,  halfScreenSize.getWidth(), halfScreenSize.getHeight(), false);
+  /**
+   * Runs the depth model on the input resampled from the current frame, warns about obstacles and,
+   * unless the tap was answered from the scene cache, announces the distances of the detected
+   * objects and remembers them for the frame's view. Called from processImage once the input is
+   * written.
+   */
+  private void startDepthInference(final Model model, final long sceneHash, final int orientation) {
+    final boolean measureDistances = !obstaclesOnlyRequested;
+    obstaclesOnlyRequested = false;
+    depthRequested = false;
+    depthInFlight = true;
+    if (measureDistances) {
+      measuredHash = sceneHash;
+    }
+    lastDepthStartMs = SystemClock.uptimeMillis();
+    final long startMs = lastDepthStartMs;
+    final YuvResampler.Target input = depthInput;
+    runInBackground(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              final long startTime = SystemClock.uptimeMillis();
+              final float[] inf =
+                  model.doInference(input.getFloatBuffer(), input.getWidth(), input.getHeight());
+              depthLatency.record(SystemClock.uptimeMillis() - startTime);
+              final Detections touched = measureDistances ? detections.get() : null;
+              if (touched != null) {
+                final float[] distances =
+                    announceDistances(touched, inf, input.getWidth(), input.getHeight());
+                sceneCache.putDepthSummary(
+                    sceneHash, orientation, new SceneCache.DepthSummary(touched, distances), startMs);
+              }
+              announceNearestObstacle(inf, input.getWidth(), input.getHeight());
+            } finally {
+              depthInFlight = false;
+            }
+          }
+        });
+  }
+
+  /**
+   * Announces the distances of the detected objects estimated from their box sizes.
+   *
+   * @return How many objects were announced; objects without a size prior are left out.
+   */
+  private int announceSizeDistances(final Detections touched) {
+    final DistanceEstimator estimator = distanceEstimator;
+    if (estimator == null) {
+      return 0;
+    }
+    int announced = 0;
+    final RectF location = new RectF();
+    final RectF frameBox = new RectF();
+    for (int i = 0; i < touched.size(); ++i) {
+      if (touched.getScore(i) < .6) {
+        continue;
+      }
+      touched.getLocation(i, location);
+      cropToFrameTransform.mapRect(frameBox, location);
+      final float distance = estimator.estimate(touched.getTitle(i), frameBox);
+      if (!Float.isNaN(distance)) {
+        initiateTextToSpeech(location, touched.getTitle(i), distance);
+        ++announced;
+      }
+    }
+    return announced;
+  }
+
+  /**
+   * Announces the distances of the detected objects measured on the depth output.
+   *
+   * @return The distance of each object in meters, NaN for those left out.
+   */
+  private float[] announceDistances(
+      final Detections touched, final float[] inf, final int width, final int height) {
+    final DistanceEstimator estimator = distanceEstimator;
+    final RectF frameBox = new RectF();
+    final float[] distances = new float[touched.size()];
+    Arrays.fill(distances, Float.NaN);
+    for (int i = 0; i < touched.size(); ++i) {
+      if (touched.getScore(i) < .6)
+        continue;
+      RectF scaled = new RectF();
+      touched.getLocation(i, scaled);
+      detectToDepthTransform.mapRect(scaled);
+
+      double dtot = 0.0;
+      int tot = (int) (scaled.width()*scaled.height());
+      for (int y = (int)scaled.top; y < (int)scaled.bottom; y++) {
+        for (int x = (int)scaled.left; x < (int)scaled.right; x++) {
+          if (x >= width || x < 0) {
+            tot--;
+            continue;
+          }
+          if (y >= height || y < 0) {
+            tot--;
+            continue;
+          }
+          if (y * width + x >= width*height)
+            continue;
+          dtot += inf[y*width+x];
+        }
+      }
+      double dist = dtot / tot;
+//      LOGGER.i("[DETECTION]: "+ r.getTitle() + ": " + Double.toString(dist));
+
+      float depthScale = DistanceEstimator.DEFAULT_DEPTH_SCALE;
+      if (estimator != null) {
+        // Scale with the calibration so far, then let this object's size refine it.
+        depthScale = estimator.getDepthScale();
+        touched.getLocation(i, frameBox);
+        cropToFrameTransform.mapRect(frameBox);
+        final float sizeDistance =
+            estimator.addDepthSample(touched.getTitle(i), frameBox, (float) dist);
+        LOGGER.d(
+            "%s: %.2fm from depth, %.2fm from size",
+            touched.getTitle(i), dist * depthScale, sizeDistance);
+      }
+      distances[i] = (float) dist * depthScale;
+      initiateTextToSpeech(scaled, touched.getTitle(i), distances[i]);
+    }
+    return distances;
+  }
+
+  /** Repeats the object distances of an earlier depth inference, but not its obstacle warning. */
+  private void announceDepthSummary(final SceneCache.DepthSummary summary) {
+    final Detections measured = summary.getDetections();
+    final RectF location = new RectF();
+    for (int i = 0; i < measured.size(); ++i) {
+      if (!Float.isNaN(summary.getDistance(i))) {
+        measured.getLocation(i, location);
+        initiateTextToSpeech(location, measured.getTitle(i), summary.getDistance(i));
+      }
+    }
+  }
+
+
+  /** Warns about the nearest obstacle in the depth output, detected or not, if it is close. */
+  private void announceNearestObstacle(final float[] inf, final int width, final int height) {
+    final DistanceEstimator estimator = distanceEstimator;
+    final float depthScale =
+        estimator != null ? estimator.getDepthScale() : DistanceEstimator.DEFAULT_DEPTH_SCALE;
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    obstacleScanner.scan(inf, width, height, depthScale);
+    final int sector = obstacleScanner.getNearestSector();
+    final float distance = obstacleScanner.getNearDepth(sector);
+    LOGGER.d(
+        "Obstacle scan in %dus, nearest %.2fm %s",
+        (SystemClock.elapsedRealtimeNanos() - startTime) / 1000,
+        distance,
+        OBSTACLE_SECTORS[sector]);
+    warnObstacle(sector, distance);
   }
 
+  private void warnObstacle(final int sector, final float distance) {
+    if (distance < OBSTACLE_WARNING_M) {
+      tts.speak(
+          String.format(
+              "There is an obstacle %.2f meters away, %s.", distance, OBSTACLE_SECTORS[sector]),
+          TextToSpeech.QUEUE_ADD,
+          null,
+          "Obstacle Warning");
+    }
+  }
 
 //  @Override
 //  public void onClick(View v) {
@@ -270,72 +815,180 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   protected void processImage() {
     ++timestamp;
     final long currTimestamp = timestamp;
+    // Built once per frame and shared by everything working on downsampled luma.
+    final LumaPyramidPool.Frame pyramid =
+        pyramidPool.build(getLuminance(), getLuminanceStride(), currTimestamp);
+    // Carries the boxes forward with optical flow on every frame, detected or not.
+    tracker.onFrame(pyramid, getFrameTimeNanos());
+    final long sceneHash = PerceptualHash.compute(pyramid.getPyramid());
+    final int orientation = getScreenOrientation();
+    frameHash = sceneHash;
+    frameOrientation = orientation;
+    classifyTracks(pyramid.getPyramid());
+    pyramid.release();
     trackingOverlay.postInvalidate();
 
+    final long now = SystemClock.uptimeMillis();
+    qualityGovernor.poll(now);
+    final QualityGovernor.Level quality = qualityGovernor.getLevel();
+    if (!depthInFlight
+        && (depthInput.getWidth() != quality.getDepthWidth()
+            || depthInput.getHeight() != quality.getDepthHeight())) {
+      configureDepth(quality.getDepthWidth(), quality.getDepthHeight());
+    }
+
+    // A tap asked for depth, no depth inference is using the depth input, and the quality level
+    // allows another one by now. Otherwise the request waits for a later frame.
+    final Model depthModel = this.depthModel;
+    final boolean captureDepth =
+        depthRequested
+            && !depthInFlight
+            && depthModel != null
+            && now - lastDepthStartMs >= quality.getMinDepthIntervalMs();
+
     // No mutex needed as this method is not reentrant.
-    if (computingDetection) {
+    final SwappableDetector detector = this.detector;
+    if (framesSinceDetection < Integer.MAX_VALUE) {
+      ++framesSinceDetection;
+    }
+    final boolean skippedByQuality =
+        detector != null
+            && !computingDetection
+            && framesSinceDetection < quality.getDetectionInterval();
+    if (skippedByQuality) {
+      // Skipped on purpose rather than for lack of time; keep the frame rate controller from
+      // lowering the camera rate further on top of the detection interval.
+      getFrameRateController().onFrameConsumed();
+    }
+    if (computingDetection || detector == null || skippedByQuality) {
+      // Detection is busy, still loading or skipped at this quality; keep the preview running.
+      if (captureDepth) {
+        resampleFrame(resampler, depthTargets);
+        startDepthInference(depthModel, sceneHash, orientation);
+      }
       readyForNextImage();
       return;
     }
     computingDetection = true;
-    LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread.");
-
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+    framesSinceDetection = 0;
+    getFrameRateController().onFrameConsumed();
+    // No frame is being recognized here, so a newly loaded detector can safely take over.
+    if (!cropConfigured) {
+      // The detector was loaded with its default thread count.
+      applyNumThreads();
+    }
+    final Classifier replaced = cropConfigured ? detector.cutOverIfReady() : null;
+    if (replaced != null) {
+      // Thread and NNAPI settings posted before the switch may still reach the old model; they run
+      // on the inference thread, so closing it there comes after them.
+      if (!runInBackground(replaced::close)) {
+        replaced.close();
+      }
+    }
+    if (!cropConfigured || replaced != null) {
+      configureCrop(detector.getManifest());
+      frameResults = new Detections(detector.getLabels(), 0);
+      cropConfigured = true;
+      // Cached detections are in the old detector's labels and crop coordinates.
+      sceneCache.clear();
+    }
+    // A view the camera has come back to reuses its detections instead of running the detector.
+    // A view that stayed put is detected again to keep its results fresh.
+    final Detections cachedDetections =
+        PerceptualHash.distance(sceneHash, detectedHash) > SCENE_MATCH_BITS
+            ? sceneCache.getDetections(sceneHash, orientation, now)
+            : null;
+    detectedHash = sceneHash;
 
-    readyForNextImage();
+    // Every other detection runs on a region around the tracks, seeing them at a higher
+    // resolution for the same input size; the others cover the whole frame to find new objects.
+    final boolean zoom =
+        cachedDetections == null
+            && zoomNext
+            && tracker.getTrackedBounds(trackedBounds)
+            && zoomSelector.select(trackedBounds, zoomRegion);
+    zoomNext = !zoom;
+    final Matrix detectorCropToFrame;
+    final Matrix detectorCropToCrop;
+    if (zoom) {
+      ImageUtils.getTransformationMatrix(
+          (int) zoomRegion.width(), (int) zoomRegion.height(),
+          cropSize, cropSize,
+          sensorOrientation, MAINTAIN_ASPECT,
+          frameToZoomCrop);
+      frameToZoomCrop.preTranslate(-zoomRegion.left, -zoomRegion.top);
+      detectorInput.setTransform(frameToZoomCrop);
+      detectorZoomed = true;
+      frameToZoomCrop.invert(zoomCropToFrame);
+      detectorCropToFrame = zoomCropToFrame;
+      // Published detections stay in full-frame crop coordinates for the taps.
+      zoomCropToCrop.set(zoomCropToFrame);
+      zoomCropToCrop.postConcat(frameToCropTransform);
+      detectorCropToCrop = zoomCropToCrop;
+      LOGGER.i("Zooming in for image %d", currTimestamp);
+    } else {
+      if (detectorZoomed) {
+        detectorInput.setTransform(frameToCropTransform);
+        detectorZoomed = false;
+      }
+      detectorCropToFrame = cropToFrameTransform;
+      detectorCropToCrop = null;
+    }
+    LOGGER.i("Preparing image %d for detection in bg thread.", currTimestamp);
 
-    final Canvas canvas = new Canvas(croppedBitmap);
-    canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+    if (cachedDetections == null) {
+      resampleFrame(resampler, captureDepth ? detectorAndDepthTargets : detectorTargets);
+    } else if (captureDepth) {
+      resampleFrame(resampler, depthTargets);
+    }
     // For examining the actual TF input.
     if (SAVE_PREVIEW_BITMAP) {
+      rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+      final Canvas canvas = new Canvas(croppedBitmap);
+      canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
       ImageUtils.saveBitmap(croppedBitmap);
     }
 
+    readyForNextImage();
+
+    final YuvResampler.Target input = detectorInput;
+
     runInBackground(
         new Runnable() {
           @Override
           public void run() {
-            LOGGER.i("Running detection on image " + currTimestamp);
-            final long startTime = SystemClock.uptimeMillis();
-            final List<Classifier.Recognition> results = detector.recognizeImage(croppedBitmap);
-            lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-
-            cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
-            final Canvas canvas = new Canvas(cropCopyBitmap);
-            final Paint paint = new Paint();
-            paint.setColor(Color.RED);
-            paint.setStyle(Style.STROKE);
-            paint.setStrokeWidth(2.0f);
-
-            float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-            switch (MODE) {
-              case TF_OD_API:
-                minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                break;
+            final Detections results = frameResults;
+            if (cachedDetections != null) {
+              LOGGER.i("Reusing cached detections for image %d", currTimestamp);
+              results.copyFrom(cachedDetections);
+            } else {
+              LOGGER.i("Running detection on image %d", currTimestamp);
+              final long startTime = SystemClock.uptimeMillis();
+              detector.recognizeImage(input.getBuffer(), results);
+              lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
+              detectorLatency.record(lastProcessingTimeMs);
             }
 
-            final List<Classifier.Recognition> mappedRecognitions =
-                new LinkedList<Classifier.Recognition>();
+            float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
 
-            if (results != null)
-                detections = new ArrayList<>(results);
+            final Detections snapshot = new Detections(results.getLabels(), results.size());
+            snapshot.copyFrom(results);
+            if (detectorCropToCrop != null) {
+              snapshot.mapBoxes(detectorCropToCrop);
+            }
+            detections.publish(currTimestamp, snapshot);
+            // Zoomed results only cover part of the view.
+            if (cachedDetections == null && !zoom) {
+              sceneCache.putDetections(sceneHash, orientation, snapshot, now);
+            }
 
             minimumConfidence = .6f;
-            for (final Classifier.Recognition result : results) {
-              final RectF location = result.getLocation();
-              if (location != null && result.getConfidence() >= minimumConfidence) {
-                canvas.drawRect(location, paint);
+            results.retainAboveScore(minimumConfidence);
+            results.mapBoxes(detectorCropToFrame);
 
-                cropToFrameTransform.mapRect(location);
-
-                result.setLocation(location);
-                mappedRecognitions.add(result);
-
-              }
-            }
-
-            tracker.trackResults(mappedRecognitions, currTimestamp);
+            tracker.trackResults(results, currTimestamp);
             trackingOverlay.postInvalidate();
+            startup.markFirstDetection();
 
             computingDetection = false;
 
@@ -344,12 +997,52 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
                   @Override
                   public void run() {
                     showFrameInfo(previewWidth + "x" + previewHeight);
-                    showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
+                    showCropInfo(input.getWidth() + "x" + input.getHeight());
                     showInference(lastProcessingTimeMs + "ms");
                   }
                 });
           }
         });
+    // Queued after the detection so a tap does not delay the next set of boxes.
+    if (captureDepth) {
+      startDepthInference(depthModel, sceneHash, orientation);
+    }
+  }
+
+  /**
+   * Runs the second stage on a track that is new or has changed, if any and if the second stage
+   * is idle, so its cost follows new objects rather than frames.
+   */
+  private void classifyTracks(final LumaPyramid pyramid) {
+    if (classifierCascade == null) {
+      final Classifier classifier = secondaryClassifier;
+      if (classifier == null) {
+        return;
+      }
+      final DetectorManifest manifest = secondaryManifest;
+      final int size = manifest.getInputSize();
+      final YuvResampler.Target input =
+          manifest.isQuantized()
+              ? YuvResampler.Target.uint8(size, size)
+              : YuvResampler.Target.float32(
+                  size, size, DetectorManifest.FLOAT_INPUT_MEAN, DetectorManifest.FLOAT_INPUT_STD);
+      classifierCascade =
+          new TrackClassifierCascade(
+              classifier, input, MINIMUM_CONFIDENCE_SECONDARY, sensorOrientation);
+      classifierTargets = new YuvResampler.Target[] {input};
+      tracker.setTrackLabels(classifierCascade);
+    }
+    if (classifierCascade.prepare(tracker, pyramid)) {
+      resampleFrame(resampler, classifierTargets);
+      final TrackClassifierCascade cascade = classifierCascade;
+      runInBackground(
+          new Runnable() {
+            @Override
+            public void run() {
+              cascade.classify();
+            }
+          });
+    }
   }
 
   @Override
@@ -362,37 +1055,38 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     return DESIRED_PREVIEW_SIZE;
   }
 
-  // Which detection model to use: by default uses Tensorflow Object Detection API frozen
-  // checkpoints.
-  private enum DetectorMode {
-    TF_OD_API;
-  }
-
   @Override
   protected void setUseNNAPI(final boolean isChecked) {
-    runInBackground(() -> detector.setUseNNAPI(isChecked));
+    runInBackground(
+        () -> {
+          final SwappableDetector detector = this.detector;
+          if (detector != null) {
+            detector.setUseNNAPI(isChecked);
+          }
+        });
   }
 
   @Override
   protected void setNumThreads(final int numThreads) {
-    runInBackground(() -> detector.setNumThreads(numThreads));
+    requestedNumThreads = numThreads;
+    applyNumThreads();
   }
 
-  public static float[] getPixelFromBitmap(Bitmap frame){
-    int numberOfPixels = frame.getWidth()*frame.getHeight()*3;
-    int[] pixels = new int[frame.getWidth()*frame.getHeight()];
-    frame.getPixels(pixels, 0, frame.getWidth(), 0, 0, frame.getWidth(), frame.getHeight());
+  /** A gyroscope listener whose target can be replaced when the preview size changes. */
+  private static class DelegatingGyroListener implements GyroSource.Listener {
+    private volatile GyroSource.Listener delegate;
 
-    float[] output = new float[numberOfPixels];
+    void setDelegate(final GyroSource.Listener delegate) {
+      this.delegate = delegate;
+    }
 
-    int i = 0;
-    for (int pixel : pixels) {
-      output[i * 3] = Color.red(pixel) /(float)255.;
-      output[i * 3 + 1] = Color.green(pixel) / (float)255.;
-      output[i * 3+2] = Color.blue(pixel) / (float)255.;
-      i+=1;
+    @Override
+    public void onGyroSample(final long timestampNs, final float x, final float y, final float z) {
+      final GyroSource.Listener delegate = this.delegate;
+      if (delegate != null) {
+        delegate.onGyroSample(timestampNs, x, y, z);
+      }
     }
-    return output;
   }
 
 //  private void doDepthInference
@@ -401,16 +1095,17 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     // tts.setLanguage(Locale.US);
     // System.out.println(location);
 
+    startup.markFirstAnnouncement();
     int locationMiddle = (int) (location.left + location.width() / 2);
-    LOGGER.i("[TEST] " + locationMiddle);
+    LOGGER.d("Announcing object centered at x=%d", locationMiddle);
    // int objectWidth = (int) Math.abs(location.right - location.left);
    // int objectHeight = (int) Math.abs(location.top - location.bottom);
 
-   if (locationMiddle <= TF_OD_API_INPUT_SIZE / 3.0){
+   if (locationMiddle <= cropSize / 3.0){
      tts.speak(
              String.format("The %s is %.2f meters away, slightly to the left of you.", objectName, distance),
              TextToSpeech.QUEUE_ADD, null, "Object Annotation");
-   } else if (locationMiddle <= TF_OD_API_INPUT_SIZE * 2.0 / 3.0 ) {
+   } else if (locationMiddle <= cropSize * 2.0 / 3.0 ) {
      tts.speak(
              String.format("The %s is %.2f meters in front of you.", objectName, distance),
              TextToSpeech.QUEUE_ADD, null,"Object Annotation");
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import android.graphics.RectF;
+import java.util.Arrays;
+import org.tensorflow.lite.examples.detection.env.CameraIntrinsics;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.tflite.SizePriors;
+
+/**
+ * Estimates the distance of a detected object from the size of its box, the typical physical size
+ * of its class and the camera's focal length, Z = f * H / h. This costs next to nothing, so it
+ * answers at once when no depth inference can run, and it calibrates the scale of the depth
+ * model's output, which is only known up to a factor.
+ *
+ * <p>Boxes are given in frame coordinates. A class's height is upright in the world, which is
+ * across the frame's width when the sensor is rotated by 90 or 270 degrees. A box cut off by the
+ * frame edge along one dimension is measured along the other; one cut off along both gives no
+ * estimate.
+ *
+ * <p>The depth scale is the median of the ratios between size-based distances and raw depths of
+ * recent samples. Once a few samples are in, a sample off from the median by more than a factor
+ * of {@link #MAX_SAMPLE_DISAGREEMENT} is dropped as disagreeing, e.g. a child taken for an adult.
+ * Thread-safe.
+ */
+public class DistanceEstimator {
+  private static final Logger LOGGER = new Logger();
+
+  // Scale of the depth model's output before any calibration.
+  public static final float DEFAULT_DEPTH_SCALE = 1 / 8f;
+
+  private static final int MAX_SAMPLES = 32;
+  private static final int MIN_SAMPLES = 5;
+  private static final float MAX_SAMPLE_DISAGREEMENT = 2f;
+  // Scale changes below this fraction are not logged.
+  private static final float LOG_SCALE_CHANGE = 0.1f;
+  // Boxes within this many pixels of the frame edge are taken as cut off.
+  private static final float EDGE_MARGIN = 2f;
+
+  private final SizePriors priors;
+  private final float focalLength;
+  private final int frameWidth;
+  private final int frameHeight;
+  private final boolean rotated;
+
+  private final float[] ratios = new float[MAX_SAMPLES];
+  private final float[] sorted = new float[MAX_SAMPLES];
+  private int numRatios;
+  private int nextRatio;
+  private float depthScale = DEFAULT_DEPTH_SCALE;
+  private float loggedDepthScale = DEFAULT_DEPTH_SCALE;
+
+  /**
+   * @param priors Typical sizes of the detector's classes.
+   * @param intrinsics The camera in frame coordinates.
+   * @param frameWidth Frame width in pixels.
+   * @param frameHeight Frame height in pixels.
+   * @param sensorOrientation Rotation of the frame relative to the upright screen, in degrees.
+   */
+  public DistanceEstimator(
+      final SizePriors priors,
+      final CameraIntrinsics intrinsics,
+      final int frameWidth,
+      final int frameHeight,
+      final int sensorOrientation) {
+    this.priors = priors;
+    this.focalLength = intrinsics.getFocalLength();
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.rotated = Math.abs(sensorOrientation) % 180 == 90;
+  }
+
+  /**
+   * Returns the distance to an object in meters, or NaN if its class has no size prior or its box
+   * is cut off along both dimensions.
+   */
+  public float estimate(final String label, final RectF frameBox) {
+    final float height = priors.getHeight(label);
+    final float width = priors.getWidth(label);
+    if (Float.isNaN(height) || Float.isNaN(width)) {
+      return Float.NaN;
+    }
+    final boolean cutX = frameBox.left <= EDGE_MARGIN || frameBox.right >= frameWidth - EDGE_MARGIN;
+    final boolean cutY =
+        frameBox.top <= EDGE_MARGIN || frameBox.bottom >= frameHeight - EDGE_MARGIN;
+    // The upright height lies along frame x when rotated, along frame y otherwise.
+    final boolean heightCut = rotated ? cutX : cutY;
+    final boolean widthCut = rotated ? cutY : cutX;
+    final float heightPx = rotated ? frameBox.width() : frameBox.height();
+    final float widthPx = rotated ? frameBox.height() : frameBox.width();
+    if (!heightCut && heightPx > 0) {
+      return focalLength * height / heightPx;
+    }
+    if (!widthCut && widthPx > 0) {
+      return focalLength * width / widthPx;
+    }
+    return Float.NaN;
+  }
+
+  /** Returns the factor turning the depth model's raw output into meters. */
+  public synchronized float getDepthScale() {
+    return depthScale;
+  }
+
+  /**
+   * Feeds the raw depth measured over an object's box into the calibration.
+   *
+   * @return The size-based distance of the object, or NaN if it had none.
+   */
+  public float addDepthSample(final String label, final RectF frameBox, final float rawDepth) {
+    final float distance = estimate(label, frameBox);
+    if (Float.isNaN(distance) || !(rawDepth > 0)) {
+      return distance;
+    }
+    final float ratio = distance / rawDepth;
+    synchronized (this) {
+      if (numRatios >= MIN_SAMPLES
+          && (ratio > depthScale * MAX_SAMPLE_DISAGREEMENT
+              || ratio < depthScale / MAX_SAMPLE_DISAGREEMENT)) {
+        LOGGER.d("Dropped depth sample of %s: ratio %.4f, scale %.4f", label, ratio, depthScale);
+        return distance;
+      }
+      ratios[nextRatio] = ratio;
+      nextRatio = (nextRatio + 1) % MAX_SAMPLES;
+      numRatios = Math.min(numRatios + 1, MAX_SAMPLES);
+      if (numRatios >= MIN_SAMPLES) {
+        System.arraycopy(ratios, 0, sorted, 0, numRatios);
+        Arrays.sort(sorted, 0, numRatios);
+        depthScale =
+            numRatios % 2 == 1
+                ? sorted[numRatios / 2]
+                : (sorted[numRatios / 2 - 1] + sorted[numRatios / 2]) / 2;
+        if (Math.abs(depthScale - loggedDepthScale) > LOG_SCALE_CHANGE * loggedDepthScale) {
+          LOGGER.i(
+              "Depth scale %.4f -> %.4f from %d samples", loggedDepthScale, depthScale, numRatios);
+          loggedDepthScale = depthScale;
+        }
+      }
+    }
+    return distance;
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import android.os.SystemClock;
+import java.util.Arrays;
+import java.util.Comparator;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Lowers the camera frame rate when the pipeline cannot keep up, and raises it again once it can.
+ *
+ * <p>Every frame delivered by the camera is reported with {@link #onFrameArrived()}, every frame
+ * the pipeline actually runs inference on with {@link #onFrameConsumed()}. Once per window the
+ * controller compares the two. If most frames were thrown away, it switches to the slowest
+ * supported frame rate range that still covers the consumed rate with some headroom; if nearly
+ * nothing was dropped, it steps up to the next faster range. A change needs the same verdict in
+ * consecutive windows so that a single slow frame does not make the rate oscillate.
+ *
+ * <p>All methods must be called from the camera callback thread.
+ */
+public class FrameRateController {
+  private static final Logger LOGGER = new Logger();
+
+  private static final long WINDOW_MS = 2000;
+  // Drop ratios above which the rate is lowered and below which it is raised.
+  private static final float LOWER_ABOVE_DROP_RATIO = 0.5f;
+  private static final float RAISE_BELOW_DROP_RATIO = 0.1f;
+  // The camera should deliver this much faster than the pipeline consumes.
+  private static final float HEADROOM = 1.5f;
+  private static final int WINDOWS_TO_CONFIRM = 2;
+
+  /** Applies a frame rate range to the camera, in the units the camera reported them in. */
+  public interface FpsRangeSink {
+    /** Returns whether the camera took the range; one it rejects is not chosen again. */
+    boolean setFpsRange(int min, int max);
+  }
+
+  private FpsRangeSink sink;
+  // Supported {min, max} ranges in camera units, sorted by max, then by min.
+  private int[][] ranges;
+  // Ranges the camera refused to apply, by index into ranges.
+  private boolean[] rejected;
+  private int unitsPerFps = 1;
+  private int current = -1;
+
+  private long windowStartMs;
+  private int arrived;
+  private int consumed;
+  private int pendingChange;
+  private int pendingWindows;
+
+  /**
+   * Starts controlling a camera. The camera is assumed to run at its fastest range until told
+   * otherwise.
+   *
+   * @param supportedRanges The {min, max} frame rate ranges the camera supports.
+   * @param unitsPerFps How many camera units make one frame per second, e.g. 1000 for the legacy
+   *     camera API.
+   * @param sink Applies a chosen range.
+   */
+  public void attach(
+      final int[][] supportedRanges, final int unitsPerFps, final FpsRangeSink sink) {
+    if (supportedRanges == null || supportedRanges.length == 0) {
+      LOGGER.w("No frame rate ranges reported, frame rate stays fixed");
+      this.sink = null;
+      return;
+    }
+    ranges = supportedRanges.clone();
+    Arrays.sort(
+        ranges,
+        new Comparator<int[]>() {
+          @Override
+          public int compare(final int[] lhs, final int[] rhs) {
+            return lhs[1] != rhs[1]
+                ? Integer.compare(lhs[1], rhs[1])
+                : Integer.compare(lhs[0], rhs[0]);
+          }
+        });
+    rejected = new boolean[ranges.length];
+    this.unitsPerFps = unitsPerFps;
+    this.sink = sink;
+    current = ranges.length - 1;
+    resetWindow(SystemClock.uptimeMillis());
+    pendingWindows = 0;
+  }
+
+  /** Stops controlling the camera, e.g. when it is closed. */
+  public void detach() {
+    sink = null;
+  }
+
+  /** Counts a frame delivered by the camera, whether or not it is processed. */
+  public void onFrameArrived() {
+    if (sink == null) {
+      return;
+    }
+    ++arrived;
+    final long now = SystemClock.uptimeMillis();
+    final long elapsedMs = now - windowStartMs;
+    if (elapsedMs >= WINDOW_MS) {
+      evaluate(elapsedMs);
+      resetWindow(now);
+    }
+  }
+
+  /** Counts a frame the pipeline ran inference on. */
+  public void onFrameConsumed() {
+    ++consumed;
+  }
+
+  private void resetWindow(final long now) {
+    windowStartMs = now;
+    arrived = 0;
+    consumed = 0;
+  }
+
+  private void evaluate(final long elapsedMs) {
+    final float dropRatio = 1f - (float) consumed / arrived;
+    final float consumedFps = consumed * 1000f / elapsedMs;
+    int target = current;
+    if (dropRatio > LOWER_ABOVE_DROP_RATIO) {
+      target = slowestCovering(consumedFps * HEADROOM * unitsPerFps);
+    } else if (dropRatio < RAISE_BELOW_DROP_RATIO) {
+      target = nextFaster();
+    }
+    if (target == current) {
+      pendingWindows = 0;
+      return;
+    }
+    if (target != pendingChange) {
+      pendingChange = target;
+      pendingWindows = 0;
+    }
+    if (++pendingWindows < WINDOWS_TO_CONFIRM) {
+      return;
+    }
+    pendingWindows = 0;
+    if (!sink.setFpsRange(ranges[target][0], ranges[target][1])) {
+      LOGGER.w(
+          "Camera rejected frame rate %s, staying at %s", formatRange(target), formatRange(current));
+      rejected[target] = true;
+      return;
+    }
+    LOGGER.i(
+        "Frame rate %s -> %s: consuming %.1f fps, dropping %.0f%%",
+        formatRange(current),
+        formatRange(target),
+        consumedFps,
+        dropRatio * 100);
+    current = target;
+  }
+
+  /**
+   * Returns the index of the range with the lowest max that is at least the given rate, or of the
+   * fastest range if none is. Rejected ranges are skipped.
+   */
+  private int slowestCovering(final float rate) {
+    for (int i = 0; i < ranges.length; ++i) {
+      if (ranges[i][1] >= rate && !rejected[i]) {
+        return i;
+      }
+    }
+    for (int i = ranges.length - 1; i > current; --i) {
+      if (!rejected[i]) {
+        return i;
+      }
+    }
+    return current;
+  }
+
+  /** Returns the index of the next faster range that was not rejected, or the current one. */
+  private int nextFaster() {
+    for (int i = current + 1; i < ranges.length; ++i) {
+      if (!rejected[i]) {
+        return i;
+      }
+    }
+    return current;
+  }
+
+  private String formatRange(final int index) {
+    return "["
+        + (float) ranges[index][0] / unitsPerFps
+        + ", "
+        + (float) ranges[index][1] / unitsPerFps
+        + "]";
+  }
+}
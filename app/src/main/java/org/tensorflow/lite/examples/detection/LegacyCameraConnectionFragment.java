@@ -33,7 +33,6 @@ import android.view.ViewGroup;
 import java.io.IOException;
 import java.util.List;
 import org.tensorflow.lite.examples.detection.customview.AutoFitTextureView;
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
 
 public class LegacyCameraConnectionFragment extends Fragment {
@@ -49,6 +48,28 @@ public class LegacyCameraConnectionFragment extends Fragment {
   }
 
   private Camera camera;
+  private FrameRateController frameRateController;
+  private CallbackBufferRing callbackBuffers;
+  /** Applies frame rate changes to the open camera. Runs on the preview callback thread. */
+  private final FrameRateController.FpsRangeSink fpsRangeSink =
+      new FrameRateController.FpsRangeSink() {
+        @Override
+        public boolean setFpsRange(final int min, final int max) {
+          if (camera == null) {
+            return false;
+          }
+          final Camera.Parameters parameters = camera.getParameters();
+          parameters.setPreviewFpsRange(min, max);
+          try {
+            camera.setParameters(parameters);
+          } catch (final RuntimeException e) {
+            // Some devices list ranges they then refuse to set.
+            LOGGER.e(e, "Camera rejected preview fps range [%d, %d]", min, max);
+            return false;
+          }
+          return true;
+        }
+      };
   private Camera.PreviewCallback imageListener;
   private Size desiredSize;
   /** The layout identifier to inflate for this Fragment. */
@@ -94,11 +115,28 @@ public class LegacyCameraConnectionFragment extends Fragment {
 
           camera.setPreviewCallbackWithBuffer(imageListener);
           Camera.Size s = camera.getParameters().getPreviewSize();
-          camera.addCallbackBuffer(new byte[ImageUtils.getYUVByteSize(s.height, s.width)]);
+          if (callbackBuffers == null) {
+            callbackBuffers = new CallbackBufferRing(1);
+          }
+          callbackBuffers.attach(camera, s.width, s.height);
 
           textureView.setAspectRatio(s.height, s.width);
 
           camera.startPreview();
+
+          if (frameRateController != null) {
+            // Reported in frames per 1000 seconds.
+            final List<int[]> supported = camera.getParameters().getSupportedPreviewFpsRange();
+            final int[][] fpsRanges = new int[supported == null ? 0 : supported.size()][];
+            for (int r = 0; r < fpsRanges.length; ++r) {
+              fpsRanges[r] =
+                  new int[] {
+                    supported.get(r)[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                    supported.get(r)[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]
+                  };
+            }
+            frameRateController.attach(fpsRanges, 1000, fpsRangeSink);
+          }
         }
 
         @Override
@@ -123,6 +161,19 @@ public class LegacyCameraConnectionFragment extends Fragment {
     this.desiredSize = desiredSize;
   }
 
+  /** Lets the controller lower the preview frame rate while the pipeline cannot keep up. */
+  public void setFrameRateController(final FrameRateController frameRateController) {
+    this.frameRateController = frameRateController;
+  }
+
+  /**
+   * Sets the preview buffers handed to the camera. The preview callback must return each delivered
+   * buffer through the same ring. Without one, a single buffer is used.
+   */
+  public void setCallbackBufferRing(final CallbackBufferRing callbackBuffers) {
+    this.callbackBuffers = callbackBuffers;
+  }
+
   @Override
   public View onCreateView(
       final LayoutInflater inflater, final ViewGroup container, final Bundle savedInstanceState) {
@@ -180,6 +231,12 @@ public class LegacyCameraConnectionFragment extends Fragment {
   }
 
   protected void stopCamera() {
+    if (frameRateController != null) {
+      frameRateController.detach();
+    }
+    if (callbackBuffers != null) {
+      callbackBuffers.detach();
+    }
     if (camera != null) {
       camera.stopPreview();
       camera.setPreviewCallback(null);
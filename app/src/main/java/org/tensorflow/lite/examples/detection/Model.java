@@ -1,10 +1,13 @@
 package org.tensorflow.lite.examples.detection;
 
 import android.content.Context;
+import android.os.SystemClock;
 
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import org.tensorflow.contrib.android.TensorFlowInferenceInterface;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -15,6 +18,8 @@ public class Model {
     protected String name;
     protected TensorFlowInferenceInterface inferenceEngine;
     protected HashMap<String, float[]> results;
+    // Input sizes already run once, as width << 32 | height.
+    private final HashSet<Long> warmedUpSizes = new HashSet<>();
 
     public Model(Context context, ModelFactory.GeneralModel generalModel, String name, String checkpoint){
         this.generalModel = generalModel;
@@ -36,4 +41,37 @@ public class Model {
         return output;
     }
 
+    /** Same as {@link #doInference(float[], int, int)} for an input already in a FloatBuffer. */
+    public float[] doInference(FloatBuffer input, int width, int height){
+        float[] output = new float[height*width];
+
+        this.inferenceEngine.feed(
+                "im0:0", input, 1,
+                height, width, 3);
+        this.inferenceEngine.run(new String[]{"PSD/resize_images/ResizeBilinear:0"});
+        this.inferenceEngine.fetch("PSD/resize_images/ResizeBilinear:0", output);
+        return output;
+    }
+
+    /**
+     * Runs one inference on a blank input so that the first real call at this size does not pay
+     * for tensor allocation and graph initialization. Does nothing if the model has already been
+     * warmed up at this size; every new input size allocates its tensors again.
+     *
+     * @return the time the warm-up run took in ms, or 0 if it was skipped.
+     */
+    public synchronized long warmUp(int width, int height){
+        if (!warmedUpSizes.add((long) width << 32 | height)) {
+            return 0;
+        }
+        final long startTime = SystemClock.uptimeMillis();
+        doInference(new float[height*width*3], width, height);
+        return SystemClock.uptimeMillis() - startTime;
+    }
+
+    /** Releases the native session. The model cannot be used afterwards. */
+    public void close(){
+        this.inferenceEngine.close();
+    }
+
 }
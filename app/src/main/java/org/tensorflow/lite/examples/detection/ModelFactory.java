@@ -1,27 +1,106 @@
 package org.tensorflow.lite.examples.detection;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 
-import java.util.ArrayList;
-import java.util.List;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Process-wide cache of the depth models. A model is loaded the first time it is acquired and
+ * stays loaded while any activity holds a reference, and after the last reference is released
+ * until the system asks the app to trim memory. An activity recreated on rotation therefore gets
+ * the already loaded graph back instead of reloading it from assets.
+ */
+public class ModelFactory implements ComponentCallbacks2 {
+    private static final Logger LOGGER = new Logger();
+
+    private static ModelFactory instance;
 
-public class ModelFactory {
     private final Context context;
 
-    private List<Model> models;
+    private final Model[] models;
+    private final int[] refCounts;
 
     public enum GeneralModel{
         PYDNET_PP
     }
 
-    public ModelFactory(Context context){
+    private ModelFactory(Context context){
         this.context = context;
-        this.models = new ArrayList<>();
-        models.add(createPydnetPP());
+        this.models = new Model[GeneralModel.values().length];
+        this.refCounts = new int[GeneralModel.values().length];
+    }
+
+    /** Returns the shared factory, creating it on first use. */
+    public static synchronized ModelFactory getInstance(Context context){
+        if (instance == null) {
+            final Context appContext = context.getApplicationContext();
+            instance = new ModelFactory(appContext);
+            appContext.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the requested model, loading it if it is not cached, and takes a reference on it.
+     * Every call must be balanced by {@link #release(GeneralModel)}.
+     */
+    public synchronized Model acquire(GeneralModel generalModel){
+        final int index = generalModel.ordinal();
+        if (models[index] == null) {
+            LOGGER.i("Loading %s", generalModel);
+            models[index] = createModel(generalModel);
+        }
+        refCounts[index]++;
+        return models[index];
+    }
+
+    /** Drops a reference taken by {@link #acquire(GeneralModel)}. The model stays cached. */
+    public synchronized void release(GeneralModel generalModel){
+        final int index = generalModel.ordinal();
+        if (refCounts[index] == 0) {
+            LOGGER.w("Unbalanced release of %s", generalModel);
+            return;
+        }
+        refCounts[index]--;
     }
 
-    public Model getModel(int index ){
-        return models.get(index);
+    /** Closes every cached model that no activity currently references. */
+    public synchronized void evictUnused(){
+        for (int i = 0; i < models.length; i++) {
+            if (models[i] != null && refCounts[i] == 0) {
+                LOGGER.i("Evicting %s", GeneralModel.values()[i]);
+                models[i].close();
+                models[i] = null;
+            }
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level){
+        // Keep the cache across configuration changes, but give the memory back once the UI is
+        // hidden or the system is running low.
+        if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictUnused();
+        }
+    }
+
+    @Override
+    public void onLowMemory(){
+        evictUnused();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig){}
+
+    private Model createModel(GeneralModel generalModel){
+        switch (generalModel) {
+            case PYDNET_PP:
+                return createPydnetPP();
+            default:
+                throw new IllegalArgumentException("Unknown model " + generalModel);
+        }
     }
 
     private Model createPydnetPP(){
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import java.util.Arrays;
+
+/**
+ * Finds the nearest obstacle in each of a few column bands ("sectors") of a depth map, whatever
+ * the object is, so that walls, poles and the like can be announced as well as detected objects.
+ *
+ * <p>One pass over the depth map keeps, per sector, the minimum depth and a histogram of depths
+ * with fixed bins over [0, {@link #MAX_DEPTH_M}) meters, the last bin taking everything farther.
+ * The near percentile read from the histogram is the robust figure to act on; the minimum follows
+ * single noisy pixels. The bottom rows of the map are left out, as they mostly show the floor in
+ * front of the user's feet. The histograms are reused across scans, so a scan allocates nothing.
+ *
+ * <p>Not thread-safe; scan and read the results on one thread.
+ */
+public class ObstacleScanner {
+  // Range and resolution of the histograms.
+  public static final float MAX_DEPTH_M = 10f;
+  private static final int NUM_BINS = 64;
+  private static final float BINS_PER_M = NUM_BINS / MAX_DEPTH_M;
+
+  private final int numSectors;
+  private final float percentile;
+  private final float bottomSkip;
+  private final int[][] histograms;
+  private final float[] minDepths;
+  private final float[] nearDepths;
+
+  /**
+   * @param numSectors Number of equally wide column bands, left to right.
+   * @param percentile Fraction of a sector's pixels that may be nearer than its near depth.
+   * @param bottomSkip Fraction of rows left out at the bottom of the map.
+   */
+  public ObstacleScanner(final int numSectors, final float percentile, final float bottomSkip) {
+    this.numSectors = numSectors;
+    this.percentile = percentile;
+    this.bottomSkip = bottomSkip;
+    histograms = new int[numSectors][NUM_BINS];
+    minDepths = new float[numSectors];
+    nearDepths = new float[numSectors];
+  }
+
+  /**
+   * Scans a depth map, replacing the results of the previous scan.
+   *
+   * @param depth Row-major raw depth output, width * height values.
+   * @param scale Factor turning the raw depth into meters.
+   */
+  public void scan(final float[] depth, final int width, final int height, final float scale) {
+    final int rows = Math.max(1, Math.round(height * (1 - bottomSkip)));
+    final float toBin = scale * BINS_PER_M;
+    for (int s = 0; s < numSectors; ++s) {
+      final int[] histogram = histograms[s];
+      Arrays.fill(histogram, 0);
+      final int startX = width * s / numSectors;
+      final int endX = width * (s + 1) / numSectors;
+      float min = Float.POSITIVE_INFINITY;
+      int count = 0;
+      for (int y = 0; y < rows; ++y) {
+        final int rowEnd = y * width + endX;
+        for (int i = y * width + startX; i < rowEnd; ++i) {
+          final float value = depth[i];
+          // Also drops NaN.
+          if (!(value >= 0)) {
+            continue;
+          }
+          if (value < min) {
+            min = value;
+          }
+          final int bin = (int) (value * toBin);
+          ++histogram[bin < NUM_BINS ? bin : NUM_BINS - 1];
+          ++count;
+        }
+      }
+      minDepths[s] = count > 0 ? Math.min(min * scale, MAX_DEPTH_M) : MAX_DEPTH_M;
+      nearDepths[s] = percentileOf(histogram, count);
+    }
+  }
+
+  /** Interpolates the depth below which the percentile of a sector's pixels lie. */
+  private float percentileOf(final int[] histogram, final int count) {
+    if (count == 0) {
+      return MAX_DEPTH_M;
+    }
+    final float target = percentile * count;
+    int below = 0;
+    for (int bin = 0; bin < NUM_BINS; ++bin) {
+      final int inBin = histogram[bin];
+      if (inBin > 0 && below + inBin >= target) {
+        return (bin + (target - below) / inBin) / BINS_PER_M;
+      }
+      below += inBin;
+    }
+    return MAX_DEPTH_M;
+  }
+
+  public int getNumSectors() {
+    return numSectors;
+  }
+
+  /** Returns the minimum depth in a sector in meters, at most {@link #MAX_DEPTH_M}. */
+  public float getMinDepth(final int sector) {
+    return minDepths[sector];
+  }
+
+  /** Returns the near-percentile depth in a sector in meters, at most {@link #MAX_DEPTH_M}. */
+  public float getNearDepth(final int sector) {
+    return nearDepths[sector];
+  }
+
+  /** Returns the sector with the nearest near depth. */
+  public int getNearestSector() {
+    int nearest = 0;
+    for (int s = 1; s < numSectors; ++s) {
+      if (nearDepths[s] < nearDepths[nearest]) {
+        nearest = s;
+      }
+    }
+    return nearest;
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Steps the pipeline down a ladder of quality levels as the device heats up or the battery runs
+ * low, and back up once conditions recover.
+ *
+ * <p>The ladder is entered early: a light thermal status already costs a level, so that the
+ * pipeline sheds work before the system starts throttling the CPU under it. Stepping down happens
+ * at once and may skip levels; stepping up goes one level at a time and only after conditions
+ * have allowed it for a while, so that a device hovering at a threshold does not flip back and
+ * forth.
+ *
+ * <p>{@link #poll(long)} must be called from a single thread, typically the camera thread once per
+ * frame; it reads the conditions at most every few seconds.
+ */
+public class QualityGovernor {
+  private static final Logger LOGGER = new Logger();
+
+  private static final long CHECK_INTERVAL_MS = 5000;
+  // How long conditions must allow a higher level before stepping up to it.
+  private static final long STEP_UP_AFTER_MS = 30000;
+  // Battery percentages at or below which each level below the top is required.
+  private static final int[] BATTERY_THRESHOLDS = {30, 15, 5};
+
+  /** One rung of the quality ladder. */
+  public static final class Level {
+    private final String name;
+    private final int depthWidth;
+    private final int depthHeight;
+    private final int detectionInterval;
+    private final long minDepthIntervalMs;
+    private final int maxThreads;
+
+    private Level(
+        final String name,
+        final int depthWidth,
+        final int depthHeight,
+        final int detectionInterval,
+        final long minDepthIntervalMs,
+        final int maxThreads) {
+      this.name = name;
+      this.depthWidth = depthWidth;
+      this.depthHeight = depthHeight;
+      this.detectionInterval = detectionInterval;
+      this.minDepthIntervalMs = minDepthIntervalMs;
+      this.maxThreads = maxThreads;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Width the depth model is run at. */
+    public int getDepthWidth() {
+      return depthWidth;
+    }
+
+    /** Height the depth model is run at. */
+    public int getDepthHeight() {
+      return depthHeight;
+    }
+
+    /** Run the detector on at most every this many frames. */
+    public int getDetectionInterval() {
+      return detectionInterval;
+    }
+
+    /** Minimum time between the starts of two depth inferences. */
+    public long getMinDepthIntervalMs() {
+      return minDepthIntervalMs;
+    }
+
+    /** Upper bound on the detector's interpreter threads. */
+    public int getMaxThreads() {
+      return maxThreads;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s (depth %dx%d, detect every %d frames, depth every %dms, <= %d threads)",
+          name, depthWidth, depthHeight, detectionInterval, minDepthIntervalMs, maxThreads);
+    }
+  }
+
+  // Depth sizes stay multiples of 32, as the depth model downsamples its input five times.
+  private static final Level[] LADDER = {
+    new Level("full", 640, 448, 1, 0, 4),
+    new Level("reduced", 640, 448, 2, 1000, 2),
+    new Level("low", 320, 224, 3, 3000, 2),
+    new Level("minimal", 320, 224, 6, 6000, 1),
+  };
+
+  /** Device state the governor reacts to. */
+  public interface Conditions {
+    /** Reads the battery state the getters below report until the next call. Called per poll. */
+    void update();
+
+    /** One of the PowerManager.THERMAL_STATUS_* values. */
+    int getThermalStatus();
+
+    /** Remaining battery charge in percent. */
+    int getBatteryPercent();
+
+    boolean isCharging();
+  }
+
+  /** Applies a new quality level. Called from the thread calling {@link #poll(long)}. */
+  public interface Listener {
+    void onLevelChanged(Level level);
+  }
+
+  /**
+   * Reads the conditions from the system services. The thermal status needs API 29 and reads as
+   * none before; the battery state comes from the sticky battery broadcast, available on every
+   * supported API level, read once per update for both the charge and the plug state.
+   */
+  public static class DeviceConditions implements Conditions {
+    private static final IntentFilter BATTERY_CHANGED =
+        new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+
+    private final Context context;
+    private final PowerManager powerManager;
+    private int batteryPercent = 100;
+    private boolean charging;
+
+    public DeviceConditions(final Context context) {
+      this.context = context.getApplicationContext();
+      powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    @Override
+    public void update() {
+      // Registering without a receiver only returns the last battery broadcast.
+      final Intent battery = context.registerReceiver(null, BATTERY_CHANGED);
+      if (battery == null) {
+        batteryPercent = 100;
+        charging = false;
+        return;
+      }
+      final int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+      final int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+      // Missing on devices without a battery.
+      batteryPercent = level >= 0 && scale > 0 ? 100 * level / scale : 100;
+      charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    @Override
+    public int getThermalStatus() {
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || powerManager == null) {
+        return PowerManager.THERMAL_STATUS_NONE;
+      }
+      return powerManager.getCurrentThermalStatus();
+    }
+
+    @Override
+    public int getBatteryPercent() {
+      return batteryPercent;
+    }
+
+    @Override
+    public boolean isCharging() {
+      return charging;
+    }
+  }
+
+  private final Conditions conditions;
+  private final Listener listener;
+  private volatile int current;
+  private long lastCheckMs = Long.MIN_VALUE;
+  // Since when conditions have allowed a higher level than the current one, or -1.
+  private long upAllowedSinceMs = -1;
+
+  public QualityGovernor(final Conditions conditions, final Listener listener) {
+    this.conditions = conditions;
+    this.listener = listener;
+  }
+
+  /** Returns the level in effect. May be called from any thread. */
+  public Level getLevel() {
+    return LADDER[current];
+  }
+
+  /** Re-evaluates the conditions if the last check is old enough. */
+  public void poll(final long nowMs) {
+    if (lastCheckMs != Long.MIN_VALUE && nowMs - lastCheckMs < CHECK_INTERVAL_MS) {
+      return;
+    }
+    lastCheckMs = nowMs;
+
+    conditions.update();
+    final int thermalStatus = conditions.getThermalStatus();
+    final int batteryPercent = conditions.getBatteryPercent();
+    final boolean charging = conditions.isCharging();
+    final int target =
+        Math.max(levelForThermalStatus(thermalStatus), levelForBattery(batteryPercent, charging));
+
+    if (target > current) {
+      upAllowedSinceMs = -1;
+      transition(target, thermalStatus, batteryPercent, charging);
+    } else if (target < current) {
+      if (upAllowedSinceMs < 0) {
+        upAllowedSinceMs = nowMs;
+      } else if (nowMs - upAllowedSinceMs >= STEP_UP_AFTER_MS) {
+        // Restart the wait for the next level up.
+        upAllowedSinceMs = nowMs;
+        transition(current - 1, thermalStatus, batteryPercent, charging);
+      }
+    } else {
+      upAllowedSinceMs = -1;
+    }
+  }
+
+  private void transition(
+      final int level, final int thermalStatus, final int batteryPercent, final boolean charging) {
+    LOGGER.i(
+        "Quality %s -> %s: thermal status %d, battery %d%%%s",
+        LADDER[current].getName(),
+        LADDER[level],
+        thermalStatus,
+        batteryPercent,
+        charging ? " (charging)" : "");
+    current = level;
+    listener.onLevelChanged(LADDER[level]);
+  }
+
+  private static int levelForThermalStatus(final int thermalStatus) {
+    if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+      return LADDER.length - 1;
+    }
+    if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) {
+      return 2;
+    }
+    if (thermalStatus >= PowerManager.THERMAL_STATUS_LIGHT) {
+      return 1;
+    }
+    return 0;
+  }
+
+  private static int levelForBattery(final int batteryPercent, final boolean charging) {
+    if (charging) {
+      return 0;
+    }
+    int level = 0;
+    for (final int threshold : BATTERY_THRESHOLDS) {
+      if (batteryPercent <= threshold) {
+        ++level;
+      }
+    }
+    return level;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import org.tensorflow.lite.examples.detection.env.PerceptualHash;
+import org.tensorflow.lite.examples.detection.tflite.Detections;
+
+/**
+ * Remembers the results for the last few views the camera saw, so that sweeping back to one of
+ * them can reuse its detections and distances instead of running the models again.
+ *
+ * <p>Views are keyed by the {@link PerceptualHash} of the frame and the screen orientation, and a
+ * lookup returns the entry whose hash is nearest within a few bits. Results only stay usable for
+ * a while, as objects move even when the view does not; distances, which the user acts on, for a
+ * much shorter while than detections. Storing results for a view that matches an entry updates
+ * that entry; otherwise the least recently used entry is replaced.
+ *
+ * <p>Stored detections and summaries must not be modified afterwards. Thread-safe.
+ */
+public class SceneCache {
+  /**
+   * The object distances found by one depth inference. Obstacles are deliberately left out: they
+   * are only ever warned about from the latest depth output.
+   */
+  public static final class DepthSummary {
+    private final Detections detections;
+    private final float[] distances;
+
+    /**
+     * @param detections The objects the distances are for, in crop coordinates.
+     * @param distances Distance of each object in meters, or NaN if it was not measured.
+     */
+    public DepthSummary(final Detections detections, final float[] distances) {
+      this.detections = detections;
+      this.distances = distances;
+    }
+
+    public Detections getDetections() {
+      return detections;
+    }
+
+    public float getDistance(final int i) {
+      return distances[i];
+    }
+  }
+
+  private final int maxDistance;
+  private final long maxDetectionsAgeMs;
+  private final long maxDepthAgeMs;
+  private final long[] hashes;
+  private final int[] orientations;
+  private final long[] lastUsedMs;
+  private final Detections[] detections;
+  private final long[] detectionsMs;
+  private final DepthSummary[] depths;
+  private final long[] depthsMs;
+  private int size;
+
+  /**
+   * @param capacity Number of views kept.
+   * @param maxDistance Most bits in which the hash of a matching view may differ.
+   * @param maxDetectionsAgeMs How long detections stay usable.
+   * @param maxDepthAgeMs How long depth summaries stay usable.
+   */
+  public SceneCache(
+      final int capacity,
+      final int maxDistance,
+      final long maxDetectionsAgeMs,
+      final long maxDepthAgeMs) {
+    this.maxDistance = maxDistance;
+    this.maxDetectionsAgeMs = maxDetectionsAgeMs;
+    this.maxDepthAgeMs = maxDepthAgeMs;
+    hashes = new long[capacity];
+    orientations = new int[capacity];
+    lastUsedMs = new long[capacity];
+    detections = new Detections[capacity];
+    detectionsMs = new long[capacity];
+    depths = new DepthSummary[capacity];
+    depthsMs = new long[capacity];
+  }
+
+  /** Returns the usable detections of a matching view, or null. */
+  public synchronized Detections getDetections(
+      final long hash, final int orientation, final long nowMs) {
+    final int slot = find(hash, orientation, nowMs, true);
+    if (slot < 0) {
+      return null;
+    }
+    lastUsedMs[slot] = nowMs;
+    return detections[slot];
+  }
+
+  /** Returns the usable depth summary of a matching view, or null. */
+  public synchronized DepthSummary getDepthSummary(
+      final long hash, final int orientation, final long nowMs) {
+    final int slot = find(hash, orientation, nowMs, false);
+    if (slot < 0) {
+      return null;
+    }
+    lastUsedMs[slot] = nowMs;
+    return depths[slot];
+  }
+
+  public synchronized void putDetections(
+      final long hash, final int orientation, final Detections results, final long nowMs) {
+    final int slot = slotFor(hash, orientation, nowMs);
+    detections[slot] = results;
+    detectionsMs[slot] = nowMs;
+  }
+
+  public synchronized void putDepthSummary(
+      final long hash, final int orientation, final DepthSummary summary, final long nowMs) {
+    final int slot = slotFor(hash, orientation, nowMs);
+    depths[slot] = summary;
+    depthsMs[slot] = nowMs;
+  }
+
+  /** Forgets every view, e.g. when the detector changes. */
+  public synchronized void clear() {
+    for (int i = 0; i < size; ++i) {
+      detections[i] = null;
+      depths[i] = null;
+    }
+    size = 0;
+  }
+
+  /** Returns the nearest matching view with usable results of the given kind, or -1. */
+  private int find(
+      final long hash, final int orientation, final long nowMs, final boolean wantDetections) {
+    int best = -1;
+    int bestDistance = maxDistance + 1;
+    for (int i = 0; i < size; ++i) {
+      final boolean usable =
+          wantDetections
+              ? detections[i] != null && nowMs - detectionsMs[i] <= maxDetectionsAgeMs
+              : depths[i] != null && nowMs - depthsMs[i] <= maxDepthAgeMs;
+      if (!usable || orientations[i] != orientation) {
+        continue;
+      }
+      final int distance = PerceptualHash.distance(hashes[i], hash);
+      if (distance < bestDistance) {
+        best = i;
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+  /** Returns the slot to store results of a view in, keyed by the latest hash. */
+  private int slotFor(final long hash, final int orientation, final long nowMs) {
+    int slot = -1;
+    int bestDistance = maxDistance + 1;
+    for (int i = 0; i < size; ++i) {
+      final int distance = PerceptualHash.distance(hashes[i], hash);
+      if (orientations[i] == orientation && distance < bestDistance) {
+        slot = i;
+        bestDistance = distance;
+      }
+    }
+    if (slot < 0) {
+      if (size < hashes.length) {
+        slot = size++;
+      } else {
+        slot = 0;
+        for (int i = 1; i < size; ++i) {
+          if (lastUsedMs[i] < lastUsedMs[slot]) {
+            slot = i;
+          }
+        }
+      }
+      detections[slot] = null;
+      depths[slot] = null;
+    }
+    hashes[slot] = hash;
+    orientations[slot] = orientation;
+    lastUsedMs[slot] = nowMs;
+    return slot;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import android.os.SystemClock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Runs the independent pieces of a cold start (detector, depth model, label table) in parallel
+ * with the camera coming up, and records how long it takes until the first detection is shown
+ * and the first announcement is spoken.
+ *
+ * <p>Every submitted task is required: one that throws is reported to the {@link
+ * FailureListener}. Tasks the app can run without catch their own failures.
+ */
+public class StartupOrchestrator {
+  private static final Logger LOGGER = new Logger();
+  private static final int NUM_LOADER_THREADS = 3;
+
+  /** Learns about startup tasks that failed. */
+  public interface FailureListener {
+    /** Called on the loader thread that ran the task. */
+    void onTaskFailed(String name, RuntimeException e);
+  }
+
+  private final long startTimeMs = SystemClock.uptimeMillis();
+  private final ExecutorService executor = Executors.newFixedThreadPool(NUM_LOADER_THREADS);
+  private final AtomicLong timeToFirstDetectionMs = new AtomicLong(-1);
+  private final AtomicLong timeToFirstAnnouncementMs = new AtomicLong(-1);
+  private final FailureListener failureListener;
+
+  public StartupOrchestrator(final FailureListener failureListener) {
+    this.failureListener = failureListener;
+  }
+
+  /** Runs a startup task on a loader thread and logs when it finished relative to start. */
+  public void submit(final String name, final Runnable task) {
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            final long taskStartMs = SystemClock.uptimeMillis();
+            try {
+              task.run();
+            } catch (final RuntimeException e) {
+              LOGGER.e(e, "Startup task %s failed", name);
+              failureListener.onTaskFailed(name, e);
+              return;
+            }
+            final long endMs = SystemClock.uptimeMillis();
+            LOGGER.i(
+                "Startup: %s took %dms, ready at +%dms",
+                name, endMs - taskStartMs, endMs - startTimeMs);
+          }
+        });
+  }
+
+  /** Logs that a component outside the loader pool, such as TTS, became ready. */
+  public void markReady(final String name) {
+    LOGGER.i("Startup: %s ready at +%dms", name, SystemClock.uptimeMillis() - startTimeMs);
+  }
+
+  /** Records the first processed detection frame. Only the first call has an effect. */
+  public void markFirstDetection() {
+    final long elapsed = SystemClock.uptimeMillis() - startTimeMs;
+    if (timeToFirstDetectionMs.compareAndSet(-1, elapsed)) {
+      LOGGER.i("Startup: time to first detection %dms", elapsed);
+    }
+  }
+
+  /** Records the first spoken announcement. Only the first call has an effect. */
+  public void markFirstAnnouncement() {
+    final long elapsed = SystemClock.uptimeMillis() - startTimeMs;
+    if (timeToFirstAnnouncementMs.compareAndSet(-1, elapsed)) {
+      LOGGER.i("Startup: time to first announcement %dms", elapsed);
+    }
+  }
+
+  /** Returns the time to first detection in ms, or -1 if there has been none yet. */
+  public long getTimeToFirstDetectionMs() {
+    return timeToFirstDetectionMs.get();
+  }
+
+  /** Returns the time to first announcement in ms, or -1 if there has been none yet. */
+  public long getTimeToFirstAnnouncementMs() {
+    return timeToFirstAnnouncementMs.get();
+  }
+
+  /** Stops accepting tasks. Tasks already running are allowed to finish. */
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
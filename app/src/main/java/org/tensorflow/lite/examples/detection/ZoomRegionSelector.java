@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import android.graphics.RectF;
+
+/**
+ * Chooses the part of the frame to run the detector on instead of the whole frame, so that objects
+ * already being tracked are seen at a higher resolution for the same input size.
+ *
+ * <p>The region covers every tracked box with some margin, as the detector's results replace all
+ * tracks, and has the aspect ratio of the frame, so objects are stretched into the detector input
+ * just as in a full-frame pass. It is never smaller than a given fraction of the frame, which
+ * callers choose so that the region's shorter side still has as many pixels as the detector input,
+ * as a smaller region would only be upsampled. No region is chosen when it would have to be nearly
+ * as large as the frame anyway.
+ */
+public class ZoomRegionSelector {
+  // Margin around the tracked boxes, as a fraction of their bounds' size.
+  private static final float MARGIN = 0.25f;
+
+  private final int frameWidth;
+  private final int frameHeight;
+  private final float minFraction;
+  private final float maxFraction;
+
+  /**
+   * @param frameWidth Frame width in pixels.
+   * @param frameHeight Frame height in pixels.
+   * @param minFraction Smallest region side, as a fraction of the frame's side.
+   * @param maxFraction Largest region side worth zooming to, as a fraction of the frame's side.
+   */
+  public ZoomRegionSelector(
+      final int frameWidth,
+      final int frameHeight,
+      final float minFraction,
+      final float maxFraction) {
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.minFraction = minFraction;
+    this.maxFraction = maxFraction;
+  }
+
+  /**
+   * Chooses the region for the given tracked bounds.
+   *
+   * @param trackedBounds Bounds of all tracked boxes in frame coordinates.
+   * @param region Set to the region in whole frame pixels if one is chosen.
+   * @return Whether zooming in is worthwhile.
+   */
+  public boolean select(final RectF trackedBounds, final RectF region) {
+    final float neededWidth = trackedBounds.width() * (1 + 2 * MARGIN);
+    final float neededHeight = trackedBounds.height() * (1 + 2 * MARGIN);
+    final float fraction =
+        Math.max(minFraction, Math.max(neededWidth / frameWidth, neededHeight / frameHeight));
+    if (fraction > maxFraction) {
+      return false;
+    }
+    final int width = Math.round(frameWidth * fraction);
+    final int height = Math.round(frameHeight * fraction);
+    // Centered on the tracked boxes, shifted back inside the frame where needed.
+    final int left =
+        clamp(Math.round(trackedBounds.centerX() - width / 2f), 0, frameWidth - width);
+    final int top =
+        clamp(Math.round(trackedBounds.centerY() - height / 2f), 0, frameHeight - height);
+    region.set(left, top, left + width, top + height);
+    return true;
+  }
+
+  private static int clamp(final int value, final int min, final int max) {
+    return Math.max(min, Math.min(max, value));
+  }
+}
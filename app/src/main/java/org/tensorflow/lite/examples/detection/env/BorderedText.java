@@ -28,6 +28,8 @@ import java.util.Vector;
 public class BorderedText {
   private final Paint interiorPaint;
   private final Paint exteriorPaint;
+  // Reused by drawText so that drawing a label background does not allocate a Paint per call.
+  private final Paint backgroundPaint = new Paint();
 
   private final float textSize;
 
@@ -83,7 +85,8 @@ public class BorderedText {
 
     float width = exteriorPaint.measureText(text);
     float textSize = exteriorPaint.getTextSize();
-    Paint paint = new Paint(bgPaint);
+    final Paint paint = backgroundPaint;
+    paint.set(bgPaint);
     paint.setStyle(Paint.Style.FILL);
     paint.setAlpha(160);
     canvas.drawRect(posX, (posY + (int) (textSize)), (posX + (int) (width)), posY, paint);
@@ -0,0 +1,59 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * Pinhole model of the camera in the coordinates of the frames it delivers: a single focal length
+ * in pixels and the principal point, assumed to be the frame center.
+ */
+public final class CameraIntrinsics {
+  private final float focalLength;
+  private final float centerX;
+  private final float centerY;
+
+  private CameraIntrinsics(final float focalLength, final float centerX, final float centerY) {
+    this.focalLength = focalLength;
+    this.centerX = centerX;
+    this.centerY = centerY;
+  }
+
+  /**
+   * Derives the intrinsics from the field of view across the frame's width. Frames cropped from
+   * the sensor to a different aspect ratio make this an approximation.
+   *
+   * @param width Frame width in pixels.
+   * @param height Frame height in pixels.
+   * @param horizontalViewAngle Field of view across the frame's width, in degrees.
+   */
+  public static CameraIntrinsics fromViewAngle(
+      final int width, final int height, final float horizontalViewAngle) {
+    final float focalLength =
+        (float) (width / 2.0 / Math.tan(Math.toRadians(horizontalViewAngle) / 2));
+    return new CameraIntrinsics(focalLength, width / 2.0f, height / 2.0f);
+  }
+
+  /** Focal length in pixels. */
+  public float getFocalLength() {
+    return focalLength;
+  }
+
+  public float getCenterX() {
+    return centerX;
+  }
+
+  public float getCenterY() {
+    return centerY;
+  }
+}
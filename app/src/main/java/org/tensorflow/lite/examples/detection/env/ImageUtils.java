@@ -87,24 +87,25 @@ public class ImageUtils {
 
   public static void convertYUV420SPToARGB8888(byte[] input, int width, int height, int[] output) {
     final int frameSize = width * height;
-    for (int j = 0, yp = 0; j < height; j++) {
+    // Rows are converted in pairs so each chroma sample is looked up once per 2x2 block.
+    for (int j = 0; j < height; j += 2) {
+      final int yp0 = j * width;
+      final int yp1 = j + 1 < height ? yp0 + width : -1;
       int uvp = frameSize + (j >> 1) * width;
-      int u = 0;
-      int v = 0;
-
-      for (int i = 0; i < width; i++, yp++) {
-        int y = 0xff & input[yp];
-        if ((i & 1) == 0) {
-          v = 0xff & input[uvp++];
-          u = 0xff & input[uvp++];
-        }
-
-        output[yp] = YUV2RGB(y, u, v);
+      for (int i = 0; i < width; i += 2) {
+        final int v = 0xff & input[uvp++];
+        final int u = 0xff & input[uvp++];
+        final int pY1 = yp1 < 0 ? -1 : yp1 + i;
+        convertBlock(input, yp0 + i, pY1, i + 1 < width, u, v, output, yp0 + i, pY1);
       }
     }
   }
 
-  private static int YUV2RGB(int y, int u, int v) {
+  /**
+   * Reference per-pixel conversion. The converters below use the table-driven equivalent, which
+   * produces exactly the same output.
+   */
+  static int YUV2RGB(int y, int u, int v) {
     // Adjust and check YUV values
     y = (y - 16) < 0 ? 0 : (y - 16);
     u -= 128;
@@ -128,6 +129,82 @@ public class ImageUtils {
     return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
   }
 
+  // Per-component contributions of YUV2RGB, indexed by the unsigned sample value.
+  private static final int[] Y_TERM = new int[256];
+  private static final int[] R_V_TERM = new int[256];
+  private static final int[] G_U_TERM = new int[256];
+  private static final int[] G_V_TERM = new int[256];
+  private static final int[] B_U_TERM = new int[256];
+
+  // Clamping to [0, kMaxChannelValue] and keeping the top eight bits is the same as saturating
+  // (sum >> 10) to [0, 255], so a table indexed by the shifted sum replaces both.
+  private static final int SATURATE_OFFSET = (-(2066 * 128)) >> 10;
+  private static final int[] SATURATE;
+
+  static {
+    for (int i = 0; i < 256; ++i) {
+      Y_TERM[i] = 1192 * Math.max(i - 16, 0);
+      R_V_TERM[i] = 1634 * (i - 128);
+      G_U_TERM[i] = -400 * (i - 128);
+      G_V_TERM[i] = -833 * (i - 128);
+      B_U_TERM[i] = 2066 * (i - 128);
+    }
+    final int maxSum = Y_TERM[255] + Math.max(B_U_TERM[255], R_V_TERM[255]);
+    SATURATE = new int[(maxSum >> 10) - SATURATE_OFFSET + 1];
+    for (int i = 0; i < SATURATE.length; ++i) {
+      SATURATE[i] = Math.min(Math.max(i + SATURATE_OFFSET, 0), 255);
+    }
+  }
+
+  /**
+   * Converts one 2x2 block sharing chroma (u, v). A negative second-row offset means the block is
+   * on the last row of an image with odd height; hasSecondColumn is false on the last column of
+   * an image with odd width.
+   */
+  private static void convertBlock(
+      byte[] yData,
+      int pY0,
+      int pY1,
+      boolean hasSecondColumn,
+      int u,
+      int v,
+      int[] out,
+      int out0,
+      int out1) {
+    // Folding the table offset into the chroma terms once leaves one add and shift per channel.
+    final int rv = R_V_TERM[v] - (SATURATE_OFFSET << 10);
+    final int guv = G_U_TERM[u] + G_V_TERM[v] - (SATURATE_OFFSET << 10);
+    final int bu = B_U_TERM[u] - (SATURATE_OFFSET << 10);
+
+    out[out0] = lookupPixel(Y_TERM[0xff & yData[pY0]], rv, guv, bu);
+    if (hasSecondColumn) {
+      out[out0 + 1] = lookupPixel(Y_TERM[0xff & yData[pY0 + 1]], rv, guv, bu);
+    }
+    if (pY1 < 0) {
+      return;
+    }
+    out[out1] = lookupPixel(Y_TERM[0xff & yData[pY1]], rv, guv, bu);
+    if (hasSecondColumn) {
+      out[out1 + 1] = lookupPixel(Y_TERM[0xff & yData[pY1 + 1]], rv, guv, bu);
+    }
+  }
+
+  /** Table-driven equivalent of YUV2RGB for a single pixel. */
+  static int convertPixel(int y, int u, int v) {
+    return lookupPixel(
+        Y_TERM[y],
+        R_V_TERM[v] - (SATURATE_OFFSET << 10),
+        G_U_TERM[u] + G_V_TERM[v] - (SATURATE_OFFSET << 10),
+        B_U_TERM[u] - (SATURATE_OFFSET << 10));
+  }
+
+  private static int lookupPixel(int y, int rv, int guv, int bu) {
+    return 0xff000000
+        | (SATURATE[(y + rv) >> 10] << 16)
+        | (SATURATE[(y + guv) >> 10] << 8)
+        | SATURATE[(y + bu) >> 10];
+  }
+
   public static void convertYUV420ToARGB8888(
       byte[] yData,
       byte[] uData,
@@ -138,15 +215,24 @@ public class ImageUtils {
       int uvRowStride,
       int uvPixelStride,
       int[] out) {
-    int yp = 0;
-    for (int j = 0; j < height; j++) {
-      int pY = yRowStride * j;
-      int pUV = uvRowStride * (j >> 1);
-
-      for (int i = 0; i < width; i++) {
-        int uv_offset = pUV + (i >> 1) * uvPixelStride;
-
-        out[yp++] = YUV2RGB(0xff & yData[pY + i], 0xff & uData[uv_offset], 0xff & vData[uv_offset]);
+    // Rows are converted in pairs so each chroma sample is looked up once per 2x2 block.
+    for (int j = 0; j < height; j += 2) {
+      final int pY0 = yRowStride * j;
+      final int pY1 = j + 1 < height ? pY0 + yRowStride : -1;
+      final int out0 = width * j;
+      final int out1 = pY1 < 0 ? -1 : out0 + width;
+      int uvOffset = uvRowStride * (j >> 1);
+      for (int i = 0; i < width; i += 2, uvOffset += uvPixelStride) {
+        convertBlock(
+            yData,
+            pY0 + i,
+            pY1 < 0 ? -1 : pY1 + i,
+            i + 1 < width,
+            0xff & uData[uvOffset],
+            0xff & vData[uvOffset],
+            out,
+            out0 + i,
+            out1 < 0 ? -1 : out1 + i);
       }
     }
   }
@@ -172,7 +258,25 @@ public class ImageUtils {
       final int dstHeight,
       final int applyRotation,
       final boolean maintainAspectRatio) {
-    final Matrix matrix = new Matrix();
+    return getTransformationMatrix(
+        srcWidth, srcHeight, dstWidth, dstHeight, applyRotation, maintainAspectRatio, new Matrix());
+  }
+
+  /**
+   * Like {@link #getTransformationMatrix(int, int, int, int, int, boolean)}, but writes into a
+   * given matrix, replacing its contents, so that a transform changing per frame can be reused.
+   *
+   * @return matrix.
+   */
+  public static Matrix getTransformationMatrix(
+      final int srcWidth,
+      final int srcHeight,
+      final int dstWidth,
+      final int dstHeight,
+      final int applyRotation,
+      final boolean maintainAspectRatio,
+      final Matrix matrix) {
+    matrix.reset();
 
     if (applyRotation != 0) {
       if (applyRotation % 90 != 0) {
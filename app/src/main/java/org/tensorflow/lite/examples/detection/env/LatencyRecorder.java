@@ -0,0 +1,71 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Arrays;
+
+/**
+ * Records the latencies of the first N runs of a model and logs their distribution once N samples
+ * are in. The first frames are where one-time costs (tensor allocation, delegate compilation, cold
+ * caches) show up, so they are reported apart from steady state. Must be used from a single thread.
+ */
+public final class LatencyRecorder {
+  private static final Logger LOGGER = new Logger();
+
+  private final String name;
+  private final long[] samples;
+  private int count;
+
+  /**
+   * @param name Name used in the log output.
+   * @param firstFrames Number of initial samples to collect before reporting.
+   */
+  public LatencyRecorder(final String name, final int firstFrames) {
+    this.name = name;
+    this.samples = new long[firstFrames];
+  }
+
+  /** Adds a sample. Samples beyond the first N are ignored. */
+  public void record(final long latencyMs) {
+    if (count >= samples.length) {
+      return;
+    }
+    samples[count++] = latencyMs;
+    if (count == samples.length) {
+      report();
+    }
+  }
+
+  /** Returns whether the first N samples have been collected and reported. */
+  public boolean isComplete() {
+    return count >= samples.length;
+  }
+
+  private void report() {
+    final long first = samples[0];
+    final long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    LOGGER.i(
+        "%s first %d runs: first=%dms min=%dms median=%dms p90=%dms max=%dms",
+        name,
+        count,
+        first,
+        sorted[0],
+        sorted[count / 2],
+        sorted[Math.min(count - 1, (count * 9) / 10)],
+        sorted[count - 1]);
+  }
+}
@@ -0,0 +1,235 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.util.Log;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, preallocated multi-producer ring of log records drained to logcat (and optionally a
+ * file) by a single background thread. Producers never block and never allocate: they claim a
+ * slot, copy the format string reference and primitive arguments into it and publish it. Message
+ * formatting happens on the drain thread. When the ring is full records are dropped and counted.
+ *
+ * <p>The drain thread parks without a timeout once the ring is empty, so an app that logs nothing
+ * costs no wakeups; the first record published while it is parked unparks it.
+ */
+final class LogRing {
+  private static final int CAPACITY = 1024; // Must be a power of two.
+  private static final int MASK = CAPACITY - 1;
+
+  static final int MAX_ARGS = 2;
+  static final byte ARG_LONG = 0;
+  static final byte ARG_DOUBLE = 1;
+
+  private static final LogRing INSTANCE = new LogRing();
+
+  /** One preallocated log record. Fields are written by the claiming producer only. */
+  static final class Record {
+    // Vyukov sequence: equals the claim position when free, position + 1 once published.
+    private volatile long sequence;
+    private long position;
+
+    int priority;
+    String tag;
+    String prefix;
+    String format;
+    // A message already formatted by the caller; when set, format and args are ignored.
+    String message;
+    int argCount;
+    final byte[] argKinds = new byte[MAX_ARGS];
+    final long[] argBits = new long[MAX_ARGS];
+
+    void setLong(final int index, final long value) {
+      argKinds[index] = ARG_LONG;
+      argBits[index] = value;
+    }
+
+    void setDouble(final int index, final double value) {
+      argKinds[index] = ARG_DOUBLE;
+      argBits[index] = Double.doubleToRawLongBits(value);
+    }
+  }
+
+  private final Record[] records = new Record[CAPACITY];
+  private final AtomicLong claimPosition = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final Object[] formatArgs = new Object[MAX_ARGS];
+  // Only touched by the drain thread.
+  private long drainPosition;
+  private volatile Writer fileSink;
+  private volatile Thread drainThread;
+  // Set by the drain thread before it parks; cleared by whoever wakes it.
+  private final AtomicBoolean drainParked = new AtomicBoolean();
+
+  private LogRing() {
+    for (int i = 0; i < CAPACITY; ++i) {
+      records[i] = new Record();
+      records[i].sequence = i;
+    }
+  }
+
+  static LogRing get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Claims a free record, or returns null if the ring is full. The caller must fill the record and
+   * hand it to {@link #publish(Record)}.
+   */
+  Record claim() {
+    long position = claimPosition.get();
+    while (true) {
+      final Record record = records[(int) (position & MASK)];
+      final long difference = record.sequence - position;
+      if (difference == 0) {
+        if (claimPosition.compareAndSet(position, position + 1)) {
+          record.position = position;
+          return record;
+        }
+        position = claimPosition.get();
+      } else if (difference < 0) {
+        dropped.incrementAndGet();
+        return null;
+      } else {
+        position = claimPosition.get();
+      }
+    }
+  }
+
+  void publish(final Record record) {
+    record.sequence = record.position + 1;
+    final Thread thread = drainThread;
+    if (thread == null) {
+      startDrainThread();
+    } else if (drainParked.get() && drainParked.compareAndSet(true, false)) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /** Also appends every drained record to the given writer, or stops doing so if null. */
+  void setFileSink(final Writer writer) {
+    fileSink = writer;
+  }
+
+  private synchronized void startDrainThread() {
+    if (drainThread != null) {
+      return;
+    }
+    final Thread thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                while (true) {
+                  if (drainOnce()) {
+                    continue;
+                  }
+                  drainParked.set(true);
+                  // A record published before the flag was visible did not unpark this thread.
+                  if (!hasPublished()) {
+                    LockSupport.park(this);
+                  }
+                  drainParked.set(false);
+                }
+              }
+            },
+            "LoggerDrain");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    drainThread = thread;
+    thread.start();
+  }
+
+  /** Returns whether the next record to drain has been published. Drain thread only. */
+  private boolean hasPublished() {
+    return records[(int) (drainPosition & MASK)].sequence == drainPosition + 1;
+  }
+
+  /** Writes out every published record. Returns false if there was nothing to drain. */
+  private boolean drainOnce() {
+    boolean drainedAny = false;
+    while (true) {
+      final Record record = records[(int) (drainPosition & MASK)];
+      if (record.sequence != drainPosition + 1) {
+        break;
+      }
+      try {
+        write(record);
+      } catch (final RuntimeException e) {
+        // A bad format string must not kill the drain thread.
+        Log.w("tensorflow", "Logger: failed to write record with format " + record.format, e);
+      }
+      record.message = null;
+      record.format = null;
+      record.sequence = drainPosition + CAPACITY;
+      ++drainPosition;
+      drainedAny = true;
+    }
+
+    final long lost = dropped.getAndSet(0);
+    if (lost > 0) {
+      Log.w("tensorflow", "Logger: dropped " + lost + " records, ring full");
+    }
+    if (drainedAny) {
+      final Writer writer = fileSink;
+      if (writer != null) {
+        try {
+          writer.flush();
+        } catch (final IOException e) {
+          fileSink = null;
+        }
+      }
+    }
+    return drainedAny;
+  }
+
+  private void write(final Record record) {
+    final String text;
+    if (record.message != null) {
+      text = record.message;
+    } else if (record.argCount == 0) {
+      text = record.prefix + record.format;
+    } else {
+      for (int i = 0; i < MAX_ARGS; ++i) {
+        formatArgs[i] =
+            i >= record.argCount
+                ? null
+                : record.argKinds[i] == ARG_DOUBLE
+                    ? (Object) Double.longBitsToDouble(record.argBits[i])
+                    : (Object) record.argBits[i];
+      }
+      text = record.prefix + String.format(record.format, formatArgs);
+    }
+    Log.println(record.priority, record.tag, text);
+
+    final Writer writer = fileSink;
+    if (writer != null) {
+      try {
+        writer.write(record.tag);
+        writer.write(' ');
+        writer.write(text);
+        writer.write('\n');
+      } catch (final IOException e) {
+        fileSink = null;
+      }
+    }
+  }
+}
@@ -16,10 +16,22 @@ limitations under the License.
 package org.tensorflow.lite.examples.detection.env;
 
 import android.util.Log;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.HashSet;
 import java.util.Set;
 
-/** Wrapper for the platform log function, allows convenient message prefixing and log disabling. */
+/**
+ * Wrapper for the platform log function, allows convenient message prefixing and log disabling.
+ *
+ * <p>Verbose through warning messages are checked against a cached level first and then handed to
+ * a preallocated ring that a background thread drains to logcat, so hot-path logging neither
+ * blocks nor formats on the calling thread. The overloads taking one or two primitive arguments
+ * allocate nothing at all; prefer them on per-frame paths. Errors and messages with a Throwable
+ * are still written synchronously.
+ */
 public final class Logger {
   private static final String DEFAULT_TAG = "tensorflow";
   private static final int DEFAULT_MIN_LOG_LEVEL = Log.DEBUG;
@@ -37,6 +49,8 @@ public final class Logger {
   private final String tag;
   private final String messagePrefix;
   private int minLogLevel = DEFAULT_MIN_LOG_LEVEL;
+  // Indexed by log priority; recomputed when the minimum level changes.
+  private final boolean[] loggable = new boolean[Log.ASSERT + 1];
 
   /**
    * Creates a Logger using the class name as the message prefix.
@@ -71,6 +85,7 @@ public final class Logger {
     this.tag = tag;
     final String prefix = messagePrefix == null ? getCallerSimpleName() : messagePrefix;
     this.messagePrefix = (prefix.length() > 0) ? prefix + ": " : prefix;
+    updateLoggable();
   }
 
   /** Creates a Logger using the caller's class name as the message prefix. */
@@ -81,7 +96,7 @@ public final class Logger {
   /** Creates a Logger using the caller's class name as the message prefix. */
   public Logger(final int minLogLevel) {
     this(DEFAULT_TAG, null);
-    this.minLogLevel = minLogLevel;
+    setMinLogLevel(minLogLevel);
   }
 
   /**
@@ -112,24 +127,228 @@ public final class Logger {
     return Logger.class.getSimpleName();
   }
 
+  /**
+   * Also appends every asynchronously logged message to the given file, or stops doing so if null.
+   */
+  public static void setLogFile(final File file) throws IOException {
+    final Writer writer = file != null ? new FileWriter(file, true) : null;
+    LogRing.get().setFileSink(writer);
+  }
+
   public void setMinLogLevel(final int minLogLevel) {
     this.minLogLevel = minLogLevel;
+    updateLoggable();
+  }
+
+  /**
+   * Caches the per-level decision, so Log.isLoggable (a system property lookup) is not consulted on
+   * every call. Changes to the log.tag property are picked up when the level is next set.
+   */
+  private void updateLoggable() {
+    for (int level = 0; level < loggable.length; ++level) {
+      loggable[level] = level >= minLogLevel || Log.isLoggable(tag, level);
+    }
   }
 
   public boolean isLoggable(final int logLevel) {
-    return logLevel >= minLogLevel || Log.isLoggable(tag, logLevel);
+    return logLevel >= 0 && logLevel < loggable.length && loggable[logLevel];
   }
 
   private String toMessage(final String format, final Object... args) {
     return messagePrefix + (args.length > 0 ? String.format(format, args) : format);
   }
 
-  public void v(final String format, final Object... args) {
+  private LogRing.Record claim(final int priority) {
+    final LogRing.Record record = LogRing.get().claim();
+    if (record != null) {
+      record.priority = priority;
+      record.tag = tag;
+      record.prefix = messagePrefix;
+    }
+    return record;
+  }
+
+  private void post(final int priority, final String message) {
+    if (!isLoggable(priority)) {
+      return;
+    }
+    final LogRing.Record record = claim(priority);
+    if (record != null) {
+      record.format = message;
+      record.argCount = 0;
+      LogRing.get().publish(record);
+    }
+  }
+
+  private void post(final int priority, final String format, final long arg) {
+    if (!isLoggable(priority)) {
+      return;
+    }
+    final LogRing.Record record = claim(priority);
+    if (record != null) {
+      record.format = format;
+      record.argCount = 1;
+      record.setLong(0, arg);
+      LogRing.get().publish(record);
+    }
+  }
+
+  private void post(final int priority, final String format, final long arg0, final long arg1) {
+    if (!isLoggable(priority)) {
+      return;
+    }
+    final LogRing.Record record = claim(priority);
+    if (record != null) {
+      record.format = format;
+      record.argCount = 2;
+      record.setLong(0, arg0);
+      record.setLong(1, arg1);
+      LogRing.get().publish(record);
+    }
+  }
+
+  private void post(final int priority, final String format, final double arg) {
+    if (!isLoggable(priority)) {
+      return;
+    }
+    final LogRing.Record record = claim(priority);
+    if (record != null) {
+      record.format = format;
+      record.argCount = 1;
+      record.setDouble(0, arg);
+      LogRing.get().publish(record);
+    }
+  }
+
+  // Object arguments may be mutated by the caller after the call returns, so they are formatted
+  // here and only the resulting message is handed to the drain thread.
+  private void postFormatted(final int priority, final String format, final Object... args) {
+    if (!isLoggable(priority)) {
+      return;
+    }
+    final LogRing.Record record = claim(priority);
+    if (record != null) {
+      record.message = toMessage(format, args);
+      LogRing.get().publish(record);
+    }
+  }
+
+  public void v(final String message) {
+    post(Log.VERBOSE, message);
+  }
+
+  public void v(final String format, final long arg) {
+    post(Log.VERBOSE, format, arg);
+  }
+
+  public void v(final String format, final long arg0, final long arg1) {
+    post(Log.VERBOSE, format, arg0, arg1);
+  }
+
+  public void v(final String format, final double arg) {
+    post(Log.VERBOSE, format, arg);
+  }
+
+  public void v(final String format, final Object arg) {
+    if (isLoggable(Log.VERBOSE)) {
+      postFormatted(Log.VERBOSE, format, arg);
+    }
+  }
+
+  public void v(final String format, final Object arg0, final Object arg1) {
     if (isLoggable(Log.VERBOSE)) {
-      Log.v(tag, toMessage(format, args));
+      postFormatted(Log.VERBOSE, format, arg0, arg1);
     }
   }
 
+  public void d(final String message) {
+    post(Log.DEBUG, message);
+  }
+
+  public void d(final String format, final long arg) {
+    post(Log.DEBUG, format, arg);
+  }
+
+  public void d(final String format, final long arg0, final long arg1) {
+    post(Log.DEBUG, format, arg0, arg1);
+  }
+
+  public void d(final String format, final double arg) {
+    post(Log.DEBUG, format, arg);
+  }
+
+  public void d(final String format, final Object arg) {
+    if (isLoggable(Log.DEBUG)) {
+      postFormatted(Log.DEBUG, format, arg);
+    }
+  }
+
+  public void d(final String format, final Object arg0, final Object arg1) {
+    if (isLoggable(Log.DEBUG)) {
+      postFormatted(Log.DEBUG, format, arg0, arg1);
+    }
+  }
+
+  public void i(final String message) {
+    post(Log.INFO, message);
+  }
+
+  public void i(final String format, final long arg) {
+    post(Log.INFO, format, arg);
+  }
+
+  public void i(final String format, final long arg0, final long arg1) {
+    post(Log.INFO, format, arg0, arg1);
+  }
+
+  public void i(final String format, final double arg) {
+    post(Log.INFO, format, arg);
+  }
+
+  public void i(final String format, final Object arg) {
+    if (isLoggable(Log.INFO)) {
+      postFormatted(Log.INFO, format, arg);
+    }
+  }
+
+  public void i(final String format, final Object arg0, final Object arg1) {
+    if (isLoggable(Log.INFO)) {
+      postFormatted(Log.INFO, format, arg0, arg1);
+    }
+  }
+
+  public void w(final String message) {
+    post(Log.WARN, message);
+  }
+
+  public void w(final String format, final long arg) {
+    post(Log.WARN, format, arg);
+  }
+
+  public void w(final String format, final long arg0, final long arg1) {
+    post(Log.WARN, format, arg0, arg1);
+  }
+
+  public void w(final String format, final double arg) {
+    post(Log.WARN, format, arg);
+  }
+
+  public void w(final String format, final Object arg) {
+    if (isLoggable(Log.WARN)) {
+      postFormatted(Log.WARN, format, arg);
+    }
+  }
+
+  public void w(final String format, final Object arg0, final Object arg1) {
+    if (isLoggable(Log.WARN)) {
+      postFormatted(Log.WARN, format, arg0, arg1);
+    }
+  }
+
+  public void v(final String format, final Object... args) {
+    postFormatted(Log.VERBOSE, format, args);
+  }
+
   public void v(final Throwable t, final String format, final Object... args) {
     if (isLoggable(Log.VERBOSE)) {
       Log.v(tag, toMessage(format, args), t);
@@ -137,9 +356,7 @@ public final class Logger {
   }
 
   public void d(final String format, final Object... args) {
-    if (isLoggable(Log.DEBUG)) {
-      Log.d(tag, toMessage(format, args));
-    }
+    postFormatted(Log.DEBUG, format, args);
   }
 
   public void d(final Throwable t, final String format, final Object... args) {
@@ -149,9 +366,7 @@ public final class Logger {
   }
 
   public void i(final String format, final Object... args) {
-    if (isLoggable(Log.INFO)) {
-      Log.i(tag, toMessage(format, args));
-    }
+    postFormatted(Log.INFO, format, args);
   }
 
   public void i(final Throwable t, final String format, final Object... args) {
@@ -161,9 +376,7 @@ public final class Logger {
   }
 
   public void w(final String format, final Object... args) {
-    if (isLoggable(Log.WARN)) {
-      Log.w(tag, toMessage(format, args));
-    }
+    postFormatted(Log.WARN, format, args);
   }
 
   public void w(final Throwable t, final String format, final Object... args) {
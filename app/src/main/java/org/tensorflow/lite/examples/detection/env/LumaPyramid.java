@@ -0,0 +1,130 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * A grayscale image pyramid built from the luma plane of a camera frame. Level 0 is a tightly
+ * packed copy of the plane, and each further level halves the previous one with a 2x2 box filter.
+ * The levels are allocated once and refilled by {@link #build(byte[], int)}, so a pyramid can be
+ * reused for every frame of the same size. Frames shared between several consumers are built
+ * through a {@link LumaPyramidPool}.
+ */
+public final class LumaPyramid {
+  private final int[] widths;
+  private final int[] heights;
+  private final byte[][] levels;
+
+  /**
+   * @param width Width of the luma plane.
+   * @param height Height of the luma plane.
+   * @param numLevels Number of levels including the full resolution one. Levels stop early once
+   *     either side would drop below 2 pixels.
+   */
+  public LumaPyramid(final int width, final int height, final int numLevels) {
+    int count = 1;
+    while (count < numLevels && (width >> count) >= 2 && (height >> count) >= 2) {
+      ++count;
+    }
+    widths = new int[count];
+    heights = new int[count];
+    levels = new byte[count][];
+    for (int i = 0; i < count; ++i) {
+      widths[i] = width >> i;
+      heights[i] = height >> i;
+      levels[i] = new byte[widths[i] * heights[i]];
+    }
+  }
+
+  /**
+   * Refills every level from a luma plane.
+   *
+   * @param luma The Y plane, at least as large as the pyramid's base.
+   * @param rowStride Distance between the starts of two rows in luma, in bytes.
+   */
+  public void build(final byte[] luma, final int rowStride) {
+    buildRows(luma, rowStride, 0, heights[0]);
+  }
+
+  /**
+   * Refills the part of every level that comes from rows [startRow, endRow) of the luma plane, so
+   * that disjoint row ranges can be built in parallel. Both bounds must be multiples of
+   * 2^(levels - 1), except that endRow may be the full height.
+   */
+  public void buildRows(
+      final byte[] luma, final int rowStride, final int startRow, final int endRow) {
+    final int width = widths[0];
+    final byte[] base = levels[0];
+    if (rowStride == width) {
+      System.arraycopy(luma, startRow * width, base, startRow * width, (endRow - startRow) * width);
+    } else {
+      for (int y = startRow; y < endRow; ++y) {
+        System.arraycopy(luma, y * rowStride, base, y * width, width);
+      }
+    }
+    for (int i = 1; i < levels.length; ++i) {
+      downsample(
+          levels[i - 1],
+          widths[i - 1],
+          levels[i],
+          widths[i],
+          startRow >> i,
+          Math.min(endRow >> i, heights[i]));
+    }
+  }
+
+  /**
+   * Averages each 2x2 block of src into one pixel of rows [startRow, endRow) of dst; an odd last
+   * row or column of src is dropped.
+   */
+  private static void downsample(
+      final byte[] src,
+      final int srcWidth,
+      final byte[] dst,
+      final int dstWidth,
+      final int startRow,
+      final int endRow) {
+    for (int y = startRow; y < endRow; ++y) {
+      int top = 2 * y * srcWidth;
+      int bottom = top + srcWidth;
+      int out = y * dstWidth;
+      for (int x = 0; x < dstWidth; ++x) {
+        final int sum =
+            (src[top] & 0xff) + (src[top + 1] & 0xff) + (src[bottom] & 0xff)
+                + (src[bottom + 1] & 0xff);
+        dst[out++] = (byte) ((sum + 2) >> 2);
+        top += 2;
+        bottom += 2;
+      }
+    }
+  }
+
+  public int getNumLevels() {
+    return levels.length;
+  }
+
+  public int getWidth(final int level) {
+    return widths[level];
+  }
+
+  public int getHeight(final int level) {
+    return heights[level];
+  }
+
+  /** Returns the pixels of a level, row-major with a row stride equal to its width. */
+  public byte[] getLevel(final int level) {
+    return levels[level];
+  }
+}
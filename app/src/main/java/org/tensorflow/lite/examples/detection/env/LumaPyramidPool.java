@@ -0,0 +1,204 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Builds one {@link LumaPyramid} per camera frame and shares it between every consumer of that
+ * frame, so the pyramid is computed once however many of them need it.
+ *
+ * <p>{@link #build} hands out a reference-counted {@link Frame}. Consumers that keep the pyramid
+ * beyond the call they receive it in (e.g. a tracker holding a few past frames) {@link
+ * Frame#retain()} it and {@link Frame#release()} it when done; the pyramid is reused for a later
+ * frame once the last reference is gone. The pool grows when every pyramid is still held, so it
+ * settles at the deepest history any consumer keeps.
+ *
+ * <p>The build is split into horizontal bands that run in parallel on the given executor, with the
+ * calling thread taking the first one. Band edges are multiples of 2^(levels - 1) rows, so each
+ * band can downsample its own rows through all levels without waiting for the others.
+ */
+public final class LumaPyramidPool {
+  private static final Logger LOGGER = new Logger();
+
+  /** A pyramid built for one frame. */
+  public static final class Frame {
+    private final LumaPyramid pyramid;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private long timestamp;
+
+    private Frame(final LumaPyramid pyramid) {
+      this.pyramid = pyramid;
+    }
+
+    public LumaPyramid getPyramid() {
+      return pyramid;
+    }
+
+    /** Returns the timestamp the frame was built with. */
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /** Adds a reference; returns this frame. */
+    public Frame retain() {
+      if (refCount.getAndIncrement() <= 0) {
+        throw new IllegalStateException("Frame " + timestamp + " was already released");
+      }
+      return this;
+    }
+
+    /** Drops a reference. The frame must not be used by the caller afterwards. */
+    public void release() {
+      if (refCount.decrementAndGet() < 0) {
+        throw new IllegalStateException("Frame " + timestamp + " released too often");
+      }
+    }
+  }
+
+  private final int width;
+  private final int height;
+  private final int numLevels;
+  private final int numBands;
+  private final Executor executor;
+  private final Runnable[] bandTasks;
+  // Only touched by build.
+  private final List<Frame> frames = new ArrayList<Frame>();
+  private final AtomicInteger remainingBands = new AtomicInteger();
+  private volatile Thread waiter;
+  private volatile RuntimeException bandFailure;
+
+  // The build in progress. Written before the band tasks are handed to the executor, which
+  // publishes them to the band threads.
+  private LumaPyramid target;
+  private byte[] luma;
+  private int rowStride;
+
+  /**
+   * @param width Width of the luma plane.
+   * @param height Height of the luma plane.
+   * @param numLevels Levels per pyramid, including the full resolution one.
+   * @param numBands Number of bands each build is split into.
+   * @param executor Runs all bands but the first, which runs on the calling thread. May be null
+   *     when numBands is 1.
+   */
+  public LumaPyramidPool(
+      final int width,
+      final int height,
+      final int numLevels,
+      final int numBands,
+      final Executor executor) {
+    if (numBands < 1 || (numBands > 1 && executor == null)) {
+      throw new IllegalArgumentException("Need an executor for " + numBands + " bands");
+    }
+    this.width = width;
+    this.height = height;
+    this.numLevels = numLevels;
+    this.numBands = numBands;
+    this.executor = executor;
+    this.bandTasks = new Runnable[numBands];
+    for (int i = 0; i < numBands; ++i) {
+      final int band = i;
+      bandTasks[i] =
+          new Runnable() {
+            @Override
+            public void run() {
+              runBand(band);
+            }
+          };
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Builds the pyramid of a frame. Not reentrant.
+   *
+   * @param luma The Y plane of the frame; only read during this call.
+   * @param rowStride Distance between the starts of two rows in luma, in bytes.
+   * @param timestamp Identifies the frame to consumers.
+   * @return The frame, holding one reference owned by the caller.
+   */
+  public Frame build(final byte[] luma, final int rowStride, final long timestamp) {
+    final Frame frame = acquire();
+    frame.timestamp = timestamp;
+    target = frame.pyramid;
+    this.luma = luma;
+    this.rowStride = rowStride;
+
+    bandFailure = null;
+    waiter = Thread.currentThread();
+    remainingBands.set(numBands);
+    for (int i = 1; i < numBands; ++i) {
+      executor.execute(bandTasks[i]);
+    }
+    runBand(0);
+    while (remainingBands.get() != 0) {
+      LockSupport.park(this);
+    }
+
+    target = null;
+    this.luma = null;
+    final RuntimeException failure = bandFailure;
+    if (failure != null) {
+      frame.release();
+      throw failure;
+    }
+    return frame;
+  }
+
+  private Frame acquire() {
+    for (int i = 0; i < frames.size(); ++i) {
+      final Frame frame = frames.get(i);
+      if (frame.refCount.compareAndSet(0, 1)) {
+        return frame;
+      }
+    }
+    final Frame frame = new Frame(new LumaPyramid(width, height, numLevels));
+    frames.add(frame);
+    LOGGER.d("Luma pyramid pool grew to %d", frames.size());
+    frame.refCount.set(1);
+    return frame;
+  }
+
+  private void runBand(final int band) {
+    try {
+      // Align band edges so that every level of a band only reads rows of the same band.
+      final int alignment = 1 << (target.getNumLevels() - 1);
+      final int alignedRows = height / alignment;
+      final int startRow = alignedRows * band / numBands * alignment;
+      final int endRow =
+          band == numBands - 1 ? height : alignedRows * (band + 1) / numBands * alignment;
+      target.buildRows(luma, rowStride, startRow, endRow);
+    } catch (final RuntimeException e) {
+      bandFailure = e;
+    } finally {
+      if (remainingBands.decrementAndGet() == 0) {
+        LockSupport.unpark(waiter);
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.graphics.RectF;
+
+/**
+ * 64-bit difference hashes of camera frames. The frame is averaged down to a 9x8 grid and each bit
+ * tells whether a cell is darker than its right neighbour, so the hash survives exposure changes,
+ * noise and small shifts, and near-identical views differ in only a few bits.
+ */
+public final class PerceptualHash {
+  private static final int GRID_WIDTH = 9;
+  private static final int GRID_HEIGHT = 8;
+
+  private PerceptualHash() {}
+
+  /** Hashes a frame from the coarsest level of its pyramid. */
+  public static long compute(final LumaPyramid pyramid) {
+    final int level = pyramid.getNumLevels() - 1;
+    return compute(pyramid.getLevel(level), pyramid.getWidth(level), pyramid.getHeight(level));
+  }
+
+  /**
+   * Hashes the part of a frame inside a box, e.g. to follow the appearance of a tracked object. The
+   * box is read from the coarsest pyramid level that still gives every grid cell a few pixels.
+   *
+   * @param box The region in frame coordinates; clipped to the frame.
+   * @return The hash, or 0 if the box is smaller than the grid.
+   */
+  public static long compute(final LumaPyramid pyramid, final RectF box) {
+    final int width = pyramid.getWidth(0);
+    final int height = pyramid.getHeight(0);
+    final float left = Math.max(0, box.left);
+    final float top = Math.max(0, box.top);
+    final float right = Math.min(width, box.right);
+    final float bottom = Math.min(height, box.bottom);
+    int level = pyramid.getNumLevels() - 1;
+    while (level > 0
+        && ((right - left) / (1 << level) < 2 * GRID_WIDTH
+            || (bottom - top) / (1 << level) < 2 * GRID_HEIGHT)) {
+      --level;
+    }
+    final int x = (int) left >> level;
+    final int y = (int) top >> level;
+    final int w = Math.min((int) right >> level, pyramid.getWidth(level)) - x;
+    final int h = Math.min((int) bottom >> level, pyramid.getHeight(level)) - y;
+    if (w < GRID_WIDTH || h < GRID_HEIGHT) {
+      return 0;
+    }
+    return compute(pyramid.getLevel(level), pyramid.getWidth(level), x, y, w, h);
+  }
+
+  /**
+   * Hashes a tightly packed grayscale image, which must be at least as large as the grid.
+   *
+   * @param pixels Row-major pixels with a row stride equal to width.
+   */
+  public static long compute(final byte[] pixels, final int width, final int height) {
+    return compute(pixels, width, 0, 0, width, height);
+  }
+
+  /** Hashes the region of an image at (x, y) of size width x height, at least the grid's size. */
+  private static long compute(
+      final byte[] pixels,
+      final int stride,
+      final int x,
+      final int y,
+      final int width,
+      final int height) {
+    long hash = 0;
+    for (int gy = 0; gy < GRID_HEIGHT; ++gy) {
+      final int startY = y + height * gy / GRID_HEIGHT;
+      final int endY = y + height * (gy + 1) / GRID_HEIGHT;
+      int previous = 0;
+      for (int gx = 0; gx < GRID_WIDTH; ++gx) {
+        final int startX = x + width * gx / GRID_WIDTH;
+        final int endX = x + width * (gx + 1) / GRID_WIDTH;
+        int sum = 0;
+        for (int row = startY; row < endY; ++row) {
+          for (int i = row * stride + startX; i < row * stride + endX; ++i) {
+            sum += pixels[i] & 0xff;
+          }
+        }
+        // Cells may differ in size by a pixel, so compare means, in 1/256 units.
+        final int mean = (sum << 8) / ((endX - startX) * (endY - startY));
+        if (gx > 0) {
+          hash = (hash << 1) | (previous < mean ? 1 : 0);
+        }
+        previous = mean;
+      }
+    }
+    return hash;
+  }
+
+  /** Returns the number of bits in which two hashes differ. */
+  public static int distance(final long a, final long b) {
+    return Long.bitCount(a ^ b);
+  }
+}
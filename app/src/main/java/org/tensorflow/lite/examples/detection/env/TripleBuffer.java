@@ -0,0 +1,94 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free handoff of the latest of a stream of versioned values from one producer thread to
+ * one consumer thread, for values too large to allocate or copy per publish, such as tables of
+ * tracks. Like {@link VersionedReference}, the consumer always gets the most recent value and its
+ * version as one consistent pair and never blocks the producer; unlike it, the three values are
+ * preallocated and refilled in place.
+ *
+ * <p>The producer fills its back value and publishes it by swapping indices with the shared middle
+ * one; the consumer takes the middle one by swapping it with its front value. Each thread only
+ * ever touches the value it holds, so neither can see the other's writes in progress.
+ *
+ * @param <T> the type of the values.
+ */
+public final class TripleBuffer<T> {
+  private static final int INDEX_MASK = 3;
+  // Set in middle when it holds a value the consumer has not taken yet.
+  private static final int FRESH = 4;
+
+  private final Object[] values;
+  // Written by the producer before its value is published, read by the consumer after taking it.
+  private final long[] versions = {Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE};
+  private final AtomicInteger middle = new AtomicInteger(1);
+  // Only touched by the producer.
+  private int back = 0;
+  // Only touched by the consumer.
+  private int front = 2;
+
+  /** Takes three distinct, equally initialized values. */
+  public TripleBuffer(final T first, final T second, final T third) {
+    if (first == second || second == third || first == third) {
+      throw new IllegalArgumentException("A triple buffer needs three distinct values");
+    }
+    values = new Object[] {first, second, third};
+  }
+
+  /** Returns the value for the producer to fill next. Producer only. */
+  @SuppressWarnings("unchecked")
+  public T getBack() {
+    return (T) values[back];
+  }
+
+  /**
+   * Hands the filled back value to the consumer, replacing any it has not taken yet, and makes an
+   * older one the back value. Producer only.
+   */
+  public void publish(final long version) {
+    versions[back] = version;
+    back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * Makes the latest published value the front value if one arrived since the last call. Consumer
+   * only.
+   *
+   * @return Whether the front value changed.
+   */
+  public boolean update() {
+    if ((middle.get() & FRESH) == 0) {
+      return false;
+    }
+    front = middle.getAndSet(front) & INDEX_MASK;
+    return true;
+  }
+
+  /** Returns the value taken by the last {@link #update()}. Consumer only. */
+  @SuppressWarnings("unchecked")
+  public T getFront() {
+    return (T) values[front];
+  }
+
+  /** Returns the version of the front value, Long.MIN_VALUE before any. Consumer only. */
+  public long getFrontVersion() {
+    return versions[front];
+  }
+}
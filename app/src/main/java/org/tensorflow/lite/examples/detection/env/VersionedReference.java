@@ -0,0 +1,85 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free, single-slot handoff of immutable values between threads. Producers publish a new
+ * value tagged with a version; readers always get the most recent value and its version as one
+ * consistent pair and never block the producer. Published values must not be mutated afterwards.
+ *
+ * @param <T> the type of the published value.
+ */
+public final class VersionedReference<T> {
+  /** An immutable pairing of a published value and its version. */
+  public static final class Versioned<T> {
+    private final long version;
+    private final T value;
+
+    Versioned(final long version, final T value) {
+      this.version = version;
+      this.value = value;
+    }
+
+    public long getVersion() {
+      return version;
+    }
+
+    public T getValue() {
+      return value;
+    }
+  }
+
+  private final AtomicReference<Versioned<T>> current;
+
+  public VersionedReference(final T initialValue) {
+    current = new AtomicReference<>(new Versioned<T>(Long.MIN_VALUE, initialValue));
+  }
+
+  /**
+   * Publishes value unless a value with the same or a newer version is already visible, so a slow
+   * producer can never roll readers back to an older frame.
+   *
+   * @return true if the value was published.
+   */
+  public boolean publish(final long version, final T value) {
+    final Versioned<T> next = new Versioned<T>(version, value);
+    while (true) {
+      final Versioned<T> previous = current.get();
+      if (previous.version >= version) {
+        return false;
+      }
+      if (current.compareAndSet(previous, next)) {
+        return true;
+      }
+    }
+  }
+
+  /** Returns the latest value together with its version. */
+  public Versioned<T> snapshot() {
+    return current.get();
+  }
+
+  /** Returns the latest value. */
+  public T get() {
+    return current.get().value;
+  }
+
+  public long getVersion() {
+    return current.get().version;
+  }
+}
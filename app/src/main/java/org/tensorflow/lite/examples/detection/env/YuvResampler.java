@@ -0,0 +1,367 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.graphics.Matrix;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Resamples a YUV camera frame straight into model input tensors, several at once. Each {@link
+ * Target} has its own size, frame-to-target transform and format (uint8 RGB or normalized float
+ * RGB, row-major HWC); its pixels take the nearest source pixel, which matches drawing the
+ * converted frame through a Canvas without filtering. Pixels mapping outside the frame are zero.
+ *
+ * <p>The work is split into horizontal bands that cover the same fraction of every target. Since
+ * all targets are crops of the same frame, one band reads roughly the same region of the source for
+ * each of them while it is still in cache. Bands run in parallel on the given executor, with the
+ * calling thread taking the first one; nothing is allocated per frame.
+ */
+public final class YuvResampler {
+  /** A reused input tensor filled by the resampler. */
+  public static final class Target {
+    private final int width;
+    private final int height;
+    private final ByteBuffer buffer;
+    private final FloatBuffer floatView;
+    // Channel value to output value for float targets.
+    private final float[] normalized;
+    // Independent views of the tensor, one per band, so that bands can bulk-write rows at once.
+    private ByteBuffer[] bandBuffers;
+    private FloatBuffer[] bandFloatViews;
+    // Scratch for setTransform, which is called again whenever a zoomed region moves.
+    private final Matrix targetToFrame = new Matrix();
+    private final float[] transformValues = new float[9];
+
+    // Affine map from target to source coordinates:
+    // sx = scaleX * x + skewX * y + transX, sy = skewY * x + scaleY * y + transY.
+    private float scaleX = 1;
+    private float skewX;
+    private float transX;
+    private float skewY;
+    private float scaleY = 1;
+    private float transY;
+
+    private Target(final int width, final int height, final boolean isFloat) {
+      this.width = width;
+      this.height = height;
+      this.buffer =
+          ByteBuffer.allocateDirect(width * height * 3 * (isFloat ? 4 : 1))
+              .order(ByteOrder.nativeOrder());
+      this.floatView = isFloat ? buffer.asFloatBuffer() : null;
+      this.normalized = isFloat ? new float[256] : null;
+    }
+
+    /** A target of one byte per channel, as taken by quantized models. */
+    public static Target uint8(final int width, final int height) {
+      return new Target(width, height, false);
+    }
+
+    /** A target of floats computed as (value - mean) / std for each channel value in [0, 255]. */
+    public static Target float32(
+        final int width, final int height, final float mean, final float std) {
+      final Target target = new Target(width, height, true);
+      for (int i = 0; i < 256; ++i) {
+        target.normalized[i] = (i - mean) / std;
+      }
+      return target;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /** Returns the tensor, rewound. It is overwritten by the next resample that includes it. */
+    public ByteBuffer getBuffer() {
+      buffer.rewind();
+      return buffer;
+    }
+
+    /** Returns a float view of the tensor, rewound. Only valid for float targets. */
+    public FloatBuffer getFloatBuffer() {
+      floatView.rewind();
+      return floatView;
+    }
+
+    /** Sets the transform from frame to target coordinates, e.g. from getTransformationMatrix. */
+    public void setTransform(final Matrix frameToTarget) {
+      if (!frameToTarget.invert(targetToFrame)) {
+        throw new IllegalArgumentException("Frame transform is not invertible");
+      }
+      targetToFrame.getValues(transformValues);
+      setInverseTransform(transformValues);
+    }
+
+    private void ensureBandViews(final int numBands) {
+      if (bandBuffers != null && bandBuffers.length == numBands) {
+        return;
+      }
+      bandBuffers = new ByteBuffer[numBands];
+      bandFloatViews = floatView != null ? new FloatBuffer[numBands] : null;
+      for (int i = 0; i < numBands; ++i) {
+        bandBuffers[i] = buffer.duplicate();
+        if (floatView != null) {
+          bandFloatViews[i] = floatView.duplicate();
+        }
+      }
+    }
+
+    /** Sets the target-to-frame transform from the nine values of an affine Matrix. */
+    void setInverseTransform(final float[] values) {
+      scaleX = values[Matrix.MSCALE_X];
+      skewX = values[Matrix.MSKEW_X];
+      transX = values[Matrix.MTRANS_X];
+      skewY = values[Matrix.MSKEW_Y];
+      scaleY = values[Matrix.MSCALE_Y];
+      transY = values[Matrix.MTRANS_Y];
+    }
+  }
+
+  private final int numBands;
+  private final Executor executor;
+  private final Runnable[] bandTasks;
+  // Per-band scratch rows, grown to the widest target.
+  private final byte[][] byteRows;
+  private final float[][] floatRows;
+  private final AtomicInteger remainingBands = new AtomicInteger();
+  private volatile Thread waiter;
+  private volatile RuntimeException bandFailure;
+
+  // The frame being resampled. Written before the band tasks are handed to the executor, which
+  // publishes them to the band threads.
+  private Target[] targets;
+  private byte[] yData;
+  private byte[] uData;
+  private int uStart;
+  private byte[] vData;
+  private int vStart;
+  private int frameWidth;
+  private int frameHeight;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+
+  /**
+   * @param numBands Number of bands each resample is split into.
+   * @param executor Runs all bands but the first, which runs on the calling thread. May be null
+   *     when numBands is 1.
+   */
+  public YuvResampler(final int numBands, final Executor executor) {
+    if (numBands < 1 || (numBands > 1 && executor == null)) {
+      throw new IllegalArgumentException("Need an executor for " + numBands + " bands");
+    }
+    this.numBands = numBands;
+    this.executor = executor;
+    this.bandTasks = new Runnable[numBands];
+    this.byteRows = new byte[numBands][0];
+    this.floatRows = new float[numBands][0];
+    for (int i = 0; i < numBands; ++i) {
+      final int band = i;
+      bandTasks[i] =
+          new Runnable() {
+            @Override
+            public void run() {
+              runBand(band);
+            }
+          };
+    }
+  }
+
+  /**
+   * Resamples a YUV_420_888 frame given as three planes, as delivered by Camera2, into every
+   * target. Returns once all targets are written. Not reentrant.
+   */
+  public void writeYUV420(
+      final Target[] targets,
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int frameWidth,
+      final int frameHeight,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    write(
+        targets,
+        yData,
+        uData,
+        0,
+        vData,
+        0,
+        frameWidth,
+        frameHeight,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride);
+  }
+
+  /**
+   * Resamples an NV21 frame, as delivered by the legacy camera API, into every target. Returns once
+   * all targets are written. Not reentrant.
+   */
+  public void writeNV21(
+      final Target[] targets, final byte[] data, final int frameWidth, final int frameHeight) {
+    // Interleaved VU plane following the luma plane.
+    final int uvStart = frameWidth * frameHeight;
+    write(
+        targets,
+        data,
+        data,
+        uvStart + 1,
+        data,
+        uvStart,
+        frameWidth,
+        frameHeight,
+        frameWidth,
+        frameWidth,
+        2);
+  }
+
+  private void write(
+      final Target[] targets,
+      final byte[] yData,
+      final byte[] uData,
+      final int uStart,
+      final byte[] vData,
+      final int vStart,
+      final int frameWidth,
+      final int frameHeight,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    this.targets = targets;
+    this.yData = yData;
+    this.uData = uData;
+    this.uStart = uStart;
+    this.vData = vData;
+    this.vStart = vStart;
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+    for (final Target target : targets) {
+      target.ensureBandViews(numBands);
+      if (target.normalized != null && floatRows[0].length < target.width * 3) {
+        for (int i = 0; i < numBands; ++i) {
+          floatRows[i] = new float[target.width * 3];
+        }
+      } else if (target.normalized == null && byteRows[0].length < target.width * 3) {
+        for (int i = 0; i < numBands; ++i) {
+          byteRows[i] = new byte[target.width * 3];
+        }
+      }
+    }
+
+    bandFailure = null;
+    waiter = Thread.currentThread();
+    remainingBands.set(numBands);
+    for (int i = 1; i < numBands; ++i) {
+      executor.execute(bandTasks[i]);
+    }
+    runBand(0);
+    while (remainingBands.get() != 0) {
+      LockSupport.park(this);
+    }
+
+    this.targets = null;
+    this.yData = null;
+    this.uData = null;
+    this.vData = null;
+    final RuntimeException failure = bandFailure;
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void runBand(final int band) {
+    try {
+      for (final Target target : targets) {
+        final int startRow = target.height * band / numBands;
+        final int endRow = target.height * (band + 1) / numBands;
+        if (target.normalized != null) {
+          final FloatBuffer out = target.bandFloatViews[band];
+          out.position(startRow * target.width * 3);
+          final float[] row = floatRows[band];
+          for (int y = startRow; y < endRow; ++y) {
+            writeFloatRow(target, y, row);
+            out.put(row, 0, target.width * 3);
+          }
+        } else {
+          final ByteBuffer out = target.bandBuffers[band];
+          out.position(startRow * target.width * 3);
+          final byte[] row = byteRows[band];
+          for (int y = startRow; y < endRow; ++y) {
+            writeByteRow(target, y, row);
+            out.put(row, 0, target.width * 3);
+          }
+        }
+      }
+    } catch (final RuntimeException e) {
+      bandFailure = e;
+    } finally {
+      if (remainingBands.decrementAndGet() == 0) {
+        LockSupport.unpark(waiter);
+      }
+    }
+  }
+
+  /** Returns the converted source pixel under target pixel (x, y), or 0 outside the frame. */
+  private int samplePixel(final Target target, final float rowX, final float rowY, final int x) {
+    // Sample at pixel centers.
+    final int sx = (int) Math.floor(target.scaleX * (x + 0.5f) + rowX);
+    final int sy = (int) Math.floor(target.skewY * (x + 0.5f) + rowY);
+    if (sx < 0 || sy < 0 || sx >= frameWidth || sy >= frameHeight) {
+      return 0;
+    }
+    final int uvOffset = (sy >> 1) * uvRowStride + (sx >> 1) * uvPixelStride;
+    return ImageUtils.convertPixel(
+        0xff & yData[sy * yRowStride + sx],
+        0xff & uData[uStart + uvOffset],
+        0xff & vData[vStart + uvOffset]);
+  }
+
+  private void writeFloatRow(final Target target, final int y, final float[] row) {
+    final float[] normalized = target.normalized;
+    final float rowX = target.skewX * (y + 0.5f) + target.transX;
+    final float rowY = target.scaleY * (y + 0.5f) + target.transY;
+    for (int x = 0, i = 0; x < target.width; ++x) {
+      final int argb = samplePixel(target, rowX, rowY, x);
+      row[i++] = normalized[(argb >> 16) & 0xff];
+      row[i++] = normalized[(argb >> 8) & 0xff];
+      row[i++] = normalized[argb & 0xff];
+    }
+  }
+
+  private void writeByteRow(final Target target, final int y, final byte[] row) {
+    final float rowX = target.skewX * (y + 0.5f) + target.transX;
+    final float rowY = target.scaleY * (y + 0.5f) + target.transY;
+    for (int x = 0, i = 0; x < target.width; ++x) {
+      final int argb = samplePixel(target, rowX, rowY, x);
+      row[i++] = (byte) (argb >> 16);
+      row[i++] = (byte) (argb >> 8);
+      row[i++] = (byte) argb;
+    }
+  }
+}
@@ -17,12 +17,30 @@ package org.tensorflow.lite.examples.detection.tflite;
 
 import android.graphics.Bitmap;
 import android.graphics.RectF;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /** Generic interface for interacting with different recognition engines. */
 public interface Classifier {
   List<Recognition> recognizeImage(Bitmap bitmap);
 
+  /**
+   * Runs recognition on the bitmap and writes the results into a caller-owned batch, without
+   * allocating per-detection objects. The batch is cleared first.
+   */
+  void recognizeImage(Bitmap bitmap, Detections results);
+
+  /**
+   * Runs recognition on an input that is already laid out as the model's input tensor: RGB rows of
+   * inputSize x inputSize pixels, one byte per channel for quantized models, otherwise floats
+   * normalized with {@link DetectorManifest#FLOAT_INPUT_MEAN} and {@link
+   * DetectorManifest#FLOAT_INPUT_STD}. The batch is cleared first.
+   */
+  void recognizeImage(ByteBuffer input, Detections results);
+
+  /** Returns the label table that class indices in {@link Detections} refer to. */
+  LabelTable getLabels();
+
   void enableStatLogging(final boolean debug);
 
   String getStatString();
@@ -47,13 +65,13 @@ public interface Classifier {
     /**
      * A sortable score for how good the recognition is relative to others. Higher should be better.
      */
-    private final Float confidence;
+    private final float confidence;
 
     /** Optional location within the source image for the location of the recognized object. */
     private RectF location;
 
     public Recognition(
-        final String id, final String title, final Float confidence, final RectF location) {
+        final String id, final String title, final float confidence, final RectF location) {
       this.id = id;
       this.title = title;
       this.confidence = confidence;
@@ -68,7 +86,7 @@ public interface Classifier {
       return title;
     }
 
-    public Float getConfidence() {
+    public float getConfidence() {
       return confidence;
     }
 
@@ -91,9 +109,7 @@ public interface Classifier {
         resultString += title + " ";
       }
 
-      if (confidence != null) {
-        resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-      }
+      resultString += String.format("(%.1f%%) ", confidence * 100.0f);
 
       if (location != null) {
         resultString += location + " ";
@@ -0,0 +1,190 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A reusable batch of detections stored as a struct of primitive arrays: a class index into a
+ * {@link LabelTable}, a score and a box per detection. Nothing is boxed and no per-detection
+ * objects are created, so a batch can be refilled every frame and copied between pipeline stages
+ * cheaply.
+ */
+public final class Detections {
+  private static final int BOX_STRIDE = 4;
+
+  private LabelTable labels;
+  private int count;
+  private int[] classIndices;
+  private float[] scores;
+  // left, top, right, bottom per detection.
+  private float[] boxes;
+
+  public Detections(final LabelTable labels, final int initialCapacity) {
+    this.labels = labels;
+    final int capacity = Math.max(initialCapacity, 1);
+    classIndices = new int[capacity];
+    scores = new float[capacity];
+    boxes = new float[capacity * BOX_STRIDE];
+  }
+
+  public LabelTable getLabels() {
+    return labels;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public void clear() {
+    count = 0;
+  }
+
+  public void add(
+      final int classIndex,
+      final float score,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    ensureCapacity(count + 1);
+    classIndices[count] = classIndex;
+    scores[count] = score;
+    final int b = count * BOX_STRIDE;
+    boxes[b] = left;
+    boxes[b + 1] = top;
+    boxes[b + 2] = right;
+    boxes[b + 3] = bottom;
+    ++count;
+  }
+
+  public int getClassIndex(final int i) {
+    return classIndices[i];
+  }
+
+  public float getScore(final int i) {
+    return scores[i];
+  }
+
+  public float getLeft(final int i) {
+    return boxes[i * BOX_STRIDE];
+  }
+
+  public float getTop(final int i) {
+    return boxes[i * BOX_STRIDE + 1];
+  }
+
+  public float getRight(final int i) {
+    return boxes[i * BOX_STRIDE + 2];
+  }
+
+  public float getBottom(final int i) {
+    return boxes[i * BOX_STRIDE + 3];
+  }
+
+  /** Writes the box of detection i into out, avoiding a RectF allocation. */
+  public void getLocation(final int i, final RectF out) {
+    final int b = i * BOX_STRIDE;
+    out.set(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3]);
+  }
+
+  /** Resolves the display label of detection i. Intended for the UI/TTS edge only. */
+  public String getTitle(final int i) {
+    return labels != null ? labels.get(classIndices[i]) : null;
+  }
+
+  /** Drops every detection scoring below minScore, preserving the order of the rest. */
+  public void retainAboveScore(final float minScore) {
+    int kept = 0;
+    for (int i = 0; i < count; ++i) {
+      if (scores[i] < minScore) {
+        continue;
+      }
+      if (kept != i) {
+        classIndices[kept] = classIndices[i];
+        scores[kept] = scores[i];
+        System.arraycopy(boxes, i * BOX_STRIDE, boxes, kept * BOX_STRIDE, BOX_STRIDE);
+      }
+      ++kept;
+    }
+    count = kept;
+  }
+
+  /**
+   * Maps every box through the given transform in place. Boxes are kept axis-aligned, so this
+   * matches {@link Matrix#mapRect(RectF)} for the 90 degree rotations used by the pipeline.
+   */
+  public void mapBoxes(final Matrix transform) {
+    if (count == 0) {
+      return;
+    }
+    transform.mapPoints(boxes, 0, boxes, 0, count * 2);
+    for (int b = 0; b < count * BOX_STRIDE; b += BOX_STRIDE) {
+      final float x0 = boxes[b];
+      final float y0 = boxes[b + 1];
+      final float x1 = boxes[b + 2];
+      final float y1 = boxes[b + 3];
+      boxes[b] = Math.min(x0, x1);
+      boxes[b + 1] = Math.min(y0, y1);
+      boxes[b + 2] = Math.max(x0, x1);
+      boxes[b + 3] = Math.max(y0, y1);
+    }
+  }
+
+  /** Replaces the contents of this batch with a copy of other. */
+  public void copyFrom(final Detections other) {
+    labels = other.labels;
+    ensureCapacity(other.count);
+    System.arraycopy(other.classIndices, 0, classIndices, 0, other.count);
+    System.arraycopy(other.scores, 0, scores, 0, other.count);
+    System.arraycopy(other.boxes, 0, boxes, 0, other.count * BOX_STRIDE);
+    count = other.count;
+  }
+
+  /** Converts detection i to a {@link Classifier.Recognition}, resolving its label. */
+  public Classifier.Recognition toRecognition(final int i) {
+    final RectF location = new RectF();
+    getLocation(i, location);
+    return new Classifier.Recognition("" + i, getTitle(i), scores[i], location);
+  }
+
+  public List<Classifier.Recognition> toRecognitions() {
+    final List<Classifier.Recognition> recognitions = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      recognitions.add(toRecognition(i));
+    }
+    return recognitions;
+  }
+
+  private void ensureCapacity(final int capacity) {
+    if (capacity <= classIndices.length) {
+      return;
+    }
+    final int newCapacity = Math.max(capacity, classIndices.length * 2);
+    final int[] newClassIndices = new int[newCapacity];
+    final float[] newScores = new float[newCapacity];
+    final float[] newBoxes = new float[newCapacity * BOX_STRIDE];
+    System.arraycopy(classIndices, 0, newClassIndices, 0, count);
+    System.arraycopy(scores, 0, newScores, 0, count);
+    System.arraycopy(boxes, 0, newBoxes, 0, count * BOX_STRIDE);
+    classIndices = newClassIndices;
+    scores = newScores;
+    boxes = newBoxes;
+  }
+}
@@ -0,0 +1,110 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+/** Describes a detection model: where it lives, what it expects and how to read its outputs. */
+public final class DetectorManifest {
+  /** How the raw output tensors of a detection model are laid out. */
+  public enum OutputLayout {
+    /**
+     * The TFLite_Detection_PostProcess layout: boxes [1, N, 4] as (top, left, bottom, right) in
+     * normalized coordinates, then classes [1, N], scores [1, N] and the detection count [1].
+     */
+    SSD_POSTPROCESSED
+  }
+
+  /** Float models expect each channel value in [0, 255] as (value - mean) / std. */
+  public static final float FLOAT_INPUT_MEAN = 128.0f;
+
+  public static final float FLOAT_INPUT_STD = 128.0f;
+
+  private final String name;
+  private final String modelFilename;
+  private final String labelFilename;
+  private final int inputSize;
+  private final boolean isQuantized;
+  private final OutputLayout outputLayout;
+  private final int numDetections;
+  private final int labelOffset;
+
+  /**
+   * @param name Unique name the model is registered under.
+   * @param modelFilename The asset path of the .tflite model.
+   * @param labelFilename The filepath of label file for classes.
+   * @param inputSize The size of the square image input.
+   * @param isQuantized Whether the model takes uint8 input instead of normalized floats.
+   * @param outputLayout How the output tensors are laid out.
+   * @param numDetections The number of detections the model emits per frame.
+   * @param labelOffset Added to each output class before looking it up in the label file, e.g. 1
+   *     when the label file starts with a background class the model does not emit.
+   */
+  public DetectorManifest(
+      final String name,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final OutputLayout outputLayout,
+      final int numDetections,
+      final int labelOffset) {
+    this.name = name;
+    this.modelFilename = modelFilename;
+    this.labelFilename = labelFilename;
+    this.inputSize = inputSize;
+    this.isQuantized = isQuantized;
+    this.outputLayout = outputLayout;
+    this.numDetections = numDetections;
+    this.labelOffset = labelOffset;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getModelFilename() {
+    return modelFilename;
+  }
+
+  public String getLabelFilename() {
+    return labelFilename;
+  }
+
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  public boolean isQuantized() {
+    return isQuantized;
+  }
+
+  public OutputLayout getOutputLayout() {
+    return outputLayout;
+  }
+
+  public int getNumDetections() {
+    return numDetections;
+  }
+
+  public int getLabelOffset() {
+    return labelOffset;
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + modelFilename + ", " + inputSize + "x" + inputSize
+        + (isQuantized ? ", quantized)" : ", float)");
+  }
+}
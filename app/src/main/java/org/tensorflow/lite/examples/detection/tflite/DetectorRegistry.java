@@ -0,0 +1,109 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the detection models the app knows about and of the engines able to run each output
+ * layout. New models are added by registering a {@link DetectorManifest}; new output layouts by
+ * registering an {@link Engine}.
+ */
+public final class DetectorRegistry {
+  /** Builds a {@link Classifier} for models with a particular output layout. */
+  public interface Engine {
+    Classifier create(AssetManager assetManager, ModelCache modelCache, DetectorManifest manifest)
+        throws IOException;
+  }
+
+  /** The quantized COCO SSD MobileNet v1 shipped in assets. */
+  public static final DetectorManifest SSD_MOBILENET_V1_QUANT =
+      new DetectorManifest(
+          "ssd_mobilenet_v1_quant",
+          "detect.tflite",
+          "file:///android_asset/labelmap.txt",
+          300,
+          true,
+          DetectorManifest.OutputLayout.SSD_POSTPROCESSED,
+          10,
+          1);
+
+  private static final Map<String, DetectorManifest> manifests = new LinkedHashMap<>();
+  private static final Map<DetectorManifest.OutputLayout, Engine> engines =
+      new EnumMap<>(DetectorManifest.OutputLayout.class);
+
+  static {
+    register(SSD_MOBILENET_V1_QUANT);
+    registerEngine(
+        DetectorManifest.OutputLayout.SSD_POSTPROCESSED,
+        new Engine() {
+          @Override
+          public Classifier create(
+              final AssetManager assetManager,
+              final ModelCache modelCache,
+              final DetectorManifest manifest)
+              throws IOException {
+            return TFLiteObjectDetectionAPIModel.create(assetManager, modelCache, manifest);
+          }
+        });
+  }
+
+  private DetectorRegistry() {}
+
+  public static synchronized void register(final DetectorManifest manifest) {
+    manifests.put(manifest.getName(), manifest);
+  }
+
+  public static synchronized void registerEngine(
+      final DetectorManifest.OutputLayout layout, final Engine engine) {
+    engines.put(layout, engine);
+  }
+
+  /** Returns the manifest registered under name, or null if there is none. */
+  public static synchronized DetectorManifest get(final String name) {
+    return manifests.get(name);
+  }
+
+  public static synchronized List<DetectorManifest> getAll() {
+    return new ArrayList<>(manifests.values());
+  }
+
+  /**
+   * Loads the model described by manifest with the engine registered for its output layout.
+   *
+   * @param modelCache Cache for accelerator compilations, or null to compile on every load.
+   */
+  public static Classifier create(
+      final AssetManager assetManager,
+      final ModelCache modelCache,
+      final DetectorManifest manifest)
+      throws IOException {
+    final Engine engine;
+    synchronized (DetectorRegistry.class) {
+      engine = engines.get(manifest.getOutputLayout());
+    }
+    if (engine == null) {
+      throw new IOException("No engine registered for " + manifest.getOutputLayout());
+    }
+    return engine.create(assetManager, modelCache, manifest);
+  }
+}
@@ -0,0 +1,100 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable table of class labels, indexed by the class index emitted by a detection model.
+ * Detections carry only the index; the label string is looked up at the UI/TTS edge.
+ */
+public final class LabelTable {
+  private static final String ASSET_PREFIX = "file:///android_asset/";
+  // Parsed tables by asset name; label files never change while the app runs.
+  private static final Map<String, LabelTable> loaded = new ConcurrentHashMap<>();
+
+  private final String[] labels;
+
+  private LabelTable(final String[] labels) {
+    this.labels = labels;
+  }
+
+  /**
+   * Returns the label table for a label file in assets, reading it on first use. Tables are shared
+   * across detectors, so this may be called ahead of time to take the parsing off the critical
+   * path.
+   *
+   * @param assetManager The asset manager to be used to load assets.
+   * @param labelFilename The filepath of label file for classes, optionally prefixed with
+   *     file:///android_asset/.
+   */
+  public static LabelTable load(final AssetManager assetManager, final String labelFilename)
+      throws IOException {
+    final String actualFilename =
+        labelFilename.startsWith(ASSET_PREFIX)
+            ? labelFilename.substring(ASSET_PREFIX.length())
+            : labelFilename;
+    final LabelTable cached = loaded.get(actualFilename);
+    if (cached != null) {
+      return cached;
+    }
+    final LabelTable table = read(assetManager.open(actualFilename));
+    loaded.put(actualFilename, table);
+    return table;
+  }
+
+  /** Reads a label table from a stream, one label per line. The stream is closed. */
+  public static LabelTable read(final InputStream labelsInput) throws IOException {
+    final List<String> lines = new ArrayList<>();
+    final BufferedReader br = new BufferedReader(new InputStreamReader(labelsInput));
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        lines.add(line.intern());
+      }
+    } finally {
+      br.close();
+    }
+    return new LabelTable(lines.toArray(new String[0]));
+  }
+
+  public int size() {
+    return labels.length;
+  }
+
+  /** Returns the label for the given class index, or null if the index is out of range. */
+  public String get(final int index) {
+    return index >= 0 && index < labels.length ? labels[index] : null;
+  }
+
+  /** Returns the class index of the given label, or -1 if it is not in the table. */
+  public int indexOf(final String label) {
+    for (int i = 0; i < labels.length; ++i) {
+      if (labels[i].equals(label)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
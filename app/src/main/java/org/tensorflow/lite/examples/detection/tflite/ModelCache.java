@@ -0,0 +1,175 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.Context;
+import android.os.Build;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * On-disk cache of accelerator compilations, so that NNAPI does not recompile a model on every
+ * launch. Each model gets a token derived from the hash of its contents and the device fingerprint,
+ * and its own cache directory named after the token.
+ *
+ * <p>The token changes whenever the model file changes, in which case the directory compiled for
+ * the previous version is deleted. A changed device fingerprint (e.g. after a system update, which
+ * may ship a new NNAPI driver) discards the whole cache.
+ */
+public final class ModelCache {
+  private static final Logger LOGGER = new Logger();
+
+  private static final String CACHE_DIRNAME = "tflite_cache";
+  private static final String INDEX_FILENAME = "index.properties";
+  private static final String FINGERPRINT_KEY = "device.fingerprint";
+  private static final String TOKEN_KEY_PREFIX = "token.";
+  // NNAPI cache tokens are 32 bytes; TFLite hashes the string, so keep it to 32 hex characters.
+  private static final int TOKEN_LENGTH = 32;
+
+  private static ModelCache instance;
+
+  private final File dir;
+  private final Properties index = new Properties();
+
+  private ModelCache(final File dir) {
+    this.dir = dir;
+  }
+
+  /** Returns the shared cache, opening it on first use. Does disk I/O. */
+  public static synchronized ModelCache getInstance(final Context context) {
+    if (instance == null) {
+      instance = new ModelCache(new File(context.getCodeCacheDir(), CACHE_DIRNAME));
+      instance.open();
+    }
+    return instance;
+  }
+
+  private void open() {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      LOGGER.w("Could not create model cache in %s", dir);
+      return;
+    }
+    final File indexFile = new File(dir, INDEX_FILENAME);
+    if (indexFile.exists()) {
+      try {
+        final InputStream in = new FileInputStream(indexFile);
+        try {
+          index.load(in);
+        } finally {
+          in.close();
+        }
+      } catch (final IOException e) {
+        LOGGER.e(e, "Could not read model cache index, discarding the cache");
+        index.clear();
+      }
+    }
+    if (!Build.FINGERPRINT.equals(index.getProperty(FINGERPRINT_KEY))) {
+      LOGGER.i("Device fingerprint changed, discarding model cache");
+      deleteContents(dir);
+      index.clear();
+      index.setProperty(FINGERPRINT_KEY, Build.FINGERPRINT);
+      saveIndex();
+    }
+  }
+
+  /**
+   * Returns the cache token for a model, deleting anything compiled for an earlier version of the
+   * same model file. Hashes the whole model, so call it off the UI thread.
+   *
+   * @param modelFilename Identifies the model across launches.
+   * @param model The model contents; its position and limit are left untouched.
+   */
+  public synchronized String getModelToken(final String modelFilename, final ByteBuffer model) {
+    final String token = computeToken(model);
+    final String key = TOKEN_KEY_PREFIX + modelFilename;
+    final String previous = index.getProperty(key);
+    if (!token.equals(previous)) {
+      if (previous != null) {
+        LOGGER.i("Model %s changed, invalidating its cached compilation", modelFilename);
+        final File stale = new File(dir, previous);
+        deleteContents(stale);
+        stale.delete();
+      }
+      index.setProperty(key, token);
+      saveIndex();
+    }
+    return token;
+  }
+
+  /** Returns the directory holding the compiled artifacts for a token from getModelToken. */
+  public File getCompilationCacheDir(final String token) {
+    final File tokenDir = new File(dir, token);
+    if (!tokenDir.isDirectory() && !tokenDir.mkdirs()) {
+      LOGGER.w("Could not create %s", tokenDir);
+    }
+    return tokenDir;
+  }
+
+  private static String computeToken(final ByteBuffer model) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(model.duplicate());
+    digest.update(Build.FINGERPRINT.getBytes());
+    final byte[] hash = digest.digest();
+    final StringBuilder token = new StringBuilder(TOKEN_LENGTH);
+    for (int i = 0; token.length() < TOKEN_LENGTH; ++i) {
+      token.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+      token.append(Character.forDigit(hash[i] & 0xF, 16));
+    }
+    return token.toString();
+  }
+
+  private void saveIndex() {
+    try {
+      final OutputStream out = new FileOutputStream(new File(dir, INDEX_FILENAME));
+      try {
+        index.store(out, null);
+      } finally {
+        out.close();
+      }
+    } catch (final IOException e) {
+      LOGGER.e(e, "Could not write model cache index");
+    }
+  }
+
+  private static void deleteContents(final File directory) {
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (final File file : files) {
+      if (file.isDirectory()) {
+        deleteContents(file);
+      }
+      if (!file.delete()) {
+        LOGGER.w("Could not delete %s", file);
+      }
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typical physical sizes of detector classes, keyed by the labels of the label table. Read from an
+ * asset with one "label,height,width" line per class, in meters; lines starting with # are
+ * comments. Classes without a line have no prior.
+ */
+public final class SizePriors {
+  /** The asset shipped with the app, matching labelmap.txt. */
+  public static final String DEFAULT_FILENAME = "object_sizes.txt";
+
+  // Parsed priors by asset name; like label files they never change while the app runs.
+  private static final Map<String, SizePriors> loaded = new ConcurrentHashMap<>();
+
+  private final Map<String, float[]> sizes;
+
+  private SizePriors(final Map<String, float[]> sizes) {
+    this.sizes = sizes;
+  }
+
+  /**
+   * Returns the priors in an asset, reading it on first use, so this may be called ahead of time
+   * to take the parsing off the critical path.
+   */
+  public static SizePriors load(final AssetManager assetManager, final String filename)
+      throws IOException {
+    final SizePriors cached = loaded.get(filename);
+    if (cached != null) {
+      return cached;
+    }
+    final SizePriors priors = read(assetManager.open(filename));
+    loaded.put(filename, priors);
+    return priors;
+  }
+
+  /** Reads the priors from a stream, which is closed. */
+  public static SizePriors read(final InputStream input) throws IOException {
+    final Map<String, float[]> sizes = new HashMap<>();
+    final BufferedReader br = new BufferedReader(new InputStreamReader(input));
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        final String[] fields = line.split(",");
+        if (fields.length != 3) {
+          throw new IOException("Expected label,height,width but got: " + line);
+        }
+        try {
+          sizes.put(
+              fields[0].trim(),
+              new float[] {Float.parseFloat(fields[1].trim()), Float.parseFloat(fields[2].trim())});
+        } catch (final NumberFormatException e) {
+          throw new IOException("Bad size in: " + line, e);
+        }
+      }
+    } finally {
+      br.close();
+    }
+    return new SizePriors(sizes);
+  }
+
+  /** Returns the typical height of a class in meters, or NaN if it has no prior. */
+  public float getHeight(final String label) {
+    final float[] size = label != null ? sizes.get(label) : null;
+    return size != null ? size[0] : Float.NaN;
+  }
+
+  /** Returns the typical width of a class in meters, or NaN if it has no prior. */
+  public float getWidth(final String label) {
+    final float[] size = label != null ? sizes.get(label) : null;
+    return size != null ? size[1] : Float.NaN;
+  }
+}
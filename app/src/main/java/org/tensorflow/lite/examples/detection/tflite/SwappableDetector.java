@@ -0,0 +1,232 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.os.SystemClock;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * A {@link Classifier} that delegates to a model chosen from the {@link DetectorRegistry} and can
+ * be switched to a different model at runtime.
+ *
+ * <p>A requested model is loaded and warmed up on an executor given by the caller while the current
+ * one keeps serving frames. The switch itself only happens when the pipeline calls {@link #cutOverIfReady()}
+ * at a point where no inference is in flight. The replaced model is handed back rather than
+ * closed, so the caller can close it on the thread that may still be applying settings to it.
+ */
+public class SwappableDetector implements Classifier {
+  private static final Logger LOGGER = new Logger();
+
+  private final AssetManager assetManager;
+  private final ModelCache modelCache;
+
+  // Replaced only by cutOverIfReady; volatile so thread and NNAPI settings posted from other
+  // threads always reach the model that is serving frames.
+  private volatile Classifier current;
+  private volatile DetectorManifest currentManifest;
+
+  // Handed over from the executor a swap is loaded on.
+  private final AtomicReference<Loaded> pending = new AtomicReference<>();
+  private volatile DetectorManifest requested;
+
+  private volatile int numThreads = -1;
+  private volatile Boolean useNNAPI;
+
+  private SwappableDetector(final AssetManager assetManager, final ModelCache modelCache) {
+    this.assetManager = assetManager;
+    this.modelCache = modelCache;
+  }
+
+  /**
+   * Synchronously loads and warms up the initial model.
+   *
+   * @param assetManager The asset manager to be used to load assets.
+   * @param modelCache Cache for accelerator compilations, or null to compile on every load.
+   * @param manifest The model to start with.
+   */
+  public static SwappableDetector create(
+      final AssetManager assetManager,
+      final ModelCache modelCache,
+      final DetectorManifest manifest)
+      throws IOException {
+    final SwappableDetector d = new SwappableDetector(assetManager, modelCache);
+    final long startTime = SystemClock.uptimeMillis();
+    d.current = DetectorRegistry.create(assetManager, modelCache, manifest);
+    final long loadedTime = SystemClock.uptimeMillis();
+    warmUp(d.current, manifest);
+    LOGGER.i(
+        "Detector %s loaded in %dms, warmed up in %dms",
+        manifest, loadedTime - startTime, SystemClock.uptimeMillis() - loadedTime);
+    d.currentManifest = manifest;
+    d.requested = manifest;
+    return d;
+  }
+
+  /** Returns the manifest of the model currently serving frames. */
+  public DetectorManifest getManifest() {
+    return currentManifest;
+  }
+
+  /**
+   * Starts loading the given model in the background. Requests made while a load is in progress
+   * supersede it; a model that fails to load leaves the current one in place.
+   *
+   * @param loader Executor to load the model on, e.g. a startup or background thread.
+   */
+  public void swapTo(final DetectorManifest manifest, final Executor loader) {
+    requested = manifest;
+    LOGGER.i("Requested detector %s", manifest);
+    loader.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (requested != manifest) {
+              return;
+            }
+            final long startTime = SystemClock.uptimeMillis();
+            final Classifier classifier;
+            try {
+              classifier = DetectorRegistry.create(assetManager, modelCache, manifest);
+            } catch (final IOException | RuntimeException e) {
+              LOGGER.e(e, "Failed to load detector %s", manifest);
+              return;
+            }
+            warmUp(classifier, manifest);
+            LOGGER.i(
+                "Detector %s ready in %dms", manifest, SystemClock.uptimeMillis() - startTime);
+
+            if (requested != manifest) {
+              classifier.close();
+              return;
+            }
+            final Loaded previous = pending.getAndSet(new Loaded(manifest, classifier));
+            if (previous != null) {
+              previous.classifier.close();
+            }
+          }
+        });
+  }
+
+  /**
+   * Switches to a model that finished loading, if any. Must be called from the inference pipeline
+   * while no frame is being recognized.
+   *
+   * @return The replaced model, or null if the model did not change. The caller must close it once
+   *     nothing can still be calling it, and should re-read {@link #getManifest()} and rebuild
+   *     anything sized to the model input.
+   */
+  public Classifier cutOverIfReady() {
+    final Loaded loaded = pending.getAndSet(null);
+    if (loaded == null) {
+      return null;
+    }
+    final Classifier previous = current;
+    currentManifest = loaded.manifest;
+    current = loaded.classifier;
+    // Applied after publishing current so a concurrent setter either sees the new model or its
+    // value is picked up here.
+    if (numThreads > 0) {
+      loaded.classifier.setNumThreads(numThreads);
+    }
+    final Boolean nnapi = useNNAPI;
+    if (nnapi != null) {
+      loaded.classifier.setUseNNAPI(nnapi);
+    }
+    LOGGER.i("Switched detector to %s", currentManifest);
+    return previous;
+  }
+
+  /**
+   * Runs a blank frame through a freshly loaded model so that tensor allocation and delegate
+   * preparation happen here rather than on the first camera frame.
+   */
+  private static void warmUp(final Classifier classifier, final DetectorManifest manifest) {
+    final Bitmap blank =
+        Bitmap.createBitmap(manifest.getInputSize(), manifest.getInputSize(), Config.ARGB_8888);
+    classifier.recognizeImage(blank, new Detections(classifier.getLabels(), 0));
+    blank.recycle();
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    return current.recognizeImage(bitmap);
+  }
+
+  @Override
+  public void recognizeImage(final Bitmap bitmap, final Detections results) {
+    current.recognizeImage(bitmap, results);
+  }
+
+  @Override
+  public void recognizeImage(final ByteBuffer input, final Detections results) {
+    current.recognizeImage(input, results);
+  }
+
+  @Override
+  public LabelTable getLabels() {
+    return current.getLabels();
+  }
+
+  @Override
+  public void enableStatLogging(final boolean debug) {
+    current.enableStatLogging(debug);
+  }
+
+  @Override
+  public String getStatString() {
+    return current.getStatString();
+  }
+
+  @Override
+  public void close() {
+    requested = null;
+    final Loaded loaded = pending.getAndSet(null);
+    if (loaded != null) {
+      loaded.classifier.close();
+    }
+    current.close();
+  }
+
+  @Override
+  public void setNumThreads(final int num_threads) {
+    numThreads = num_threads;
+    current.setNumThreads(num_threads);
+  }
+
+  @Override
+  public void setUseNNAPI(final boolean isChecked) {
+    useNNAPI = isChecked;
+    current.setUseNNAPI(isChecked);
+  }
+
+  private static class Loaded {
+    final DetectorManifest manifest;
+    final Classifier classifier;
+
+    Loaded(final DetectorManifest manifest, final Classifier classifier) {
+      this.manifest = manifest;
+      this.classifier = classifier;
+    }
+  }
+}
@@ -20,22 +20,18 @@ import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.RectF;
 import android.os.Trace;
-import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
 
 /**
  * Wrapper for frozen detection models trained using the Tensorflow Object Detection API:
@@ -44,35 +40,50 @@ import org.tensorflow.lite.examples.detection.env.Logger;
 public class TFLiteObjectDetectionAPIModel implements Classifier {
   private static final Logger LOGGER = new Logger();
 
-  // Only return this many results.
-  private static final int NUM_DETECTIONS = 10;
   // Float model
-  private static final float IMAGE_MEAN = 128.0f;
-  private static final float IMAGE_STD = 128.0f;
+  private static final float IMAGE_MEAN = DetectorManifest.FLOAT_INPUT_MEAN;
+  private static final float IMAGE_STD = DetectorManifest.FLOAT_INPUT_STD;
   // Number of threads in the java app
   private static final int NUM_THREADS = 4;
   private boolean isModelQuantized;
   // Config values.
   private int inputSize;
+  // Only return this many results.
+  private int numDetections;
+  // SSD Mobilenet V1 Model assumes class 0 is background class
+  // in label file and class labels start from 1 to number_of_classes+1,
+  // while outputClasses correspond to class index from 0 to number_of_classes
+  private int labelOffset;
   // Pre-allocated buffers.
-  private Vector<String> labels = new Vector<String>();
+  private LabelTable labels;
   private int[] intValues;
-  // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
+  // outputLocations: array of shape [Batchsize, numDetections,4]
   // contains the location of detected boxes
   private float[][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
+  // outputClasses: array of shape [Batchsize, numDetections]
   // contains the classes of detected boxes
   private float[][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
+  // outputScores: array of shape [Batchsize, numDetections]
   // contains the scores of detected boxes
   private float[][] outputScores;
-  // numDetections: array of shape [Batchsize]
+  // outputCount: array of shape [Batchsize]
   // contains the number of detected boxes
-  private float[] numDetections;
+  private float[] outputCount;
 
   private ByteBuffer imgData;
+  private Object[] inputArray;
+  // Holds a caller-provided input tensor for the duration of a run.
+  private Object[] externalInputArray;
+  private Map<Integer, Object> outputMap;
 
   private Interpreter tfLite;
+  // Kept so the interpreter can be rebuilt when the NNAPI delegate is toggled.
+  private MappedByteBuffer modelBuffer;
+  // Null when there is no compilation cache; NNAPI then compiles on every load.
+  private ModelCache modelCache;
+  private String modelToken;
+  private NnApiDelegate nnApiDelegate;
+  private int numThreads = NUM_THREADS;
 
   private TFLiteObjectDetectionAPIModel() {}
 
@@ -103,28 +114,58 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
       final int inputSize,
       final boolean isQuantized)
       throws IOException {
-    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
+    return create(
+        assetManager,
+        null,
+        new DetectorManifest(
+            modelFilename,
+            modelFilename,
+            labelFilename,
+            inputSize,
+            isQuantized,
+            DetectorManifest.OutputLayout.SSD_POSTPROCESSED,
+            10,
+            1));
+  }
 
-    InputStream labelsInput = null;
-    String actualFilename = labelFilename.split("file:///android_asset/")[1];
-    labelsInput = assetManager.open(actualFilename);
-    BufferedReader br = null;
-    br = new BufferedReader(new InputStreamReader(labelsInput));
-    String line;
-    while ((line = br.readLine()) != null) {
-      LOGGER.w(line);
-      d.labels.add(line);
+  /**
+   * Initializes a native TensorFlow session for the model described by a manifest.
+   *
+   * @param assetManager The asset manager to be used to load assets.
+   * @param modelCache Cache for NNAPI compilations, or null to compile on every load.
+   * @param manifest Describes the model file, label file, input and output layout.
+   */
+  public static Classifier create(
+      final AssetManager assetManager,
+      final ModelCache modelCache,
+      final DetectorManifest manifest)
+      throws IOException {
+    if (manifest.getOutputLayout() != DetectorManifest.OutputLayout.SSD_POSTPROCESSED) {
+      throw new IOException("Unsupported output layout " + manifest.getOutputLayout());
     }
-    br.close();
+    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
 
-    d.inputSize = inputSize;
+    d.inputSize = manifest.getInputSize();
+    d.numDetections = manifest.getNumDetections();
+    d.labelOffset = manifest.getLabelOffset();
 
     try {
-      d.tfLite = new Interpreter(loadModelFile(assetManager, modelFilename));
+      d.modelBuffer = loadModelFile(assetManager, manifest.getModelFilename());
+      if (modelCache != null) {
+        d.modelCache = modelCache;
+        d.modelToken = modelCache.getModelToken(manifest.getModelFilename(), d.modelBuffer);
+      }
+      d.tfLite = d.createInterpreter(false);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
 
+    // Read after the interpreter so a label table preloaded in parallel is usually cached by now.
+    final String labelFilename = manifest.getLabelFilename();
+    d.labels = LabelTable.load(assetManager, labelFilename);
+    LOGGER.i("Loaded %d labels from %s", d.labels.size(), labelFilename);
+
+    final boolean isQuantized = manifest.isQuantized();
     d.isModelQuantized = isQuantized;
     // Pre-allocate buffers.
     int numBytesPerChannel;
@@ -137,16 +178,59 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     d.imgData.order(ByteOrder.nativeOrder());
     d.intValues = new int[d.inputSize * d.inputSize];
 
-    d.tfLite.setNumThreads(NUM_THREADS);
-    d.outputLocations = new float[1][NUM_DETECTIONS][4];
-    d.outputClasses = new float[1][NUM_DETECTIONS];
-    d.outputScores = new float[1][NUM_DETECTIONS];
-    d.numDetections = new float[1];
+    d.outputLocations = new float[1][d.numDetections][4];
+    d.outputClasses = new float[1][d.numDetections];
+    d.outputScores = new float[1][d.numDetections];
+    d.outputCount = new float[1];
+    d.inputArray = new Object[] {d.imgData};
+    d.externalInputArray = new Object[1];
+    d.outputMap = new HashMap<>();
+    d.outputMap.put(0, d.outputLocations);
+    d.outputMap.put(1, d.outputClasses);
+    d.outputMap.put(2, d.outputScores);
+    d.outputMap.put(3, d.outputCount);
     return d;
   }
 
+  /**
+   * Builds an interpreter for the mapped model. With NNAPI, the compilation is read from and
+   * written to the model cache when there is one.
+   */
+  private Interpreter createInterpreter(final boolean useNNAPI) {
+    final Interpreter.Options options = new Interpreter.Options().setNumThreads(numThreads);
+    if (useNNAPI) {
+      final NnApiDelegate.Options nnApiOptions = new NnApiDelegate.Options();
+      if (modelToken != null) {
+        nnApiOptions
+            .setCacheDir(modelCache.getCompilationCacheDir(modelToken).getAbsolutePath())
+            .setModelToken(modelToken);
+      }
+      nnApiDelegate = new NnApiDelegate(nnApiOptions);
+      options.addDelegate(nnApiDelegate);
+    }
+    return new Interpreter(modelBuffer, options);
+  }
+
+  private void closeInterpreter() {
+    if (tfLite != null) {
+      tfLite.close();
+      tfLite = null;
+    }
+    if (nnApiDelegate != null) {
+      nnApiDelegate.close();
+      nnApiDelegate = null;
+    }
+  }
+
   @Override
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final Detections results = new Detections(labels, numDetections);
+    recognizeImage(bitmap, results);
+    return results.toRecognitions();
+  }
+
+  @Override
+  public void recognizeImage(final Bitmap bitmap, final Detections results) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
 
@@ -173,49 +257,50 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     }
     Trace.endSection(); // preprocessBitmap
 
-    // Copy the input data into TensorFlow.
-    Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];
-    outputClasses = new float[1][NUM_DETECTIONS];
-    outputScores = new float[1][NUM_DETECTIONS];
-    numDetections = new float[1];
-
-    Object[] inputArray = {imgData};
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
+    // Run the inference call. The output arrays and map are allocated once in create().
+    Trace.beginSection("run");
+    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
     Trace.endSection();
 
-    // Run the inference call.
+    readOutputs(results);
+    Trace.endSection(); // "recognizeImage"
+  }
+
+  @Override
+  public void recognizeImage(final ByteBuffer input, final Detections results) {
+    if (input.capacity() != imgData.capacity()) {
+      throw new IllegalArgumentException(
+          "Input of " + input.capacity() + " bytes, expected " + imgData.capacity());
+    }
+    Trace.beginSection("recognizeImage");
     Trace.beginSection("run");
-    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    externalInputArray[0] = input;
+    tfLite.runForMultipleInputsOutputs(externalInputArray, outputMap);
+    externalInputArray[0] = null;
     Trace.endSection();
 
+    readOutputs(results);
+    Trace.endSection(); // "recognizeImage"
+  }
+
+  private void readOutputs(final Detections results) {
     // Show the best detections.
     // after scaling them back to the input size.
-    final ArrayList<Recognition> recognitions = new ArrayList<>(NUM_DETECTIONS);
-    for (int i = 0; i < NUM_DETECTIONS; ++i) {
-      final RectF detection =
-          new RectF(
-              outputLocations[0][i][1] * inputSize,
-              outputLocations[0][i][0] * inputSize,
-              outputLocations[0][i][3] * inputSize,
-              outputLocations[0][i][2] * inputSize);
-      // SSD Mobilenet V1 Model assumes class 0 is background class
-      // in label file and class labels start from 1 to number_of_classes+1,
-      // while outputClasses correspond to class index from 0 to number_of_classes
-      int labelOffset = 1;
-      recognitions.add(
-          new Recognition(
-              "" + i,
-              labels.get((int) outputClasses[0][i] + labelOffset),
-              outputScores[0][i],
-              detection));
+    results.clear();
+    for (int i = 0; i < numDetections; ++i) {
+      results.add(
+          (int) outputClasses[0][i] + labelOffset,
+          outputScores[0][i],
+          outputLocations[0][i][1] * inputSize,
+          outputLocations[0][i][0] * inputSize,
+          outputLocations[0][i][3] * inputSize,
+          outputLocations[0][i][2] * inputSize);
     }
-    Trace.endSection(); // "recognizeImage"
-    return recognitions;
+  }
+
+  @Override
+  public LabelTable getLabels() {
+    return labels;
   }
 
   @Override
@@ -227,14 +312,24 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    closeInterpreter();
+    modelBuffer = null;
+  }
 
   public void setNumThreads(int num_threads) {
+    numThreads = num_threads;
     if (tfLite != null) tfLite.setNumThreads(num_threads);
   }
 
   @Override
   public void setUseNNAPI(boolean isChecked) {
-    if (tfLite != null) tfLite.setUseNNAPI(isChecked);
+    if (modelBuffer == null || isChecked == (nnApiDelegate != null)) {
+      return;
+    }
+    // The delegate is fixed at construction, so switching means rebuilding the interpreter. With
+    // a warm compilation cache this is cheap.
+    closeInterpreter();
+    tfLite = createInterpreter(isChecked);
   }
 }
@@ -0,0 +1,139 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.RectF;
+import org.tensorflow.lite.examples.detection.env.LumaPyramid;
+
+/**
+ * A small appearance signature of a tracked box, cheap enough to compute for every detection, for
+ * telling whether an object that reappears is one seen before. It concatenates a histogram of the
+ * box's brightness, which does not care how the object is posed or cropped, with a coarse grid of
+ * its mean brightness, normalized to zero mean and unit length so that it does not care about
+ * exposure. Descriptors are stored as {@link #LENGTH} consecutive floats of a larger array.
+ */
+final class AppearanceDescriptor {
+  static final int LENGTH = 32;
+
+  private static final int HISTOGRAM_BINS = 16;
+  private static final int GRID = 4;
+  // The box is read from the coarsest pyramid level where its shorter side still has this many
+  // pixels.
+  private static final int MIN_SIDE = 16;
+
+  private AppearanceDescriptor() {}
+
+  /**
+   * Describes the part of a frame inside a box.
+   *
+   * @param box The region in frame coordinates; clipped to the frame.
+   * @param out Receives the descriptor at offset.
+   * @return Whether the box was large enough to describe; out is left alone otherwise.
+   */
+  static boolean compute(
+      final LumaPyramid pyramid, final RectF box, final float[] out, final int offset) {
+    final float left = Math.max(0, box.left);
+    final float top = Math.max(0, box.top);
+    final float right = Math.min(pyramid.getWidth(0), box.right);
+    final float bottom = Math.min(pyramid.getHeight(0), box.bottom);
+    int level = pyramid.getNumLevels() - 1;
+    while (level > 0 && Math.min(right - left, bottom - top) / (1 << level) < MIN_SIDE) {
+      --level;
+    }
+    final int stride = pyramid.getWidth(level);
+    final int x0 = (int) left >> level;
+    final int y0 = (int) top >> level;
+    final int w = Math.min((int) right >> level, stride) - x0;
+    final int h = Math.min((int) bottom >> level, pyramid.getHeight(level)) - y0;
+    if (w < GRID || h < GRID) {
+      return false;
+    }
+
+    final byte[] pixels = pyramid.getLevel(level);
+    final int grid = offset + HISTOGRAM_BINS;
+    for (int i = offset; i < offset + LENGTH; ++i) {
+      out[i] = 0;
+    }
+    for (int y = 0; y < h; ++y) {
+      final int row = grid + y * GRID / h * GRID;
+      int index = (y0 + y) * stride + x0;
+      for (int x = 0; x < w; ++x) {
+        final int value = pixels[index++] & 0xff;
+        out[offset + (value * HISTOGRAM_BINS >> 8)] += 1;
+        out[row + x * GRID / w] += value;
+      }
+    }
+
+    final float pixelCount = w * h;
+    for (int i = offset; i < grid; ++i) {
+      out[i] /= pixelCount;
+    }
+    // Cells differ by a row or column when the box does not divide evenly; compare their means.
+    for (int row = 0; row < GRID; ++row) {
+      final int rows = ((row + 1) * h + GRID - 1) / GRID - (row * h + GRID - 1) / GRID;
+      for (int column = 0; column < GRID; ++column) {
+        final int columns = ((column + 1) * w + GRID - 1) / GRID - (column * w + GRID - 1) / GRID;
+        out[grid + row * GRID + column] /= rows * columns;
+      }
+    }
+    float mean = 0;
+    for (int i = grid; i < grid + GRID * GRID; ++i) {
+      mean += out[i];
+    }
+    mean /= GRID * GRID;
+    float norm = 0;
+    for (int i = grid; i < grid + GRID * GRID; ++i) {
+      out[i] -= mean;
+      norm += out[i] * out[i];
+    }
+    // A flat box has no layout to compare; its grid stays zero.
+    final float scale = norm > 0 ? 1 / (float) Math.sqrt(norm) : 0;
+    for (int i = grid; i < grid + GRID * GRID; ++i) {
+      out[i] *= scale;
+    }
+    return true;
+  }
+
+  /**
+   * Returns how different two descriptors look, from 0 for identical to 1: the mean of the
+   * histograms' total variation distance and of the grids' correlation distance.
+   */
+  static float distance(final float[] a, final int aOffset, final float[] b, final int bOffset) {
+    float histogram = 0;
+    for (int i = 0; i < HISTOGRAM_BINS; ++i) {
+      histogram += Math.abs(a[aOffset + i] - b[bOffset + i]);
+    }
+    float correlation = 0;
+    for (int i = HISTOGRAM_BINS; i < LENGTH; ++i) {
+      correlation += a[aOffset + i] * b[bOffset + i];
+    }
+    return 0.25f * histogram + 0.25f * (1 - correlation);
+  }
+
+  /**
+   * Moves a stored descriptor part of the way towards a newer one, so that it follows slow changes
+   * of appearance without being taken over by a single occluded or blurred view.
+   */
+  static void blend(
+      final float[] stored,
+      final int storedOffset,
+      final float[] latest,
+      final int latestOffset,
+      final float weight) {
+    for (int i = 0; i < LENGTH; ++i) {
+      stored[storedOffset + i] += weight * (latest[latestOffset + i] - stored[storedOffset + i]);
+    }
+  }
+}
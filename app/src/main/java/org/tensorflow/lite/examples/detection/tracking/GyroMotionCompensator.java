@@ -0,0 +1,222 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.RectF;
+import org.tensorflow.lite.examples.detection.env.CameraIntrinsics;
+
+/**
+ * Predicts how the image moves between two frames from the gyroscope, for when the camera turns
+ * faster than optical flow can follow.
+ *
+ * <p>Angular velocity samples are kept in a short ring. For two frame times, the samples in
+ * between are integrated into the rotation of the camera, which for a rotating camera maps one
+ * image onto the other with the homography H = K * R^T * K^-1. Translation of the camera is not
+ * observable from the gyroscope and is ignored, which is accurate for turning the head or the
+ * phone and for anything more than a few meters away.
+ *
+ * <p>Assumes a back-facing camera. Samples may arrive on any thread.
+ */
+public class GyroMotionCompensator implements GyroSource.Listener {
+  // About two seconds at the sensor's game rate.
+  private static final int CAPACITY = 512;
+  // The newest sample is held until the later frame time if it is at most this old.
+  private static final long MAX_EXTRAPOLATION_NS = 50000000L;
+
+  private final float focalLength;
+  private final float centerX;
+  private final float centerY;
+  // Rotation from device to camera axes, row-major. Camera axes: x right and y down in the
+  // frame, z along the view direction.
+  private final float[] deviceToCamera = new float[9];
+
+  private final long[] timestampsNs = new long[CAPACITY];
+  private final float[] rates = new float[CAPACITY * 3];
+  private int newest = -1;
+  private int size;
+
+  // Scratch for getHomography, guarded by this.
+  private final float[] rotation = new float[9];
+  private final float[] step = new float[9];
+  private final float[] product = new float[9];
+
+  /**
+   * @param intrinsics The camera model, in frame coordinates.
+   * @param sensorOrientation Clockwise rotation in degrees that turns the frame upright on a
+   *     device held in its natural orientation, as reported by the camera.
+   */
+  public GyroMotionCompensator(final CameraIntrinsics intrinsics, final int sensorOrientation) {
+    focalLength = intrinsics.getFocalLength();
+    centerX = intrinsics.getCenterX();
+    centerY = intrinsics.getCenterY();
+    // With sensor orientation 0 the frame's x axis is the device's x axis and its y axis the
+    // device's -y; the back camera looks along the device's -z. Other orientations turn the
+    // frame's axes around the view direction.
+    final double theta = Math.toRadians(sensorOrientation);
+    final float cos = (float) Math.round(Math.cos(theta));
+    final float sin = (float) Math.round(Math.sin(theta));
+    deviceToCamera[0] = cos;
+    deviceToCamera[1] = -sin;
+    deviceToCamera[3] = -sin;
+    deviceToCamera[4] = -cos;
+    deviceToCamera[8] = -1;
+  }
+
+  @Override
+  public synchronized void onGyroSample(
+      final long timestampNs, final float x, final float y, final float z) {
+    if (size > 0 && timestampNs <= timestampsNs[newest]) {
+      return;
+    }
+    newest = (newest + 1) % CAPACITY;
+    timestampsNs[newest] = timestampNs;
+    final float[] m = deviceToCamera;
+    rates[3 * newest] = m[0] * x + m[1] * y + m[2] * z;
+    rates[3 * newest + 1] = m[3] * x + m[4] * y + m[5] * z;
+    rates[3 * newest + 2] = m[6] * x + m[7] * y + m[8] * z;
+    size = Math.min(size + 1, CAPACITY);
+  }
+
+  /**
+   * Computes the homography taking points of the frame at fromNs to the frame at toNs.
+   *
+   * @param homography Receives the 3x3 homography, row-major.
+   * @return false if the samples do not cover the interval.
+   */
+  public synchronized boolean getHomography(
+      final long fromNs, final long toNs, final float[] homography) {
+    if (size == 0 || toNs < fromNs || toNs - timestampsNs[newest] > MAX_EXTRAPOLATION_NS) {
+      return false;
+    }
+    // Each sample's rate holds until the next sample; start from the last one at or before fromNs.
+    int index = -1;
+    for (int i = 0; i < size; ++i) {
+      final int candidate = (newest - i + CAPACITY) % CAPACITY;
+      if (timestampsNs[candidate] <= fromNs) {
+        index = candidate;
+        break;
+      }
+    }
+    if (index < 0) {
+      return false;
+    }
+
+    setIdentity(rotation);
+    while (true) {
+      final boolean last = index == newest;
+      final int next = (index + 1) % CAPACITY;
+      final long start = Math.max(timestampsNs[index], fromNs);
+      final long end = last ? toNs : Math.min(timestampsNs[next], toNs);
+      if (end > start) {
+        final float seconds = (end - start) / 1e9f;
+        axisAngle(
+            rates[3 * index] * seconds,
+            rates[3 * index + 1] * seconds,
+            rates[3 * index + 2] * seconds,
+            step);
+        // The rates are measured in the rotating camera's own axes.
+        multiply(rotation, step, product);
+        System.arraycopy(product, 0, rotation, 0, 9);
+      }
+      if (last || timestampsNs[next] >= toNs) {
+        break;
+      }
+      index = next;
+    }
+
+    // H = K * R^T * K^-1 with K = [f 0 cx; 0 f cy; 0 0 1].
+    final float f = focalLength;
+    for (int row = 0; row < 3; ++row) {
+      // Row of K * R^T.
+      final float a;
+      final float b;
+      final float c;
+      if (row < 2) {
+        final float center = row == 0 ? centerX : centerY;
+        a = f * rotation[row] + center * rotation[2];
+        b = f * rotation[3 + row] + center * rotation[5];
+        c = f * rotation[6 + row] + center * rotation[8];
+      } else {
+        a = rotation[2];
+        b = rotation[5];
+        c = rotation[8];
+      }
+      // Times K^-1 = [1/f 0 -cx/f; 0 1/f -cy/f; 0 0 1].
+      homography[3 * row] = a / f;
+      homography[3 * row + 1] = b / f;
+      homography[3 * row + 2] = c - (a * centerX + b * centerY) / f;
+    }
+    return true;
+  }
+
+  /** Replaces rect with the bounds of its corners mapped through a homography. */
+  public static void mapRect(final float[] homography, final RectF rect) {
+    float left = Float.MAX_VALUE;
+    float top = Float.MAX_VALUE;
+    float right = -Float.MAX_VALUE;
+    float bottom = -Float.MAX_VALUE;
+    for (int corner = 0; corner < 4; ++corner) {
+      final float x = (corner & 1) == 0 ? rect.left : rect.right;
+      final float y = (corner & 2) == 0 ? rect.top : rect.bottom;
+      final float w = homography[6] * x + homography[7] * y + homography[8];
+      final float mappedX = (homography[0] * x + homography[1] * y + homography[2]) / w;
+      final float mappedY = (homography[3] * x + homography[4] * y + homography[5]) / w;
+      left = Math.min(left, mappedX);
+      top = Math.min(top, mappedY);
+      right = Math.max(right, mappedX);
+      bottom = Math.max(bottom, mappedY);
+    }
+    rect.set(left, top, right, bottom);
+  }
+
+  private static void setIdentity(final float[] m) {
+    for (int i = 0; i < 9; ++i) {
+      m[i] = i % 4 == 0 ? 1 : 0;
+    }
+  }
+
+  /** Rodrigues' formula for the rotation by the vector (x, y, z), whose length is the angle. */
+  private static void axisAngle(final float x, final float y, final float z, final float[] out) {
+    final float angle = (float) Math.sqrt(x * x + y * y + z * z);
+    if (angle < 1e-9f) {
+      setIdentity(out);
+      return;
+    }
+    final float ux = x / angle;
+    final float uy = y / angle;
+    final float uz = z / angle;
+    final float cos = (float) Math.cos(angle);
+    final float sin = (float) Math.sin(angle);
+    final float t = 1 - cos;
+    out[0] = cos + ux * ux * t;
+    out[1] = ux * uy * t - uz * sin;
+    out[2] = ux * uz * t + uy * sin;
+    out[3] = uy * ux * t + uz * sin;
+    out[4] = cos + uy * uy * t;
+    out[5] = uy * uz * t - ux * sin;
+    out[6] = uz * ux * t - uy * sin;
+    out[7] = uz * uy * t + ux * sin;
+    out[8] = cos + uz * uz * t;
+  }
+
+  private static void multiply(final float[] a, final float[] b, final float[] out) {
+    for (int row = 0; row < 3; ++row) {
+      for (int col = 0; col < 3; ++col) {
+        out[3 * row + col] =
+            a[3 * row] * b[col] + a[3 * row + 1] * b[3 + col] + a[3 * row + 2] * b[6 + col];
+      }
+    }
+  }
+}
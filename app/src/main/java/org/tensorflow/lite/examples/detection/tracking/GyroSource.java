@@ -0,0 +1,43 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+/**
+ * A stream of gyroscope readings. Implemented on top of the device sensor, and in unit tests by a
+ * replay of recorded readings, so that motion compensation can be run off the device.
+ */
+public interface GyroSource {
+  /** Receives angular velocity samples in device coordinates. */
+  interface Listener {
+    /**
+     * @param timestampNs When the sample was taken, in the SystemClock.elapsedRealtimeNanos()
+     *     time base.
+     * @param x Rate of rotation around the device's x axis, in radians per second.
+     * @param y Rate of rotation around the device's y axis, in radians per second.
+     * @param z Rate of rotation around the device's z axis, in radians per second.
+     */
+    void onGyroSample(long timestampNs, float x, float y, float z);
+  }
+
+  /**
+   * Starts delivering samples to listener, on a thread of the source's choosing.
+   *
+   * @return false if there is nothing to deliver, e.g. no gyroscope on the device.
+   */
+  boolean start(Listener listener);
+
+  /** Stops delivering samples. */
+  void stop();
+}
@@ -25,20 +25,61 @@ import android.graphics.Paint.Join;
 import android.graphics.Paint.Style;
 import android.graphics.RectF;
 import android.text.TextUtils;
-import android.util.Pair;
 import android.util.TypedValue;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
+import java.util.Arrays;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
-import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+import org.tensorflow.lite.examples.detection.env.LumaPyramid;
+import org.tensorflow.lite.examples.detection.env.LumaPyramidPool;
+import org.tensorflow.lite.examples.detection.env.TripleBuffer;
+import org.tensorflow.lite.examples.detection.tflite.Detections;
 
-/** A tracker that handles non-max suppression and matches existing objects to new detections. */
+/**
+ * A tracker that handles non-max suppression and matches existing objects to new detections.
+ *
+ * <p>Tracks live in a {@link TrackTable}, arrays of primitives indexed by slot, so that hundreds of
+ * boxes (e.g. from tiled detection) are moved each frame in one linear pass without allocating.
+ * The tracks are confined to the camera thread. Results from trackResults reach it, and copies of
+ * the tracks reach draw, through {@link TripleBuffer}s of tables, so no thread ever waits for
+ * another. Colors follow the track id, so there is no limit on the number of tracks.
+ *
+ * <p>Tracks whose detection is lost go into a {@link TrackGallery} for a few seconds. A detection
+ * that starts a new track while one of the same class that looks alike, by its {@link
+ * AppearanceDescriptor}, is in the gallery continues that track instead, so an object that was
+ * briefly hidden keeps its id, color and refined label.
+ */
 public class MultiBoxTracker {
+  /** Receives the current tracks from {@link #getTracks}. */
+  public interface TrackVisitor {
+    /**
+     * @param id Identifies the track for as long as detections keep matching it.
+     * @param title The detector's label.
+     * @param location The box in frame coordinates; only valid during the call and must not be
+     *     modified.
+     */
+    void visit(long id, String title, RectF location);
+  }
+
+  /** Finer labels for tracks, e.g. from a secondary classifier, drawn instead of the detector's. */
+  public interface TrackLabels {
+    /** Returns the label for a track, or null to keep the detector's. Called on the UI thread. */
+    String getLabel(long id);
+  }
+
   private static final float TEXT_SIZE_DIP = 18;
   private static final float MIN_SIZE = 16.0f;
+  // Least overlap for a detection of the same class to continue an existing track.
+  private static final float MIN_MATCH_IOU = 0.3f;
+  // Frames whose arrival time is remembered; covers the detector's latency.
+  private static final int FRAME_TIME_HISTORY = 16;
+  // Lost tracks remembered for re-identification, and for how many frames.
+  private static final int GALLERY_SIZE = 32;
+  private static final long GALLERY_MAX_AGE = 150;
+  // Largest AppearanceDescriptor distance at which a new detection is a lost track reappearing.
+  private static final float MAX_REIDENTIFY_DISTANCE = 0.2f;
+  // How far a track's descriptor moves towards the one of each matching detection.
+  private static final float DESCRIPTOR_UPDATE_WEIGHT = 0.3f;
   private static final int[] COLORS = {
     Color.BLUE,
     Color.RED,
@@ -56,23 +97,58 @@ public class MultiBoxTracker {
     Color.parseColor("#AA33AA"),
     Color.parseColor("#0D0068")
   };
-  final List<Pair<Float, RectF>> screenRects = new LinkedList<Pair<Float, RectF>>();
   private final Logger logger = new Logger();
-  private final Queue<Integer> availableColors = new LinkedList<Integer>();
-  private final List<TrackedRecognition> trackedObjects = new LinkedList<TrackedRecognition>();
+  // Results from trackResults for onFrame, versioned by timestamp. Its front table holds the raw
+  // detections the tracks were last matched to, for drawDebug.
+  private final TripleBuffer<TrackTable> pending =
+      new TripleBuffer<TrackTable>(new TrackTable(), new TrackTable(), new TrackTable());
+  // Timestamp of the latest results; only touched by trackResults.
+  private long pendingTimestamp = Long.MIN_VALUE;
+  // The tracks, the timestamp of the results they were last matched to, and the state for matching
+  // and re-identifying them; only touched on the camera thread.
+  private final TrackTable tracks = new TrackTable();
+  private long adoptedDetection = Long.MIN_VALUE;
+  private long nextTrackId;
+  // Set when the tracks were dropped, so the next frame publishes even without tracks.
+  private boolean tracksCleared;
+  // Slots matched by the detection being taken over.
+  private boolean[] claimed = new boolean[0];
+  // The tracks bucketed by class and area, so each detection is only tested against those near it.
+  private final TrackGrid candidates = new TrackGrid();
+  private final RectF trackRect = new RectF();
+  private final TrackGallery gallery =
+      new TrackGallery(GALLERY_SIZE, GALLERY_MAX_AGE, MAX_REIDENTIFY_DISTANCE);
+  private final float[] descriptor = new float[AppearanceDescriptor.LENGTH];
+  // Copies of the tracks and detections from the camera thread for draw on the UI thread.
+  private final TripleBuffer<Snapshot> published =
+      new TripleBuffer<Snapshot>(new Snapshot(), new Snapshot(), new Snapshot());
+  private volatile long publishedTimestamp;
+  // Moves boxes between detections; only touched on the camera thread.
+  private OpticalFlowTracker flowTracker;
+  // Moves boxes the flow loses by the camera's rotation; only touched on the camera thread.
+  private GyroMotionCompensator motionCompensator;
+  // Arrival times of recent frames by timestamp, for looking up the rotation since a detection.
+  private final long[] frameIds = new long[FRAME_TIME_HISTORY];
+  private final long[] frameTimesNs = new long[FRAME_TIME_HISTORY];
+  private int newestFrameTime = -1;
+  private final float[] homography = new float[9];
   private final Paint boxPaint = new Paint();
+  private final Paint debugTextPaint = new Paint();
+  private final Paint debugBoxPaint = new Paint();
+  // Scratch rect for draw; only touched on the UI thread.
+  private final RectF canvasRect = new RectF();
   private final float textSizePx;
   private final BorderedText borderedText;
-  private Matrix frameToCanvasMatrix;
-  private int frameWidth;
-  private int frameHeight;
-  private int sensorOrientation;
+  // Replaced (never mutated) by draw on the UI thread.
+  private volatile Matrix frameToCanvasMatrix;
+  private volatile FrameConfiguration frameConfiguration = new FrameConfiguration(0, 0, 0);
+  // The inputs frameToCanvasMatrix was last computed from; only touched on the UI thread.
+  private FrameConfiguration matrixConfiguration;
+  private int matrixCanvasWidth;
+  private int matrixCanvasHeight;
+  private volatile TrackLabels trackLabels;
 
   public MultiBoxTracker(final Context context) {
-    for (final int color : COLORS) {
-      availableColors.add(color);
-    }
-
     boxPaint.setColor(Color.RED);
     boxPaint.setStyle(Style.STROKE);
     boxPaint.setStrokeWidth(10.0f);
@@ -80,132 +156,424 @@ public class MultiBoxTracker {
     boxPaint.setStrokeJoin(Join.ROUND);
     boxPaint.setStrokeMiter(100);
 
+    debugTextPaint.setColor(Color.WHITE);
+    debugTextPaint.setTextSize(60.0f);
+
+    debugBoxPaint.setColor(Color.RED);
+    debugBoxPaint.setAlpha(200);
+    debugBoxPaint.setStyle(Style.STROKE);
+
     textSizePx =
         TypedValue.applyDimension(
             TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, context.getResources().getDisplayMetrics());
     borderedText = new BorderedText(textSizePx);
   }
 
-  public synchronized void setFrameConfiguration(
+  /**
+   * Starts a new camera session. The tracks of the previous one are dropped, along with the frames
+   * held for them. Must be called while no frames are delivered.
+   */
+  public void setFrameConfiguration(
       final int width, final int height, final int sensorOrientation) {
-    frameWidth = width;
-    frameHeight = height;
-    this.sensorOrientation = sensorOrientation;
+    frameConfiguration = new FrameConfiguration(width, height, sensorOrientation);
+    if (flowTracker != null) {
+      flowTracker.clear();
+    }
+    flowTracker = new OpticalFlowTracker();
+    tracks.clear();
+    gallery.clear();
+    tracksCleared = true;
   }
 
-  public synchronized void drawDebug(final Canvas canvas) {
-    final Paint textPaint = new Paint();
-    textPaint.setColor(Color.WHITE);
-    textPaint.setTextSize(60.0f);
+  /**
+   * Sets the gyroscope-based motion model used for boxes optical flow cannot follow, e.g. when the
+   * camera turns quickly. Must be called on the camera thread.
+   */
+  public void setMotionCompensator(final GyroMotionCompensator motionCompensator) {
+    this.motionCompensator = motionCompensator;
+  }
 
-    final Paint boxPaint = new Paint();
-    boxPaint.setColor(Color.RED);
-    boxPaint.setAlpha(200);
-    boxPaint.setStyle(Style.STROKE);
+  /**
+   * Moves the tracked boxes onto a new camera frame with optical flow, and takes over the latest
+   * results from trackResults, carried forward from the frame they were detected on. Must be called
+   * for every frame on the camera thread, before detection results for that frame are passed to
+   * trackResults; nothing is tracked or drawn until it is.
+   *
+   * @param frame The frame's luma pyramid, timestamped as later passed to trackResults. Retained
+   *     for as long as the tracker needs it.
+   * @param frameTimeNs When the frame arrived, in the time base of the gyroscope samples.
+   */
+  public void onFrame(final LumaPyramidPool.Frame frame, final long frameTimeNs) {
+    if (flowTracker == null) {
+      return;
+    }
+    flowTracker.nextFrame(frame);
+    final long timestamp = frame.getTimestamp();
+    newestFrameTime = (newestFrameTime + 1) % FRAME_TIME_HISTORY;
+    frameIds[newestFrameTime] = timestamp;
+    frameTimesNs[newestFrameTime] = frameTimeNs;
 
-    for (final Pair<Float, RectF> detection : screenRects) {
-      final RectF rect = detection.second;
-      canvas.drawRect(rect, boxPaint);
-      canvas.drawText("" + detection.first, rect.left, rect.top, textPaint);
-      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), "" + detection.first);
+    final boolean adopted = adoptPending();
+    if (!adopted && tracks.getLiveCount() == 0 && !tracksCleared) {
+      return;
+    }
+    tracksCleared = false;
+    // The homography for the frame boxes the flow lost were on, computed once per such frame.
+    long homographyFrom = Long.MIN_VALUE;
+    boolean haveHomography = false;
+    final RectF location = trackRect;
+    for (int slot = 0; slot < tracks.getSlotCount(); ++slot) {
+      if (!tracks.live[slot] || tracks.frameIds[slot] == timestamp) {
+        continue;
+      }
+      final long from = tracks.frameIds[slot];
+      tracks.getLocation(slot, location);
+      tracks.frameIds[slot] = timestamp;
+      if (flowTracker.track(from, location)) {
+        tracks.setLocation(slot, location);
+        continue;
+      }
+      if (from != homographyFrom) {
+        homographyFrom = from;
+        haveHomography = computeHomography(from, frameTimeNs);
+      }
+      // Without flow or rotation the box stays where it was until the next detection.
+      if (haveHomography) {
+        GyroMotionCompensator.mapRect(homography, location);
+        tracks.setLocation(slot, location);
+      }
+    }
+    if (adopted) {
+      describeAdopted(frame.getPyramid(), timestamp);
     }
+    publish(timestamp);
   }
 
-  public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
-    logger.i("Processing %d results from %d", results.size(), timestamp);
-    processResults(results);
+  /**
+   * Updates the descriptors of the tracks the latest detection matched, now that their boxes are on
+   * the current frame, and lets each new track take over a lost one it looks like.
+   */
+  private void describeAdopted(final LumaPyramid pyramid, final long timestamp) {
+    final int length = AppearanceDescriptor.LENGTH;
+    final RectF location = trackRect;
+    for (int slot = 0; slot < tracks.getSlotCount(); ++slot) {
+      if (!tracks.live[slot] || !claimed[slot]) {
+        continue;
+      }
+      tracks.getLocation(slot, location);
+      final boolean fresh = tracks.fresh[slot];
+      tracks.fresh[slot] = false;
+      if (!AppearanceDescriptor.compute(pyramid, location, descriptor, 0)) {
+        continue;
+      }
+      if (fresh && gallery.size() > 0) {
+        final int entry =
+            gallery.match(
+                tracks.titles[slot],
+                location.width() * location.height(),
+                descriptor,
+                0,
+                timestamp);
+        if (entry >= 0) {
+          logger.d("Track %d reappeared as %d", gallery.getId(entry), tracks.ids[slot]);
+          tracks.ids[slot] = gallery.getId(entry);
+          tracks.colors[slot] = gallery.getColor(entry);
+          gallery.remove(entry);
+        }
+      }
+      if (tracks.described[slot]) {
+        AppearanceDescriptor.blend(
+            tracks.descriptors, slot * length, descriptor, 0, DESCRIPTOR_UPDATE_WEIGHT);
+      } else {
+        System.arraycopy(descriptor, 0, tracks.descriptors, slot * length, length);
+        tracks.described[slot] = true;
+      }
+    }
   }
 
-  private Matrix getFrameToCanvasMatrix() {
-    return frameToCanvasMatrix;
+  /** Fills homography with the camera rotation since frame fromTimestamp, if known. */
+  private boolean computeHomography(final long fromTimestamp, final long toTimeNs) {
+    if (motionCompensator == null) {
+      return false;
+    }
+    for (int i = 0; i < FRAME_TIME_HISTORY; ++i) {
+      final int index = (newestFrameTime - i + FRAME_TIME_HISTORY) % FRAME_TIME_HISTORY;
+      if (frameIds[index] == fromTimestamp && frameTimesNs[index] != 0) {
+        return motionCompensator.getHomography(frameTimesNs[index], toTimeNs, homography);
+      }
+    }
+    return false;
   }
 
-  public synchronized void draw(final Canvas canvas) {
-    final boolean rotated = sensorOrientation % 180 == 90;
-    final float multiplier =
-        Math.min(
-            canvas.getHeight() / (float) (rotated ? frameWidth : frameHeight),
-            canvas.getWidth() / (float) (rotated ? frameHeight : frameWidth));
-    frameToCanvasMatrix =
-        ImageUtils.getTransformationMatrix(
-            frameWidth,
-            frameHeight,
-            (int) (multiplier * (rotated ? frameHeight : frameWidth)),
-            (int) (multiplier * (rotated ? frameWidth : frameHeight)),
-            sensorOrientation,
-            false);
-    for (final TrackedRecognition recognition : trackedObjects) {
-      final RectF trackedPos = new RectF(recognition.location);
+  public void drawDebug(final Canvas canvas) {
+    final Matrix frameToCanvas = getFrameToCanvasMatrix();
+    if (frameToCanvas == null) {
+      return;
+    }
+    published.update();
+    final TrackTable drawnDetections = published.getFront().detections;
+    final RectF rect = canvasRect;
+    for (int slot = 0; slot < drawnDetections.getSlotCount(); ++slot) {
+      drawnDetections.getLocation(slot, rect);
+      frameToCanvas.mapRect(rect);
+      final String label = drawnDetections.labels[slot];
+      canvas.drawRect(rect, debugBoxPaint);
+      canvas.drawText(label, rect.left, rect.top, debugTextPaint);
+      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), label);
+    }
+  }
+
+  /**
+   * Hands detection results to the next {@link #onFrame}, replacing any it has not taken over yet.
+   * Must always be called on the same thread, e.g. the inference thread.
+   *
+   * @param timestamp The frame the results were detected on; older results than the last are
+   *     discarded.
+   */
+  public void trackResults(final Detections results, final long timestamp) {
+    logger.i("Processing %d results from %d", results.size(), timestamp);
+    if (timestamp <= pendingTimestamp) {
+      logger.w("Discarding stale results from %d", timestamp);
+      return;
+    }
+    final TrackTable batch = pending.getBack();
+    batch.clear();
+    for (int i = 0; i < results.size(); ++i) {
+      final int slot = batch.add();
+      batch.left[slot] = results.getLeft(i);
+      batch.top[slot] = results.getTop(i);
+      batch.right[slot] = results.getRight(i);
+      batch.bottom[slot] = results.getBottom(i);
+      batch.confidence[slot] = results.getScore(i);
+      batch.frameIds[slot] = timestamp;
+      batch.titles[slot] = results.getTitle(i);
+      batch.labels[slot] = formatLabel(results.getTitle(i), results.getScore(i));
+    }
+    pendingTimestamp = timestamp;
+    pending.publish(timestamp);
+  }
 
-      getFrameToCanvasMatrix().mapRect(trackedPos);
-      boxPaint.setColor(recognition.color);
+  /**
+   * Takes over the pending results, if any arrived: each continues the track of the same class it
+   * overlaps most, or starts a new one, and tracks left unmatched end.
+   *
+   * @return Whether there were new results.
+   */
+  private boolean adoptPending() {
+    if (!pending.update()) {
+      return false;
+    }
+    adoptedDetection = pending.getFrontVersion();
+    final TrackTable detections = pending.getFront();
 
-      float cornerSize = Math.min(trackedPos.width(), trackedPos.height()) / 8.0f;
-      canvas.drawRoundRect(trackedPos, cornerSize, cornerSize, boxPaint);
+    final int existing = tracks.getSlotCount();
+    if (claimed.length < tracks.live.length) {
+      claimed = new boolean[tracks.live.length];
+    }
+    Arrays.fill(claimed, false);
+    candidates.build(tracks, existing, frameConfiguration.width, frameConfiguration.height);
+    final RectF location = trackRect;
+    for (int i = 0; i < detections.getSlotCount(); ++i) {
+      detections.getLocation(i, location);
+      if (location.width() < MIN_SIZE || location.height() < MIN_SIZE) {
+        logger.w("Degenerate rectangle! %s", location);
+        continue;
+      }
+      final String title = detections.titles[i];
+      int best = candidates.bestMatch(tracks, location, title, claimed, MIN_MATCH_IOU);
+      if (best < 0) {
+        best = tracks.add();
+        if (claimed.length < tracks.live.length) {
+          claimed = Arrays.copyOf(claimed, tracks.live.length);
+        }
+        final long id = nextTrackId++;
+        tracks.ids[best] = id;
+        tracks.colors[best] = COLORS[(int) (id % COLORS.length)];
+        tracks.titles[best] = title;
+        tracks.fresh[best] = true;
+      }
+      claimed[best] = true;
+      tracks.setLocation(best, location);
+      tracks.confidence[best] = detections.confidence[i];
+      tracks.labels[best] = detections.labels[i];
+      tracks.frameIds[best] = detections.frameIds[i];
+    }
+    for (int slot = 0; slot < existing; ++slot) {
+      if (tracks.live[slot] && !claimed[slot]) {
+        if (tracks.described[slot]) {
+          gallery.add(
+              tracks.ids[slot],
+              tracks.colors[slot],
+              tracks.titles[slot],
+              (tracks.right[slot] - tracks.left[slot]) * (tracks.bottom[slot] - tracks.top[slot]),
+              tracks.descriptors,
+              slot * AppearanceDescriptor.LENGTH,
+              adoptedDetection);
+        }
+        tracks.remove(slot);
+      }
+    }
+    return true;
+  }
 
-      final String labelString =
-          !TextUtils.isEmpty(recognition.title)
-              ? String.format("%s %.2f", recognition.title, (100 * recognition.detectionConfidence))
-              : String.format("%.2f", (100 * recognition.detectionConfidence));
-      //            borderedText.drawText(canvas, trackedPos.left + cornerSize, trackedPos.top,
-      // labelString);
-      borderedText.drawText(
-          canvas, trackedPos.left + cornerSize, trackedPos.top, labelString + "%", boxPaint);
+  /** Hands draw a copy of the tracks and of the detections they were last matched to. */
+  private void publish(final long timestamp) {
+    final Snapshot snapshot = published.getBack();
+    snapshot.tracks.copyFrom(tracks);
+    // Detections change far less often than boxes move; each snapshot copies them once per result.
+    if (snapshot.detectionTimestamp != adoptedDetection) {
+      snapshot.detections.copyFrom(pending.getFront());
+      snapshot.detectionTimestamp = adoptedDetection;
     }
+    published.publish(timestamp);
+    publishedTimestamp = timestamp;
   }
 
-  private void processResults(final List<Recognition> results) {
-    final List<Pair<Float, Recognition>> rectsToTrack = new LinkedList<Pair<Float, Recognition>>();
+  /**
+   * Sets out to the frame-coordinate bounds of all boxes currently tracked. Must be called on the
+   * camera thread.
+   *
+   * @return Whether any box is tracked; out is left alone otherwise.
+   */
+  public boolean getTrackedBounds(final RectF out) {
+    boolean any = false;
+    for (int slot = 0; slot < tracks.getSlotCount(); ++slot) {
+      if (!tracks.live[slot]) {
+        continue;
+      }
+      if (any) {
+        out.left = Math.min(out.left, tracks.left[slot]);
+        out.top = Math.min(out.top, tracks.top[slot]);
+        out.right = Math.max(out.right, tracks.right[slot]);
+        out.bottom = Math.max(out.bottom, tracks.bottom[slot]);
+      } else {
+        tracks.getLocation(slot, out);
+        any = true;
+      }
+    }
+    return any;
+  }
 
-    screenRects.clear();
-    final Matrix rgbFrameToScreen = new Matrix(getFrameToCanvasMatrix());
+  /**
+   * Returns whether a track that is no longer current may still reappear, so that state kept for
+   * it should be kept too. Must be called on the camera thread.
+   */
+  public boolean isLost(final long id) {
+    return newestFrameTime >= 0 && gallery.contains(id, frameIds[newestFrameTime]);
+  }
 
-    for (final Recognition result : results) {
-      if (result.getLocation() == null) {
-        continue;
+  /** Passes every current track to the visitor. Must be called on the camera thread. */
+  public void getTracks(final TrackVisitor visitor) {
+    final RectF location = trackRect;
+    for (int slot = 0; slot < tracks.getSlotCount(); ++slot) {
+      if (tracks.live[slot]) {
+        tracks.getLocation(slot, location);
+        visitor.visit(tracks.ids[slot], tracks.titles[slot], location);
       }
-      final RectF detectionFrameRect = new RectF(result.getLocation());
+    }
+  }
+
+  /** Sets where finer labels for the tracks come from, or null to draw the detector's. */
+  public void setTrackLabels(final TrackLabels trackLabels) {
+    this.trackLabels = trackLabels;
+  }
 
-      final RectF detectionScreenRect = new RectF();
-      rgbFrameToScreen.mapRect(detectionScreenRect, detectionFrameRect);
+  /** Returns the timestamp of the results currently being drawn. */
+  public long getTrackedTimestamp() {
+    return publishedTimestamp;
+  }
 
-      logger.v(
-          "Result! Frame: " + result.getLocation() + " mapped to screen:" + detectionScreenRect);
+  private Matrix getFrameToCanvasMatrix() {
+    return frameToCanvasMatrix;
+  }
 
-      screenRects.add(new Pair<Float, RectF>(result.getConfidence(), detectionScreenRect));
+  public void draw(final Canvas canvas) {
+    final Matrix frameToCanvas = updateFrameToCanvasMatrix(canvas);
+    final TrackLabels trackLabels = this.trackLabels;
+    published.update();
+    final TrackTable drawn = published.getFront().tracks;
+    final RectF trackedPos = canvasRect;
+    for (int slot = 0; slot < drawn.getSlotCount(); ++slot) {
+      drawn.getLocation(slot, trackedPos);
 
-      if (detectionFrameRect.width() < MIN_SIZE || detectionFrameRect.height() < MIN_SIZE) {
-        logger.w("Degenerate rectangle! " + detectionFrameRect);
-        continue;
-      }
+      frameToCanvas.mapRect(trackedPos);
+      boxPaint.setColor(drawn.colors[slot]);
+
+      float cornerSize = Math.min(trackedPos.width(), trackedPos.height()) / 8.0f;
+      canvas.drawRoundRect(trackedPos, cornerSize, cornerSize, boxPaint);
 
-      rectsToTrack.add(new Pair<Float, Recognition>(result.getConfidence(), result));
+      final String refined = trackLabels != null ? trackLabels.getLabel(drawn.ids[slot]) : null;
+      borderedText.drawText(
+          canvas,
+          trackedPos.left + cornerSize,
+          trackedPos.top,
+          refined != null ? refined : drawn.labels[slot],
+          boxPaint);
     }
+  }
 
-    trackedObjects.clear();
-    if (rectsToTrack.isEmpty()) {
-      logger.v("Nothing to track, aborting.");
-      return;
+  /**
+   * Returns the frame to canvas transform, recomputing it only when the canvas size or the frame
+   * configuration changed since the last draw. A changed matrix is published as a new instance so
+   * drawDebug never observes one being rewritten.
+   */
+  private Matrix updateFrameToCanvasMatrix(final Canvas canvas) {
+    final FrameConfiguration config = frameConfiguration;
+    final int canvasWidth = canvas.getWidth();
+    final int canvasHeight = canvas.getHeight();
+    final Matrix cached = frameToCanvasMatrix;
+    if (cached != null
+        && config == matrixConfiguration
+        && canvasWidth == matrixCanvasWidth
+        && canvasHeight == matrixCanvasHeight) {
+      return cached;
     }
 
-    for (final Pair<Float, Recognition> potential : rectsToTrack) {
-      final TrackedRecognition trackedRecognition = new TrackedRecognition();
-      trackedRecognition.detectionConfidence = potential.first;
-      trackedRecognition.location = new RectF(potential.second.getLocation());
-      trackedRecognition.title = potential.second.getTitle();
-      trackedRecognition.color = COLORS[trackedObjects.size()];
-      trackedObjects.add(trackedRecognition);
+    final boolean rotated = config.sensorOrientation % 180 == 90;
+    final float multiplier =
+        Math.min(
+            canvasHeight / (float) (rotated ? config.width : config.height),
+            canvasWidth / (float) (rotated ? config.height : config.width));
+    final Matrix matrix =
+        ImageUtils.getTransformationMatrix(
+            config.width,
+            config.height,
+            (int) (multiplier * (rotated ? config.height : config.width)),
+            (int) (multiplier * (rotated ? config.width : config.height)),
+            config.sensorOrientation,
+            false);
+    matrixConfiguration = config;
+    matrixCanvasWidth = canvasWidth;
+    matrixCanvasHeight = canvasHeight;
+    frameToCanvasMatrix = matrix;
+    return matrix;
+  }
+
+  /** Formats the overlay label for a detection once, when it arrives, rather than on every draw. */
+  private static String formatLabel(final String title, final float detectionConfidence) {
+    return !TextUtils.isEmpty(title)
+        ? String.format("%s %.2f", title, (100 * detectionConfidence))
+        : String.format("%.2f", (100 * detectionConfidence));
+  }
 
-      if (trackedObjects.size() >= COLORS.length) {
-        break;
-      }
-    }
+  /** What draw and drawDebug show: the tracks, and the detections they were last matched to. */
+  private static final class Snapshot {
+    final TrackTable tracks = new TrackTable();
+    final TrackTable detections = new TrackTable();
+    // The timestamp of the results in detections.
+    long detectionTimestamp = Long.MIN_VALUE;
   }
 
-  private static class TrackedRecognition {
-    RectF location;
-    float detectionConfidence;
-    int color;
-    String title;
+  /** The source frame geometry, swapped as a unit so draw never sees a half-updated config. */
+  private static class FrameConfiguration {
+    final int width;
+    final int height;
+    final int sensorOrientation;
+
+    FrameConfiguration(final int width, final int height, final int sensorOrientation) {
+      this.width = width;
+      this.height = height;
+      this.sensorOrientation = sensorOrientation;
+    }
   }
 }
@@ -0,0 +1,413 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.RectF;
+import java.util.Arrays;
+import org.tensorflow.lite.examples.detection.env.LumaPyramid;
+import org.tensorflow.lite.examples.detection.env.LumaPyramidPool;
+
+/**
+ * Moves boxes between frames with sparse optical flow on the luma plane, so that tracked objects
+ * follow the camera between detections.
+ *
+ * <p>The pyramid of every frame is retained in a short history. To move a box, a
+ * grid of corner keypoints (highest minimum eigenvalue of the structure tensor per grid cell) is
+ * picked inside it in the older frame and followed into the newest one with pyramidal
+ * Lucas-Kanade. The box is scaled by the median change in distance between keypoint pairs and
+ * centered on the median of where each keypoint puts its center under that scale, which keeps a
+ * few bad tracks from dragging it along; if most keypoints disagree with that motion the box is
+ * left where it is. Since the history holds several frames, a box detected on an older frame can
+ * be brought up to date in one step.
+ *
+ * <p>Not thread-safe; all methods must be called from the same thread.
+ */
+public class OpticalFlowTracker {
+  // Frames kept, enough to cover the detector's latency.
+  private static final int HISTORY = 6;
+
+  // Lucas-Kanade integration window is (2 * WINDOW_RADIUS + 1) pixels square on every level.
+  private static final int WINDOW_RADIUS = 3;
+  private static final int WINDOW_SIZE = 2 * WINDOW_RADIUS + 1;
+  // The template patch has one extra pixel on each side for the gradients.
+  private static final int PATCH_SIZE = WINDOW_SIZE + 2;
+  private static final int MAX_ITERATIONS = 10;
+  // Iteration stops once the update is below this many pixels.
+  private static final float EPSILON = 0.03f;
+  // Mean absolute intensity difference above which a tracked point is considered lost.
+  private static final float MAX_RESIDUAL = 24.0f;
+
+  // Keypoints are picked on a GRID x GRID grid, from SAMPLES x SAMPLES candidates per cell.
+  private static final int GRID = 4;
+  private static final int SAMPLES = 4;
+  // Smallest structure tensor eigenvalue of a usable keypoint, for unnormalized central differences
+  // summed over a 3x3 neighbourhood.
+  private static final float MIN_EIGENVALUE = 400.0f;
+  private static final int MIN_POINTS = 4;
+  // Keypoint pairs closer than this do not vote on the scale.
+  private static final float MIN_PAIR_DISTANCE = 4.0f;
+  private static final float MAX_SCALE_CHANGE = 1.25f;
+  // A keypoint further than this many pixels from where the box motion puts it is an outlier; the
+  // box is only moved if at least half of the keypoints agree.
+  private static final float MAX_INLIER_ERROR = 3.0f;
+
+  private final LumaPyramidPool.Frame[] frames = new LumaPyramidPool.Frame[HISTORY];
+  private int newest = -1;
+
+  // Scratch, reused for every box.
+  private final float[] fromX = new float[GRID * GRID];
+  private final float[] fromY = new float[GRID * GRID];
+  private final float[] toX = new float[GRID * GRID];
+  private final float[] toY = new float[GRID * GRID];
+  private final float[] votes = new float[GRID * GRID * (GRID * GRID - 1) / 2];
+  private final float[] patch = new float[PATCH_SIZE * PATCH_SIZE];
+  private final float[] template = new float[WINDOW_SIZE * WINDOW_SIZE];
+  private final float[] gradX = new float[WINDOW_SIZE * WINDOW_SIZE];
+  private final float[] gradY = new float[WINDOW_SIZE * WINDOW_SIZE];
+  private final float[] window = new float[WINDOW_SIZE * WINDOW_SIZE];
+  private float trackedX;
+  private float trackedY;
+
+  /**
+   * Adds a frame to the history, retaining its pyramid and releasing the oldest one. Pyramids
+   * should have at least four levels for motions of a few dozen pixels to be followed.
+   */
+  public void nextFrame(final LumaPyramidPool.Frame frame) {
+    newest = (newest + 1) % HISTORY;
+    if (frames[newest] != null) {
+      frames[newest].release();
+    }
+    frames[newest] = frame.retain();
+  }
+
+  /** Returns the timestamp of the newest frame, or Long.MIN_VALUE before the first one. */
+  public long getNewestTimestamp() {
+    return newest >= 0 ? frames[newest].getTimestamp() : Long.MIN_VALUE;
+  }
+
+  /** Releases every frame in the history. */
+  public void clear() {
+    for (int i = 0; i < HISTORY; ++i) {
+      if (frames[i] != null) {
+        frames[i].release();
+        frames[i] = null;
+      }
+    }
+    newest = -1;
+  }
+
+  /**
+   * Moves a box from an earlier frame into the newest one.
+   *
+   * @param fromTimestamp The frame the box was located on.
+   * @param box The box in frame coordinates, updated in place.
+   * @return false if the frame has left the history or too few keypoints could be followed, in
+   *     which case the box is left unchanged.
+   */
+  public boolean track(final long fromTimestamp, final RectF box) {
+    final int from = indexOf(fromTimestamp);
+    if (from < 0) {
+      return false;
+    }
+    if (from == newest) {
+      return true;
+    }
+    final LumaPyramid previous = frames[from].getPyramid();
+    final LumaPyramid current = frames[newest].getPyramid();
+
+    final int numPoints = selectKeypoints(previous, box);
+    int tracked = 0;
+    for (int i = 0; i < numPoints; ++i) {
+      if (trackPoint(previous, current, fromX[i], fromY[i])) {
+        fromX[tracked] = fromX[i];
+        fromY[tracked] = fromY[i];
+        toX[tracked] = trackedX;
+        toY[tracked] = trackedY;
+        ++tracked;
+      }
+    }
+    if (tracked < MIN_POINTS) {
+      return false;
+    }
+
+    int numVotes = 0;
+    for (int i = 0; i < tracked; ++i) {
+      for (int j = i + 1; j < tracked; ++j) {
+        final float before = distance(fromX[i], fromY[i], fromX[j], fromY[j]);
+        if (before >= MIN_PAIR_DISTANCE) {
+          votes[numVotes++] = distance(toX[i], toY[i], toX[j], toY[j]) / before;
+        }
+      }
+    }
+    float scale = numVotes > 0 ? median(votes, numVotes) : 1.0f;
+    scale = Math.max(1.0f / MAX_SCALE_CHANGE, Math.min(MAX_SCALE_CHANGE, scale));
+
+    // Each keypoint votes for where the box center went, given the scale. The raw displacements
+    // would also carry the scaling of the keypoints' offsets from the center.
+    for (int i = 0; i < tracked; ++i) {
+      votes[i] = toX[i] - scale * (fromX[i] - box.centerX());
+    }
+    final float centerX = median(votes, tracked);
+    for (int i = 0; i < tracked; ++i) {
+      votes[i] = toY[i] - scale * (fromY[i] - box.centerY());
+    }
+    final float centerY = median(votes, tracked);
+    int inliers = 0;
+    for (int i = 0; i < tracked; ++i) {
+      final float expectedX = centerX + scale * (fromX[i] - box.centerX());
+      final float expectedY = centerY + scale * (fromY[i] - box.centerY());
+      if (distance(expectedX, expectedY, toX[i], toY[i]) <= MAX_INLIER_ERROR) {
+        ++inliers;
+      }
+    }
+    if (inliers < MIN_POINTS || 2 * inliers < tracked) {
+      return false;
+    }
+
+    final float halfWidth = box.width() * scale / 2;
+    final float halfHeight = box.height() * scale / 2;
+    box.set(centerX - halfWidth, centerY - halfHeight, centerX + halfWidth, centerY + halfHeight);
+    return true;
+  }
+
+  private int indexOf(final long timestamp) {
+    for (int i = 0; i < HISTORY && newest >= 0; ++i) {
+      final int index = (newest - i + HISTORY) % HISTORY;
+      if (frames[index] == null) {
+        break;
+      }
+      if (frames[index].getTimestamp() == timestamp) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /** Fills fromX/fromY with the best corner of each grid cell inside box; returns their number. */
+  private int selectKeypoints(final LumaPyramid pyramid, final RectF box) {
+    final byte[] image = pyramid.getLevel(0);
+    final int width = pyramid.getWidth(0);
+    final int height = pyramid.getHeight(0);
+    // Keep a margin for the 3x3 neighbourhood of central differences.
+    final float left = Math.max(box.left, 2);
+    final float top = Math.max(box.top, 2);
+    final float cellWidth = (Math.min(box.right, width - 3) - left) / GRID;
+    final float cellHeight = (Math.min(box.bottom, height - 3) - top) / GRID;
+    if (cellWidth < 1 || cellHeight < 1) {
+      return 0;
+    }
+
+    int numPoints = 0;
+    for (int cy = 0; cy < GRID; ++cy) {
+      for (int cx = 0; cx < GRID; ++cx) {
+        float best = MIN_EIGENVALUE;
+        int bestX = -1;
+        int bestY = -1;
+        for (int sy = 0; sy < SAMPLES; ++sy) {
+          final int y = (int) (top + (cy + (sy + 0.5f) / SAMPLES) * cellHeight);
+          for (int sx = 0; sx < SAMPLES; ++sx) {
+            final int x = (int) (left + (cx + (sx + 0.5f) / SAMPLES) * cellWidth);
+            final float score = minEigenvalue(image, width, x, y);
+            if (score > best) {
+              best = score;
+              bestX = x;
+              bestY = y;
+            }
+          }
+        }
+        if (bestX >= 0) {
+          fromX[numPoints] = bestX;
+          fromY[numPoints] = bestY;
+          ++numPoints;
+        }
+      }
+    }
+    return numPoints;
+  }
+
+  /** Smaller eigenvalue of the structure tensor over the 3x3 neighbourhood of (x, y). */
+  private static float minEigenvalue(final byte[] image, final int width, final int x, final int y) {
+    int xx = 0;
+    int xy = 0;
+    int yy = 0;
+    for (int ny = y - 1; ny <= y + 1; ++ny) {
+      for (int nx = x - 1; nx <= x + 1; ++nx) {
+        final int i = ny * width + nx;
+        final int gx = (image[i + 1] & 0xff) - (image[i - 1] & 0xff);
+        final int gy = (image[i + width] & 0xff) - (image[i - width] & 0xff);
+        xx += gx * gx;
+        xy += gx * gy;
+        yy += gy * gy;
+      }
+    }
+    final float diff = xx - yy;
+    return (xx + yy - (float) Math.sqrt(diff * diff + 4.0f * xy * xy)) / 2;
+  }
+
+  /**
+   * Follows the level 0 point (x, y) from previous into current with pyramidal Lucas-Kanade. On
+   * success the new position is left in trackedX/trackedY.
+   */
+  private boolean trackPoint(
+      final LumaPyramid previous, final LumaPyramid current, final float x, final float y) {
+    // Displacement guess carried down the levels, in units of the current level.
+    float guessX = 0;
+    float guessY = 0;
+    for (int level = previous.getNumLevels() - 1; level >= 0; --level) {
+      final byte[] before = previous.getLevel(level);
+      final byte[] after = current.getLevel(level);
+      final int width = previous.getWidth(level);
+      final int height = previous.getHeight(level);
+      // Pixel centers of level L sit at 2^L * (x + 0.5) - 0.5 on level 0.
+      final float levelScale = 1.0f / (1 << level);
+      final float px = (x + 0.5f) * levelScale - 0.5f;
+      final float py = (y + 0.5f) * levelScale - 0.5f;
+
+      sample(before, width, height, px, py, WINDOW_RADIUS + 1, patch);
+      float gxx = 0;
+      float gxy = 0;
+      float gyy = 0;
+      for (int wy = 0, i = 0; wy < WINDOW_SIZE; ++wy) {
+        for (int wx = 0; wx < WINDOW_SIZE; ++wx, ++i) {
+          final int p = (wy + 1) * PATCH_SIZE + wx + 1;
+          final float ix = (patch[p + 1] - patch[p - 1]) * 0.5f;
+          final float iy = (patch[p + PATCH_SIZE] - patch[p - PATCH_SIZE]) * 0.5f;
+          template[i] = patch[p];
+          gradX[i] = ix;
+          gradY[i] = iy;
+          gxx += ix * ix;
+          gxy += ix * iy;
+          gyy += iy * iy;
+        }
+      }
+      final float det = gxx * gyy - gxy * gxy;
+      if (det < 1e-3f) {
+        return false;
+      }
+
+      float stepX = 0;
+      float stepY = 0;
+      for (int iteration = 0; iteration < MAX_ITERATIONS; ++iteration) {
+        sample(after, width, height, px + guessX + stepX, py + guessY + stepY, WINDOW_RADIUS, window);
+        float bx = 0;
+        float by = 0;
+        for (int i = 0; i < window.length; ++i) {
+          final float diff = template[i] - window[i];
+          bx += diff * gradX[i];
+          by += diff * gradY[i];
+        }
+        final float etaX = (gyy * bx - gxy * by) / det;
+        final float etaY = (gxx * by - gxy * bx) / det;
+        stepX += etaX;
+        stepY += etaY;
+        if (etaX * etaX + etaY * etaY < EPSILON * EPSILON) {
+          break;
+        }
+      }
+
+      if (level > 0) {
+        guessX = 2 * (guessX + stepX);
+        guessY = 2 * (guessY + stepY);
+      } else {
+        guessX += stepX;
+        guessY += stepY;
+      }
+    }
+
+    trackedX = x + guessX;
+    trackedY = y + guessY;
+    final int width = current.getWidth(0);
+    final int height = current.getHeight(0);
+    if (trackedX < 0 || trackedY < 0 || trackedX > width - 1 || trackedY > height - 1) {
+      return false;
+    }
+    sample(current.getLevel(0), width, height, trackedX, trackedY, WINDOW_RADIUS, window);
+    float residual = 0;
+    for (int i = 0; i < window.length; ++i) {
+      residual += Math.abs(template[i] - window[i]);
+    }
+    return residual / window.length <= MAX_RESIDUAL;
+  }
+
+  /**
+   * Bilinearly samples the (2 * radius + 1) pixel square centered on (cx, cy) into out, clamping
+   * coordinates at the image border. All samples share the same fractional offset.
+   */
+  private static void sample(
+      final byte[] image,
+      final int width,
+      final int height,
+      final float cx,
+      final float cy,
+      final int radius,
+      final float[] out) {
+    final int size = 2 * radius + 1;
+    final float x0 = cx - radius;
+    final float y0 = cy - radius;
+    final int ix = (int) Math.floor(x0);
+    final int iy = (int) Math.floor(y0);
+    final float fx = x0 - ix;
+    final float fy = y0 - iy;
+    final float w00 = (1 - fx) * (1 - fy);
+    final float w10 = fx * (1 - fy);
+    final float w01 = (1 - fx) * fy;
+    final float w11 = fx * fy;
+
+    if (ix >= 0 && iy >= 0 && ix + size < width && iy + size < height) {
+      for (int y = 0, o = 0; y < size; ++y) {
+        int i = (iy + y) * width + ix;
+        for (int x = 0; x < size; ++x, ++i) {
+          out[o++] =
+              w00 * (image[i] & 0xff)
+                  + w10 * (image[i + 1] & 0xff)
+                  + w01 * (image[i + width] & 0xff)
+                  + w11 * (image[i + width + 1] & 0xff);
+        }
+      }
+      return;
+    }
+
+    for (int y = 0, o = 0; y < size; ++y) {
+      final int row0 = clamp(iy + y, height) * width;
+      final int row1 = clamp(iy + y + 1, height) * width;
+      for (int x = 0; x < size; ++x) {
+        final int col0 = clamp(ix + x, width);
+        final int col1 = clamp(ix + x + 1, width);
+        out[o++] =
+            w00 * (image[row0 + col0] & 0xff)
+                + w10 * (image[row0 + col1] & 0xff)
+                + w01 * (image[row1 + col0] & 0xff)
+                + w11 * (image[row1 + col1] & 0xff);
+      }
+    }
+  }
+
+  private static int clamp(final int value, final int size) {
+    return value < 0 ? 0 : (value >= size ? size - 1 : value);
+  }
+
+  private static float distance(final float x0, final float y0, final float x1, final float y1) {
+    final float dx = x1 - x0;
+    final float dy = y1 - y0;
+    return (float) Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /** Returns the median of the first n values, reordering them. */
+  private static float median(final float[] values, final int n) {
+    Arrays.sort(values, 0, n);
+    return (n & 1) == 1 ? values[n / 2] : (values[n / 2 - 1] + values[n / 2]) / 2;
+  }
+}
@@ -0,0 +1,66 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/** Delivers the readings of the device's gyroscope. */
+public class SensorGyroSource implements GyroSource, SensorEventListener {
+  private static final Logger LOGGER = new Logger();
+
+  private final SensorManager sensorManager;
+  private final Sensor gyroscope;
+  private volatile Listener listener;
+
+  public SensorGyroSource(final Context context) {
+    sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+    gyroscope =
+        sensorManager != null ? sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE) : null;
+  }
+
+  @Override
+  public boolean start(final Listener listener) {
+    if (gyroscope == null) {
+      LOGGER.w("No gyroscope, tracked boxes are only moved by optical flow");
+      return false;
+    }
+    this.listener = listener;
+    return sensorManager.registerListener(this, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+  }
+
+  @Override
+  public void stop() {
+    if (gyroscope != null) {
+      sensorManager.unregisterListener(this);
+    }
+    listener = null;
+  }
+
+  @Override
+  public void onSensorChanged(final SensorEvent event) {
+    final Listener listener = this.listener;
+    if (listener != null) {
+      listener.onGyroSample(event.timestamp, event.values[0], event.values[1], event.values[2]);
+    }
+  }
+
+  @Override
+  public void onAccuracyChanged(final Sensor sensor, final int accuracy) {}
+}
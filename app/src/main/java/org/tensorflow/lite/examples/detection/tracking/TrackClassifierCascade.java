@@ -0,0 +1,229 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.LumaPyramid;
+import org.tensorflow.lite.examples.detection.env.PerceptualHash;
+import org.tensorflow.lite.examples.detection.env.YuvResampler;
+import org.tensorflow.lite.examples.detection.tflite.Classifier;
+import org.tensorflow.lite.examples.detection.tflite.Detections;
+
+/**
+ * Refines the detector's coarse labels with a second, heavier classifier run on the crops of
+ * tracked objects, while keeping its cost proportional to the number of new objects rather than to
+ * frame rate times object count.
+ *
+ * <p>A track is classified once when it is born, and again only when its appearance drifts: its
+ * {@link PerceptualHash} moved away from the one it was classified with, or its box grew or shrank
+ * a lot. Results are cached by track id and dropped once the track is gone for good, not while
+ * the tracker may still {@link MultiBoxTracker#isLost re-identify} it. At most one classification
+ * runs at a time.
+ *
+ * <p>The second stage is any {@link Classifier} taking a square input tensor; the class of its
+ * best-scoring result is the track's label. Usage per frame: on the camera thread, {@link
+ * #prepare} picks a track and aims the {@link #getInput() input} at it; if it returns true, the
+ * caller resamples the frame into the input and runs {@link #classify()} on the inference thread.
+ */
+public class TrackClassifierCascade implements MultiBoxTracker.TrackLabels {
+  private static final Logger LOGGER = new Logger();
+
+  // Hash bits by which a track's appearance may drift before it is classified again.
+  private static final int DRIFT_BITS = 16;
+  // Box area ratio beyond which a track is classified again, e.g. after coming closer.
+  private static final float MAX_AREA_CHANGE = 2.25f;
+  // Context around the box included in the crop, as a fraction of its longer side.
+  private static final float CROP_MARGIN = 0.1f;
+
+  private static final class Entry {
+    final long signature;
+    final float area;
+    final String label;
+
+    Entry(final long signature, final float area, final String label) {
+      this.signature = signature;
+      this.area = area;
+      this.label = label;
+    }
+  }
+
+  private final Classifier classifier;
+  private final YuvResampler.Target input;
+  private final Detections results;
+  private final float minScore;
+  private final int sensorOrientation;
+  // Written on the camera thread and the inference thread, read by draw on the UI thread.
+  private final Map<Long, Entry> entries = new ConcurrentHashMap<Long, Entry>();
+  private volatile boolean classifying;
+
+  // Only touched in prepare on the camera thread.
+  private final Set<Long> liveIds = new HashSet<Long>();
+  private final RectF crop = new RectF();
+  private LumaPyramid pyramid;
+  private long candidateId;
+  private int candidateDrift;
+  private long candidateSignature;
+  private final RectF candidateBox = new RectF();
+  // Weighs each track for prepare.
+  private final MultiBoxTracker.TrackVisitor visitor =
+      new MultiBoxTracker.TrackVisitor() {
+        @Override
+        public void visit(final long id, final String title, final RectF location) {
+          liveIds.add(id);
+          final long signature = PerceptualHash.compute(pyramid, location);
+          final Entry entry = entries.get(id);
+          final int drift;
+          if (entry == null) {
+            // New tracks go first.
+            drift = Integer.MAX_VALUE;
+          } else {
+            final float areaChange = location.width() * location.height() / entry.area;
+            if (areaChange > MAX_AREA_CHANGE || areaChange < 1 / MAX_AREA_CHANGE) {
+              drift = Integer.MAX_VALUE - 1;
+            } else {
+              drift = PerceptualHash.distance(signature, entry.signature);
+              if (drift <= DRIFT_BITS) {
+                return;
+              }
+            }
+          }
+          if (drift > candidateDrift) {
+            candidateId = id;
+            candidateDrift = drift;
+            candidateSignature = signature;
+            candidateBox.set(location);
+          }
+        }
+      };
+
+  // The track being classified; written by prepare before classify is queued.
+  private long pendingId;
+  private long pendingSignature;
+  private float pendingArea;
+
+  /**
+   * @param classifier The second stage.
+   * @param input Tensor in the classifier's input layout, filled by the caller.
+   * @param minScore Results scoring lower leave the detector's label in place.
+   * @param sensorOrientation Rotation of the frame relative to the upright screen, in degrees.
+   */
+  public TrackClassifierCascade(
+      final Classifier classifier,
+      final YuvResampler.Target input,
+      final float minScore,
+      final int sensorOrientation) {
+    this.classifier = classifier;
+    this.input = input;
+    this.results = new Detections(classifier.getLabels(), 0);
+    this.minScore = minScore;
+    this.sensorOrientation = sensorOrientation;
+  }
+
+  public YuvResampler.Target getInput() {
+    return input;
+  }
+
+  /**
+   * Forgets tracks that are gone and picks the track most in need of classification: a new one,
+   * else the one whose appearance drifted most. Must be called on the camera thread.
+   *
+   * @param pyramid The current frame.
+   * @return Whether a track was picked and the input aimed at it.
+   */
+  public boolean prepare(final MultiBoxTracker tracker, final LumaPyramid pyramid) {
+    if (classifying) {
+      return false;
+    }
+    this.pyramid = pyramid;
+    liveIds.clear();
+    candidateId = -1;
+    candidateDrift = -1;
+    tracker.getTracks(visitor);
+    this.pyramid = null;
+    for (final Iterator<Long> it = entries.keySet().iterator(); it.hasNext(); ) {
+      final long id = it.next();
+      if (!liveIds.contains(id) && !tracker.isLost(id)) {
+        it.remove();
+      }
+    }
+    if (candidateId < 0) {
+      return false;
+    }
+
+    // A square crop around the box, so the object keeps its aspect ratio in the input.
+    final float side =
+        Math.max(candidateBox.width(), candidateBox.height()) * (1 + 2 * CROP_MARGIN);
+    crop.set(
+        candidateBox.centerX() - side / 2,
+        candidateBox.centerY() - side / 2,
+        candidateBox.centerX() + side / 2,
+        candidateBox.centerY() + side / 2);
+    final Matrix frameToInput = new Matrix();
+    frameToInput.postTranslate(-crop.left, -crop.top);
+    frameToInput.postConcat(
+        ImageUtils.getTransformationMatrix(
+            Math.round(side),
+            Math.round(side),
+            input.getWidth(),
+            input.getHeight(),
+            sensorOrientation,
+            false));
+    input.setTransform(frameToInput);
+
+    pendingId = candidateId;
+    pendingSignature = candidateSignature;
+    pendingArea = candidateBox.width() * candidateBox.height();
+    classifying = true;
+    return true;
+  }
+
+  /**
+   * Classifies the track picked by the last successful {@link #prepare}, once the frame has been
+   * resampled into the input.
+   */
+  public void classify() {
+    try {
+      classifier.recognizeImage(input.getBuffer(), results);
+      int best = -1;
+      for (int i = 0; i < results.size(); ++i) {
+        if (best < 0 || results.getScore(i) > results.getScore(best)) {
+          best = i;
+        }
+      }
+      final String label =
+          best >= 0 && results.getScore(best) >= minScore ? results.getTitle(best) : null;
+      LOGGER.d("Track %d classified as %s", pendingId, label);
+      // Cached even without a confident label, so the track is not classified again until it
+      // changes.
+      entries.put(pendingId, new Entry(pendingSignature, pendingArea, label));
+    } finally {
+      classifying = false;
+    }
+  }
+
+  @Override
+  public String getLabel(final long id) {
+    final Entry entry = entries.get(id);
+    return entry != null ? entry.label : null;
+  }
+}
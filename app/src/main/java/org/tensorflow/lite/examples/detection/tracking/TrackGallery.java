@@ -0,0 +1,172 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.text.TextUtils;
+
+/**
+ * Tracks that recently lost their detection, e.g. while walking behind a pillar, remembered by
+ * their {@link AppearanceDescriptor} so that a new detection that looks the same can take over
+ * their identity instead of starting a new track. Holds a fixed number of entries, evicting the
+ * one lost longest ago, and forgets entries after a number of frames.
+ *
+ * <p>Not thread-safe.
+ */
+final class TrackGallery {
+  private final int capacity;
+  private final long maxAge;
+  private final float maxDistance;
+
+  private final long[] ids;
+  private final int[] colors;
+  private final String[] titles;
+  private final float[] areas;
+  // Timestamp of the frame the track was lost on.
+  private final long[] lostFrames;
+  private final float[] descriptors;
+  private final boolean[] used;
+  private int size;
+
+  /**
+   * @param capacity Number of lost tracks remembered.
+   * @param maxAge Frames after which a lost track is forgotten.
+   * @param maxDistance Largest descriptor distance at which a detection is the same object.
+   */
+  TrackGallery(final int capacity, final long maxAge, final float maxDistance) {
+    this.capacity = capacity;
+    this.maxAge = maxAge;
+    this.maxDistance = maxDistance;
+    ids = new long[capacity];
+    colors = new int[capacity];
+    titles = new String[capacity];
+    areas = new float[capacity];
+    lostFrames = new long[capacity];
+    descriptors = new float[capacity * AppearanceDescriptor.LENGTH];
+    used = new boolean[capacity];
+  }
+
+  /**
+   * Remembers a lost track, replacing an expired entry or else the oldest one when full.
+   *
+   * @param descriptor Holds the track's descriptor at offset.
+   */
+  void add(
+      final long id,
+      final int color,
+      final String title,
+      final float area,
+      final float[] descriptor,
+      final int offset,
+      final long frame) {
+    int entry = -1;
+    for (int i = 0; i < capacity; ++i) {
+      if (!used[i] || frame - lostFrames[i] > maxAge) {
+        entry = i;
+        break;
+      }
+      if (entry < 0 || lostFrames[i] < lostFrames[entry]) {
+        entry = i;
+      }
+    }
+    if (!used[entry]) {
+      used[entry] = true;
+      ++size;
+    }
+    ids[entry] = id;
+    colors[entry] = color;
+    titles[entry] = title;
+    areas[entry] = area;
+    lostFrames[entry] = frame;
+    System.arraycopy(
+        descriptor,
+        offset,
+        descriptors,
+        entry * AppearanceDescriptor.LENGTH,
+        AppearanceDescriptor.LENGTH);
+  }
+
+  /**
+   * Finds the lost track of the same class that looks most like a new detection.
+   *
+   * @param descriptor Holds the detection's descriptor at offset.
+   * @param area The detection's box area; lost tracks more than 4x larger or smaller are skipped.
+   * @return The entry, to be taken with the getters and {@link #remove}, or -1.
+   */
+  int match(
+      final String title,
+      final float area,
+      final float[] descriptor,
+      final int offset,
+      final long frame) {
+    int best = -1;
+    float bestDistance = maxDistance;
+    for (int i = 0; i < capacity; ++i) {
+      if (!used[i]) {
+        continue;
+      }
+      if (frame - lostFrames[i] > maxAge) {
+        remove(i);
+        continue;
+      }
+      if (!TextUtils.equals(titles[i], title) || area > 4 * areas[i] || areas[i] > 4 * area) {
+        continue;
+      }
+      final float distance =
+          AppearanceDescriptor.distance(
+              descriptors, i * AppearanceDescriptor.LENGTH, descriptor, offset);
+      if (distance <= bestDistance) {
+        best = i;
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+  long getId(final int entry) {
+    return ids[entry];
+  }
+
+  int getColor(final int entry) {
+    return colors[entry];
+  }
+
+  /** Returns whether a track with the given id is remembered and not yet forgotten at frame. */
+  boolean contains(final long id, final long frame) {
+    for (int i = 0; i < capacity; ++i) {
+      if (used[i] && ids[i] == id) {
+        return frame - lostFrames[i] <= maxAge;
+      }
+    }
+    return false;
+  }
+
+  void remove(final int entry) {
+    used[entry] = false;
+    titles[entry] = null;
+    --size;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    for (int i = 0; i < capacity; ++i) {
+      used[i] = false;
+      titles[i] = null;
+    }
+    size = 0;
+  }
+}
@@ -0,0 +1,170 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.RectF;
+import android.text.TextUtils;
+import java.util.Arrays;
+
+/**
+ * Buckets the slots of a {@link TrackTable} by class and by the cells of a coarse grid over the
+ * frame their boxes cover, so that matching a detection only tests the tracks of its class near it
+ * rather than every track. Boxes that overlap at all share a cell, so no match is missed.
+ *
+ * <p>Entries are held in int arrays that only grow, so rebuilding costs no allocation once they
+ * fit. Not thread-safe.
+ */
+final class TrackGrid {
+  // Cells along each side of the frame.
+  private static final int CELLS = 8;
+  // Buckets a (cell, class) pair hashes into; a power of two.
+  private static final int BUCKETS = 256;
+  private static final int INITIAL_CAPACITY = 64;
+
+  // First entry of each bucket, or -1.
+  private final int[] heads = new int[BUCKETS];
+  private int[] entrySlots = new int[INITIAL_CAPACITY];
+  // Next entry in the same bucket, or -1.
+  private int[] entryNext = new int[INITIAL_CAPACITY];
+  private int entryCount;
+  // Stamp of the last lookup that tested each slot, so a box spanning cells is tested once.
+  private int[] visited = new int[0];
+  private int stamp;
+  private float cellWidth = 1;
+  private float cellHeight = 1;
+
+  TrackGrid() {
+    Arrays.fill(heads, -1);
+  }
+
+  /** Replaces the contents with the live slots in [0, count) of tracks, on a frame of this size. */
+  void build(
+      final TrackTable tracks, final int count, final int frameWidth, final int frameHeight) {
+    Arrays.fill(heads, -1);
+    entryCount = 0;
+    cellWidth = Math.max(1, frameWidth) / (float) CELLS;
+    cellHeight = Math.max(1, frameHeight) / (float) CELLS;
+    if (visited.length < count) {
+      visited = new int[tracks.live.length];
+      stamp = 0;
+    }
+    for (int slot = 0; slot < count; ++slot) {
+      if (!tracks.live[slot]) {
+        continue;
+      }
+      final int titleHash = hash(tracks.titles[slot]);
+      final int x0 = cellX(tracks.left[slot]);
+      final int x1 = cellX(tracks.right[slot]);
+      final int y0 = cellY(tracks.top[slot]);
+      final int y1 = cellY(tracks.bottom[slot]);
+      for (int y = y0; y <= y1; ++y) {
+        for (int x = x0; x <= x1; ++x) {
+          insert(bucket(x, y, titleHash), slot);
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the unclaimed track of the given class that overlaps box most, by at least minIou. Ties
+   * go to the highest slot.
+   *
+   * @return The slot, or -1 if none overlaps enough.
+   */
+  int bestMatch(
+      final TrackTable tracks,
+      final RectF box,
+      final String title,
+      final boolean[] claimed,
+      final float minIou) {
+    if (++stamp == 0) {
+      Arrays.fill(visited, 0);
+      stamp = 1;
+    }
+    final int titleHash = hash(title);
+    final int x0 = cellX(box.left);
+    final int x1 = cellX(box.right);
+    final int y0 = cellY(box.top);
+    final int y1 = cellY(box.bottom);
+    int best = -1;
+    float bestIou = minIou;
+    for (int y = y0; y <= y1; ++y) {
+      for (int x = x0; x <= x1; ++x) {
+        for (int e = heads[bucket(x, y, titleHash)]; e >= 0; e = entryNext[e]) {
+          final int slot = entrySlots[e];
+          if (visited[slot] == stamp) {
+            continue;
+          }
+          visited[slot] = stamp;
+          if (!tracks.live[slot]
+              || claimed[slot]
+              || !TextUtils.equals(tracks.titles[slot], title)) {
+            continue;
+          }
+          final float iou =
+              intersectionOverUnion(
+                  tracks.left[slot],
+                  tracks.top[slot],
+                  tracks.right[slot],
+                  tracks.bottom[slot],
+                  box);
+          if (iou > bestIou || (iou == bestIou && slot > best)) {
+            best = slot;
+            bestIou = iou;
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  static float intersectionOverUnion(
+      final float left, final float top, final float right, final float bottom, final RectF b) {
+    final float width = Math.min(right, b.right) - Math.max(left, b.left);
+    final float height = Math.min(bottom, b.bottom) - Math.max(top, b.top);
+    if (width <= 0 || height <= 0) {
+      return 0;
+    }
+    final float intersection = width * height;
+    return intersection / ((right - left) * (bottom - top) + b.width() * b.height() - intersection);
+  }
+
+  private void insert(final int bucket, final int slot) {
+    if (entryCount == entrySlots.length) {
+      entrySlots = Arrays.copyOf(entrySlots, entryCount * 2);
+      entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+    }
+    entrySlots[entryCount] = slot;
+    entryNext[entryCount] = heads[bucket];
+    heads[bucket] = entryCount++;
+  }
+
+  // Boxes moved partly off the frame fall into the border cells.
+  private int cellX(final float x) {
+    return Math.max(0, Math.min(CELLS - 1, (int) (x / cellWidth)));
+  }
+
+  private int cellY(final float y) {
+    return Math.max(0, Math.min(CELLS - 1, (int) (y / cellHeight)));
+  }
+
+  private static int bucket(final int x, final int y, final int titleHash) {
+    return ((y * CELLS + x) * 31 + titleHash) & (BUCKETS - 1);
+  }
+
+  private static int hash(final String title) {
+    return title != null ? title.hashCode() : 0;
+  }
+}
@@ -0,0 +1,166 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.RectF;
+import java.util.Arrays;
+
+/**
+ * Tracked boxes held as parallel arrays of primitives, one entry per slot, so that updating
+ * hundreds of them costs neither boxing nor allocation. Slots of removed tracks go on a free list
+ * and are reused first; the arrays only grow, doubling, when every slot is taken. Slots in [0,
+ * {@link #getSlotCount()}) are either live or free.
+ *
+ * <p>Not thread-safe.
+ */
+final class TrackTable {
+  private static final int INITIAL_CAPACITY = 16;
+
+  float[] left = new float[0];
+  float[] top = new float[0];
+  float[] right = new float[0];
+  float[] bottom = new float[0];
+  float[] confidence = new float[0];
+  // Identity of the track, kept while detections match it.
+  long[] ids = new long[0];
+  // Timestamp of the frame the box is on.
+  long[] frameIds = new long[0];
+  int[] colors = new int[0];
+  String[] titles = new String[0];
+  // Overlay label, formatted once per detection rather than on every draw.
+  String[] labels = new String[0];
+  boolean[] live = new boolean[0];
+  // AppearanceDescriptor of each slot at slot * AppearanceDescriptor.LENGTH, valid if described.
+  // Not copied by copyFrom.
+  float[] descriptors = new float[0];
+  boolean[] described = new boolean[0];
+  // Whether the track was started by the latest detection and not yet looked up among lost ones.
+  boolean[] fresh = new boolean[0];
+
+  // Next free slot of each free slot, or -1.
+  private int[] nextFree = new int[0];
+  private int freeHead = -1;
+  private int slotCount;
+  private int liveCount;
+
+  TrackTable() {
+    allocateArrays(INITIAL_CAPACITY);
+  }
+
+  /** Slots in use or on the free list; iterate over [0, slotCount) and check {@link #live}. */
+  int getSlotCount() {
+    return slotCount;
+  }
+
+  int getLiveCount() {
+    return liveCount;
+  }
+
+  /** Takes a slot, preferring freed ones, and marks it live. Its fields are left to the caller. */
+  int add() {
+    final int slot;
+    if (freeHead >= 0) {
+      slot = freeHead;
+      freeHead = nextFree[slot];
+    } else {
+      if (slotCount == live.length) {
+        allocateArrays(live.length * 2);
+      }
+      slot = slotCount++;
+    }
+    live[slot] = true;
+    described[slot] = false;
+    fresh[slot] = false;
+    ++liveCount;
+    return slot;
+  }
+
+  /** Puts a live slot on the free list. */
+  void remove(final int slot) {
+    live[slot] = false;
+    titles[slot] = null;
+    labels[slot] = null;
+    nextFree[slot] = freeHead;
+    freeHead = slot;
+    --liveCount;
+  }
+
+  void clear() {
+    Arrays.fill(live, 0, slotCount, false);
+    Arrays.fill(titles, 0, slotCount, null);
+    Arrays.fill(labels, 0, slotCount, null);
+    slotCount = 0;
+    liveCount = 0;
+    freeHead = -1;
+  }
+
+  void getLocation(final int slot, final RectF out) {
+    out.set(left[slot], top[slot], right[slot], bottom[slot]);
+  }
+
+  void setLocation(final int slot, final RectF location) {
+    left[slot] = location.left;
+    top[slot] = location.top;
+    right[slot] = location.right;
+    bottom[slot] = location.bottom;
+  }
+
+  /**
+   * Replaces the contents with the live tracks of other, packed into the first slots, leaving out
+   * their descriptors.
+   */
+  void copyFrom(final TrackTable other) {
+    clear();
+    if (live.length < other.liveCount) {
+      allocateArrays(Math.max(other.liveCount, live.length * 2));
+    }
+    for (int i = 0; i < other.slotCount; ++i) {
+      if (!other.live[i]) {
+        continue;
+      }
+      final int slot = slotCount++;
+      left[slot] = other.left[i];
+      top[slot] = other.top[i];
+      right[slot] = other.right[i];
+      bottom[slot] = other.bottom[i];
+      confidence[slot] = other.confidence[i];
+      ids[slot] = other.ids[i];
+      frameIds[slot] = other.frameIds[i];
+      colors[slot] = other.colors[i];
+      titles[slot] = other.titles[i];
+      labels[slot] = other.labels[i];
+      live[slot] = true;
+    }
+    liveCount = slotCount;
+  }
+
+  private void allocateArrays(final int capacity) {
+    left = Arrays.copyOf(left, capacity);
+    top = Arrays.copyOf(top, capacity);
+    right = Arrays.copyOf(right, capacity);
+    bottom = Arrays.copyOf(bottom, capacity);
+    confidence = Arrays.copyOf(confidence, capacity);
+    ids = Arrays.copyOf(ids, capacity);
+    frameIds = Arrays.copyOf(frameIds, capacity);
+    colors = Arrays.copyOf(colors, capacity);
+    titles = Arrays.copyOf(titles, capacity);
+    labels = Arrays.copyOf(labels, capacity);
+    live = Arrays.copyOf(live, capacity);
+    descriptors = Arrays.copyOf(descriptors, capacity * AppearanceDescriptor.LENGTH);
+    described = Arrays.copyOf(described, capacity);
+    fresh = Arrays.copyOf(fresh, capacity);
+    nextFree = Arrays.copyOf(nextFree, capacity);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.hardware.Camera;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class CallbackBufferRingTest {
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+
+  @Test
+  public void attachQueuesEveryBuffer() {
+    final CallbackBufferRing ring = new CallbackBufferRing(3);
+    final Camera camera = Camera.open();
+    ring.attach(camera, WIDTH, HEIGHT);
+
+    final List<byte[]> queued = shadowOf(camera).getAddedCallbackBuffers();
+    assertEquals(3, queued.size());
+    assertEquals(WIDTH * HEIGHT * 3 / 2, queued.get(0).length);
+    assertEquals(0, ring.getHeldCount());
+  }
+
+  @Test
+  public void releaseQueuesBufferAgain() {
+    final CallbackBufferRing ring = new CallbackBufferRing(2);
+    final Camera camera = Camera.open();
+    ring.attach(camera, WIDTH, HEIGHT);
+    final byte[] buffer = shadowOf(camera).getAddedCallbackBuffers().get(0);
+
+    ring.onDelivered(buffer);
+    assertEquals(1, ring.getHeldCount());
+    ring.release(buffer);
+    assertEquals(0, ring.getHeldCount());
+    assertEquals(3, shadowOf(camera).getAddedCallbackBuffers().size());
+  }
+
+  @Test
+  public void releasingTwiceOrForeignBufferIsIgnored() {
+    final CallbackBufferRing ring = new CallbackBufferRing(2);
+    final Camera camera = Camera.open();
+    ring.attach(camera, WIDTH, HEIGHT);
+    final byte[] buffer = shadowOf(camera).getAddedCallbackBuffers().get(0);
+
+    ring.onDelivered(buffer);
+    ring.release(buffer);
+    ring.release(buffer);
+    ring.release(new byte[buffer.length]);
+    assertEquals(3, shadowOf(camera).getAddedCallbackBuffers().size());
+  }
+
+  @Test
+  public void restartDoesNotQueueBufferHeldByApp() {
+    final CallbackBufferRing ring = new CallbackBufferRing(3);
+    final Camera first = Camera.open();
+    ring.attach(first, WIDTH, HEIGHT);
+    final byte[] held = shadowOf(first).getAddedCallbackBuffers().get(1);
+    ring.onDelivered(held);
+
+    // The camera restarts while the app is still converting the held buffer.
+    ring.detach();
+    final Camera second = Camera.open();
+    ring.attach(second, WIDTH, HEIGHT);
+    final List<byte[]> queued = shadowOf(second).getAddedCallbackBuffers();
+    assertEquals(2, queued.size());
+    assertFalse(queued.contains(held));
+    assertEquals(1, ring.getHeldCount());
+
+    // Once done, the app's release queues it in the new camera.
+    ring.release(held);
+    assertEquals(3, queued.size());
+    assertSame(held, queued.get(2));
+    assertEquals(0, ring.getHeldCount());
+  }
+
+  @Test
+  public void releaseAfterDetachIsNotQueued() {
+    final CallbackBufferRing ring = new CallbackBufferRing(1);
+    final Camera camera = Camera.open();
+    ring.attach(camera, WIDTH, HEIGHT);
+    final byte[] buffer = shadowOf(camera).getAddedCallbackBuffers().get(0);
+    ring.onDelivered(buffer);
+
+    ring.detach();
+    ring.release(buffer);
+    assertEquals(1, shadowOf(camera).getAddedCallbackBuffers().size());
+    assertEquals(0, ring.getHeldCount());
+  }
+
+  @Test
+  public void newPreviewSizeReallocatesBuffers() {
+    final CallbackBufferRing ring = new CallbackBufferRing(2);
+    final Camera first = Camera.open();
+    ring.attach(first, WIDTH, HEIGHT);
+    final byte[] old = shadowOf(first).getAddedCallbackBuffers().get(0);
+
+    final Camera second = Camera.open();
+    ring.attach(second, WIDTH * 2, HEIGHT * 2);
+    final List<byte[]> queued = shadowOf(second).getAddedCallbackBuffers();
+    assertEquals(2, queued.size());
+    assertTrue(queued.get(0).length > old.length);
+    assertFalse(queued.contains(old));
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.RectF;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.tensorflow.lite.examples.detection.env.CameraIntrinsics;
+import org.tensorflow.lite.examples.detection.tflite.SizePriors;
+
+@RunWith(RobolectricTestRunner.class)
+public final class DistanceEstimatorTest {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  // A 90 degree view across the width puts the focal length at half the width.
+  private static final CameraIntrinsics INTRINSICS =
+      CameraIntrinsics.fromViewAngle(WIDTH, HEIGHT, 90);
+  // Makes a person 4 m away 136 px tall and 40 px wide.
+  private static final float FOCAL_LENGTH = 320;
+
+  private SizePriors priors;
+
+  @Before
+  public void setUp() throws IOException {
+    priors =
+        SizePriors.read(
+            new ByteArrayInputStream("person,1.70,0.50\n".getBytes(Charset.forName("UTF-8"))));
+    assertEquals(FOCAL_LENGTH, INTRINSICS.getFocalLength(), 1e-3f);
+  }
+
+  @Test
+  public void uprightFrameMeasuresBoxHeight() {
+    final DistanceEstimator estimator = estimator(0);
+    assertEquals(4, estimator.estimate("person", new RectF(300, 100, 340, 236)), 1e-4f);
+    // Doubling the box height halves the distance; the width plays no part.
+    assertEquals(2, estimator.estimate("person", new RectF(250, 100, 350, 372)), 1e-4f);
+  }
+
+  @Test
+  public void rotatedFrameMeasuresHeightAcrossFrameWidth() {
+    // The sensor is turned a quarter, so an upright person lies along the frame's x axis.
+    final RectF lying = new RectF(200, 220, 336, 260);
+    assertEquals(4, estimator(90).estimate("person", lying), 1e-4f);
+    assertEquals(4, estimator(270).estimate("person", lying), 1e-4f);
+    // Read upright, the same box would be a 40 px tall person.
+    assertEquals(FOCAL_LENGTH * 1.70f / 40, estimator(0).estimate("person", lying), 1e-3f);
+  }
+
+  @Test
+  public void boxCutAlongHeightFallsBackToWidth() {
+    // Cut off by the bottom edge, so only its 40 px width is known: 320 * 0.5 / 40 = 4 m.
+    final RectF cut = new RectF(300, 400, 340, HEIGHT);
+    assertEquals(4, estimator(0).estimate("person", cut), 1e-4f);
+
+    // Rotated, the right edge cuts the height axis; the box's 40 px frame height is the width.
+    final RectF rotatedCut = new RectF(560, 220, WIDTH, 260);
+    assertEquals(4, estimator(90).estimate("person", rotatedCut), 1e-4f);
+  }
+
+  @Test
+  public void boxCutAlongBothAxesOrUnknownClassHasNoEstimate() {
+    final DistanceEstimator estimator = estimator(0);
+    assertTrue(Float.isNaN(estimator.estimate("person", new RectF(0, 0, 40, 136))));
+    assertTrue(Float.isNaN(estimator.estimate("car", new RectF(300, 100, 340, 236))));
+  }
+
+  @Test
+  public void depthScaleIsMedianOfSampleRatios() {
+    final DistanceEstimator estimator = estimator(0);
+    final RectF box = new RectF(300, 100, 340, 236);
+    // 4 m over raw depths giving ratios 0.09 ... 0.13, fed out of order.
+    final float[] ratios = {0.12f, 0.09f, 0.13f, 0.10f};
+    for (final float ratio : ratios) {
+      assertEquals(4, estimator.addDepthSample("person", box, 4 / ratio), 1e-4f);
+    }
+    // Too few samples to calibrate yet.
+    assertEquals(DistanceEstimator.DEFAULT_DEPTH_SCALE, estimator.getDepthScale(), 0);
+
+    estimator.addDepthSample("person", box, 4 / 0.11f);
+    assertEquals(0.11f, estimator.getDepthScale(), 1e-5f);
+    estimator.addDepthSample("person", box, 4 / 0.135f);
+    assertEquals((0.11f + 0.12f) / 2, estimator.getDepthScale(), 1e-5f);
+  }
+
+  @Test
+  public void samplesFarFromScaleAreDropped() {
+    final DistanceEstimator estimator = estimator(0);
+    final RectF box = new RectF(300, 100, 340, 236);
+    for (int i = 0; i < 5; ++i) {
+      estimator.addDepthSample("person", box, 4 / 0.1f);
+    }
+    // More than twice the scale: dropped, however many there are.
+    for (int i = 0; i < 6; ++i) {
+      estimator.addDepthSample("person", box, 4 / 0.21f);
+    }
+    assertEquals(0.1f, estimator.getDepthScale(), 1e-5f);
+
+    // Just within a factor of two: kept, and now the majority.
+    for (int i = 0; i < 6; ++i) {
+      estimator.addDepthSample("person", box, 4 / 0.19f);
+    }
+    assertEquals(0.19f, estimator.getDepthScale(), 1e-5f);
+  }
+
+  @Test
+  public void samplesWithoutDistanceOrDepthAreIgnored() {
+    final DistanceEstimator estimator = estimator(0);
+    final RectF box = new RectF(300, 100, 340, 236);
+    for (int i = 0; i < 5; ++i) {
+      estimator.addDepthSample("person", box, 0);
+      estimator.addDepthSample("person", box, Float.NaN);
+      assertTrue(Float.isNaN(estimator.addDepthSample("car", box, 40)));
+    }
+    assertEquals(DistanceEstimator.DEFAULT_DEPTH_SCALE, estimator.getDepthScale(), 0);
+  }
+
+  private DistanceEstimator estimator(final int sensorOrientation) {
+    return new DistanceEstimator(priors, INTRINSICS, WIDTH, HEIGHT, sensorOrientation);
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import android.os.PowerManager;
+
+/** Conditions set by hand, for exercising the quality ladder without heating up a device. */
+final class FakeConditions implements QualityGovernor.Conditions {
+  private int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+  private int batteryPercent = 100;
+  private boolean charging;
+  private int updates;
+
+  void setThermalStatus(final int thermalStatus) {
+    this.thermalStatus = thermalStatus;
+  }
+
+  void setBatteryPercent(final int batteryPercent) {
+    this.batteryPercent = batteryPercent;
+  }
+
+  void setCharging(final boolean charging) {
+    this.charging = charging;
+  }
+
+  /** Returns how often the governor read the conditions. */
+  int getUpdates() {
+    return updates;
+  }
+
+  @Override
+  public void update() {
+    ++updates;
+  }
+
+  @Override
+  public int getThermalStatus() {
+    return thermalStatus;
+  }
+
+  @Override
+  public int getBatteryPercent() {
+    return batteryPercent;
+  }
+
+  @Override
+  public boolean isCharging() {
+    return charging;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static org.junit.Assert.assertEquals;
+
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class FrameRateControllerTest {
+  private static final int[][] RANGES = {{30, 30}, {15, 15}, {15, 30}};
+
+  private final List<String> applied = new ArrayList<String>();
+  private final Set<String> refused = new HashSet<String>();
+  private final FrameRateController controller = new FrameRateController();
+
+  private final FrameRateController.FpsRangeSink sink =
+      new FrameRateController.FpsRangeSink() {
+        @Override
+        public boolean setFpsRange(final int min, final int max) {
+          final String range = min + "-" + max;
+          applied.add(range);
+          return !refused.contains(range);
+        }
+      };
+
+  @Test
+  public void lowersToSlowestCoveringRangeAndRaisesAgain() {
+    controller.attach(RANGES, 1, sink);
+    // 5 of 60 frames in 2 s: 2.5 fps consumed, so 15 fps covers it with headroom.
+    runWindow(60, 5);
+    assertEquals(0, applied.size());
+    runWindow(60, 5);
+    assertEquals("15-15", applied.get(0));
+
+    runWindow(30, 30);
+    runWindow(30, 30);
+    assertEquals(2, applied.size());
+    assertEquals("15-30", applied.get(1));
+  }
+
+  @Test
+  public void skipsRangeTheCameraRejected() {
+    refused.add("15-15");
+    controller.attach(RANGES, 1, sink);
+    runWindow(60, 5);
+    runWindow(60, 5);
+    assertEquals("15-15", applied.get(0));
+
+    // Still at 30 fps and still overloaded: the next slowest range is tried instead.
+    runWindow(60, 5);
+    runWindow(60, 5);
+    assertEquals(2, applied.size());
+    assertEquals("15-30", applied.get(1));
+
+    // With every slower range rejected or taken, it can only go back up to 30 fps.
+    runWindow(60, 5);
+    runWindow(60, 5);
+    assertEquals(2, applied.size());
+    runWindow(30, 30);
+    runWindow(30, 30);
+    assertEquals("30-30", applied.get(2));
+  }
+
+  @Test
+  public void reattachingForgetsRejections() {
+    refused.add("15-15");
+    controller.attach(RANGES, 1, sink);
+    runWindow(60, 5);
+    runWindow(60, 5);
+    refused.clear();
+
+    controller.attach(RANGES, 1, sink);
+    runWindow(60, 5);
+    runWindow(60, 5);
+    assertEquals(2, applied.size());
+    assertEquals("15-15", applied.get(1));
+  }
+
+  /** Reports one 2 s window of frames, the last of which makes the controller evaluate it. */
+  private void runWindow(final int arrived, final int consumed) {
+    for (int i = 0; i < consumed; ++i) {
+      controller.onFrameConsumed();
+    }
+    for (int i = 1; i < arrived; ++i) {
+      controller.onFrameArrived();
+    }
+    SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + 2000);
+    controller.onFrameArrived();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public final class ObstacleScannerTest {
+  private static final int WIDTH = 30;
+  private static final int HEIGHT = 10;
+  private static final float MAX = ObstacleScanner.MAX_DEPTH_M;
+  // Near depths are read from a histogram, so they are only exact to a bin.
+  private static final float BIN = MAX / 64;
+
+  private final float[] depth = new float[WIDTH * HEIGHT];
+
+  @Test
+  public void findsMinimumAndNearPercentilePerSector() {
+    fillSector(0, 5);
+    // A single noisy pixel pulls the minimum but not the percentile.
+    fillSector(1, 4);
+    depth[3 * WIDTH + 15] = 0.5f;
+    // Spread evenly over [1, 3) m.
+    for (int y = 0; y < HEIGHT; ++y) {
+      for (int x = 20; x < 30; ++x) {
+        depth[y * WIDTH + x] = 1 + 2 * ((y * 10 + x - 20) / 100f);
+      }
+    }
+
+    final ObstacleScanner scanner = new ObstacleScanner(3, 0.1f, 0);
+    scanner.scan(depth, WIDTH, HEIGHT, 1);
+    assertEquals(5, scanner.getMinDepth(0), 0);
+    assertEquals(5, scanner.getNearDepth(0), BIN);
+    assertEquals(0.5f, scanner.getMinDepth(1), 0);
+    assertEquals(4, scanner.getNearDepth(1), BIN);
+    assertEquals(1, scanner.getMinDepth(2), 0);
+    assertEquals(1.2f, scanner.getNearDepth(2), BIN);
+    assertEquals(2, scanner.getNearestSector());
+  }
+
+  @Test
+  public void scaleTurnsRawDepthIntoMeters() {
+    Arrays.fill(depth, 40);
+    final ObstacleScanner scanner = new ObstacleScanner(2, 0.1f, 0);
+    scanner.scan(depth, WIDTH, HEIGHT, 0.1f);
+    assertEquals(4, scanner.getMinDepth(0), 1e-5f);
+    assertEquals(4, scanner.getNearDepth(1), BIN);
+  }
+
+  @Test
+  public void skipsNaN() {
+    Arrays.fill(depth, Float.NaN);
+    for (int y = 0; y < HEIGHT; y += 2) {
+      Arrays.fill(depth, y * WIDTH, y * WIDTH + 15, 3);
+    }
+
+    final ObstacleScanner scanner = new ObstacleScanner(2, 0.1f, 0);
+    scanner.scan(depth, WIDTH, HEIGHT, 1);
+    assertEquals(3, scanner.getMinDepth(0), 0);
+    assertEquals(3, scanner.getNearDepth(0), BIN);
+    // A sector without a single valid pixel has nothing in range.
+    assertEquals(MAX, scanner.getMinDepth(1), 0);
+    assertEquals(MAX, scanner.getNearDepth(1), 0);
+    assertEquals(0, scanner.getNearestSector());
+  }
+
+  @Test
+  public void skipsBottomRows() {
+    Arrays.fill(depth, 5);
+    // The floor right in front of the user, in the bottom fifth of the rows.
+    Arrays.fill(depth, 8 * WIDTH, HEIGHT * WIDTH, 0.3f);
+
+    final ObstacleScanner skipping = new ObstacleScanner(1, 0.1f, 0.2f);
+    skipping.scan(depth, WIDTH, HEIGHT, 1);
+    assertEquals(5, skipping.getMinDepth(0), 0);
+    assertEquals(5, skipping.getNearDepth(0), BIN);
+
+    final ObstacleScanner all = new ObstacleScanner(1, 0.1f, 0);
+    all.scan(depth, WIDTH, HEIGHT, 1);
+    assertEquals(0.3f, all.getMinDepth(0), 0);
+  }
+
+  @Test
+  public void clampsFarValuesIntoLastBin() {
+    Arrays.fill(depth, 0, depth.length / 2, 50);
+    Arrays.fill(depth, depth.length / 2, depth.length, Float.POSITIVE_INFINITY);
+
+    final ObstacleScanner scanner = new ObstacleScanner(1, 0.5f, 0);
+    scanner.scan(depth, WIDTH, HEIGHT, 1);
+    assertEquals(MAX, scanner.getMinDepth(0), 0);
+    final float near = scanner.getNearDepth(0);
+    assertTrue("near depth " + near, near >= MAX - BIN && near <= MAX);
+  }
+
+  @Test
+  public void farValuesCountTowardsPercentile() {
+    // Half the pixels at 2 m, half beyond the range: the 90th percentile is in the last bin.
+    Arrays.fill(depth, 0, depth.length / 2, 2);
+    Arrays.fill(depth, depth.length / 2, depth.length, 50);
+
+    final ObstacleScanner scanner = new ObstacleScanner(1, 0.9f, 0);
+    scanner.scan(depth, WIDTH, HEIGHT, 1);
+    assertEquals(2, scanner.getMinDepth(0), 0);
+    final float near = scanner.getNearDepth(0);
+    assertTrue("near depth " + near, near >= MAX - BIN && near <= MAX);
+  }
+
+  @Test
+  public void rescanReplacesPreviousResults() {
+    final ObstacleScanner scanner = new ObstacleScanner(3, 0.1f, 0);
+    Arrays.fill(depth, 1);
+    scanner.scan(depth, WIDTH, HEIGHT, 1);
+    Arrays.fill(depth, 6);
+    scanner.scan(depth, WIDTH, HEIGHT, 1);
+    for (int s = 0; s < 3; ++s) {
+      assertEquals(6, scanner.getMinDepth(s), 0);
+      assertEquals(6, scanner.getNearDepth(s), BIN);
+    }
+  }
+
+  private void fillSector(final int sector, final float value) {
+    for (int y = 0; y < HEIGHT; ++y) {
+      Arrays.fill(depth, y * WIDTH + sector * 10, y * WIDTH + sector * 10 + 10, value);
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public final class QualityGovernorTest {
+  private FakeConditions conditions;
+  private List<String> changes;
+  private QualityGovernor governor;
+
+  @Before
+  public void setUp() {
+    conditions = new FakeConditions();
+    changes = new ArrayList<String>();
+    governor =
+        new QualityGovernor(
+            conditions,
+            new QualityGovernor.Listener() {
+              @Override
+              public void onLevelChanged(final QualityGovernor.Level level) {
+                changes.add(level.getName());
+              }
+            });
+  }
+
+  @Test
+  public void startsAtFullQuality() {
+    governor.poll(0);
+    assertLevel("full");
+    assertEquals(0, changes.size());
+  }
+
+  @Test
+  public void thermalStatusPicksLevel() {
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_LIGHT);
+    governor.poll(0);
+    assertLevel("reduced");
+
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_MODERATE);
+    governor.poll(5000);
+    assertLevel("low");
+
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_CRITICAL);
+    governor.poll(10000);
+    assertLevel("minimal");
+  }
+
+  @Test
+  public void stepsDownAtOnceSkippingLevels() {
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_SEVERE);
+    governor.poll(0);
+    assertLevel("minimal");
+    assertEquals(1, changes.size());
+  }
+
+  @Test
+  public void lowBatteryStepsDownUnlessCharging() {
+    conditions.setBatteryPercent(30);
+    governor.poll(0);
+    assertLevel("reduced");
+
+    conditions.setBatteryPercent(15);
+    governor.poll(5000);
+    assertLevel("low");
+
+    conditions.setBatteryPercent(5);
+    governor.poll(10000);
+    assertLevel("minimal");
+
+    // Charging only allows stepping up, which waits like any other recovery.
+    conditions.setCharging(true);
+    governor.poll(15000);
+    assertLevel("minimal");
+  }
+
+  @Test
+  public void worseOfThermalAndBatteryWins() {
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_LIGHT);
+    conditions.setBatteryPercent(15);
+    governor.poll(0);
+    assertLevel("low");
+  }
+
+  @Test
+  public void readsConditionsAtMostEveryCheckInterval() {
+    governor.poll(0);
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_SEVERE);
+    governor.poll(4999);
+    assertLevel("full");
+    governor.poll(5000);
+    assertLevel("minimal");
+    assertEquals(2, conditions.getUpdates());
+  }
+
+  @Test
+  public void stepsUpOneLevelAtATimeAfterConditionsAllowItForAWhile() {
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_SEVERE);
+    governor.poll(0);
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_NONE);
+
+    // The wait starts with the first check that allows a higher level.
+    governor.poll(5000);
+    governor.poll(30000);
+    assertLevel("minimal");
+    governor.poll(35000);
+    assertLevel("low");
+
+    // Each further level waits again.
+    governor.poll(60000);
+    assertLevel("low");
+    governor.poll(65000);
+    assertLevel("reduced");
+    governor.poll(95000);
+    assertLevel("full");
+    assertEquals(4, changes.size());
+  }
+
+  @Test
+  public void relapseRestartsStepUpWait() {
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_SEVERE);
+    governor.poll(0);
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_NONE);
+    governor.poll(5000);
+
+    // Back at the threshold just before the wait would have ended.
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_SEVERE);
+    governor.poll(30000);
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_NONE);
+    governor.poll(35000);
+    governor.poll(60000);
+    assertLevel("minimal");
+    governor.poll(65000);
+    assertLevel("low");
+  }
+
+  @Test
+  public void hoveringBetweenTwoLevelsDoesNotFlipBack() {
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_LIGHT);
+    governor.poll(0);
+    for (long nowMs = 5000; nowMs < 120000; nowMs += 5000) {
+      conditions.setThermalStatus(
+          (nowMs / 5000) % 2 == 0
+              ? PowerManager.THERMAL_STATUS_LIGHT
+              : PowerManager.THERMAL_STATUS_NONE);
+      governor.poll(nowMs);
+    }
+    assertLevel("reduced");
+    assertEquals(1, changes.size());
+  }
+
+  @Test
+  public void worseningDuringStepUpWaitStepsDownAtOnce() {
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_MODERATE);
+    governor.poll(0);
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_NONE);
+    governor.poll(5000);
+    conditions.setThermalStatus(PowerManager.THERMAL_STATUS_SEVERE);
+    governor.poll(10000);
+    assertLevel("minimal");
+  }
+
+  @Test
+  public void deviceConditionsReadStickyBatteryBroadcast() {
+    final Context context = RuntimeEnvironment.application;
+    final QualityGovernor.DeviceConditions device = new QualityGovernor.DeviceConditions(context);
+    device.update();
+    assertEquals(100, device.getBatteryPercent());
+    assertFalse(device.isCharging());
+
+    final Intent battery = new Intent(Intent.ACTION_BATTERY_CHANGED);
+    battery.putExtra(BatteryManager.EXTRA_LEVEL, 40);
+    battery.putExtra(BatteryManager.EXTRA_SCALE, 200);
+    battery.putExtra(BatteryManager.EXTRA_PLUGGED, BatteryManager.BATTERY_PLUGGED_USB);
+    context.sendStickyBroadcast(battery);
+    assertEquals(100, device.getBatteryPercent());
+    device.update();
+    assertEquals(20, device.getBatteryPercent());
+    assertTrue(device.isCharging());
+  }
+
+  private void assertLevel(final String name) {
+    assertEquals(name, governor.getLevel().getName());
+  }
+}
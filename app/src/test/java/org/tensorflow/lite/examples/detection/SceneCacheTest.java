@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tflite.Detections;
+
+public final class SceneCacheTest {
+  private static final int MATCH_BITS = 4;
+  private static final long DETECTIONS_AGE_MS = 10000;
+  private static final long DEPTH_AGE_MS = 1000;
+  private static final long VIEW = 0x0123456789abcdefL;
+  // Differs from VIEW in three bits.
+  private static final long SAME_VIEW = VIEW ^ 0x7L;
+  private static final long OTHER_VIEW = ~VIEW;
+
+  private final SceneCache cache = new SceneCache(2, MATCH_BITS, DETECTIONS_AGE_MS, DEPTH_AGE_MS);
+  private final Detections detections = new Detections(null, 0);
+  private final SceneCache.DepthSummary summary =
+      new SceneCache.DepthSummary(detections, new float[0]);
+
+  @Test
+  public void matchesViewWithinFewBits() {
+    cache.putDetections(VIEW, 0, detections, 0);
+    assertSame(detections, cache.getDetections(SAME_VIEW, 0, 100));
+    assertNull(cache.getDetections(OTHER_VIEW, 0, 100));
+    assertNull(cache.getDetections(VIEW, 90, 100));
+  }
+
+  @Test
+  public void depthSummaryExpiresLongBeforeDetections() {
+    cache.putDetections(VIEW, 0, detections, 0);
+    cache.putDepthSummary(VIEW, 0, summary, 0);
+    assertSame(summary, cache.getDepthSummary(VIEW, 0, DEPTH_AGE_MS));
+
+    assertNull(cache.getDepthSummary(VIEW, 0, DEPTH_AGE_MS + 1));
+    assertSame(detections, cache.getDetections(VIEW, 0, DEPTH_AGE_MS + 1));
+    assertSame(detections, cache.getDetections(VIEW, 0, DETECTIONS_AGE_MS));
+    assertNull(cache.getDetections(VIEW, 0, DETECTIONS_AGE_MS + 1));
+  }
+
+  @Test
+  public void newerSummaryReplacesOlderForSameView() {
+    cache.putDepthSummary(VIEW, 0, summary, 0);
+    final SceneCache.DepthSummary newer = new SceneCache.DepthSummary(detections, new float[0]);
+    cache.putDepthSummary(SAME_VIEW, 0, newer, 800);
+    assertSame(newer, cache.getDepthSummary(VIEW, 0, 1500));
+  }
+
+  @Test
+  public void leastRecentlyUsedViewIsReplaced() {
+    cache.putDetections(VIEW, 0, detections, 0);
+    cache.putDetections(OTHER_VIEW, 0, detections, 10);
+    cache.getDetections(VIEW, 0, 20);
+    cache.putDetections(0x5555555555555555L, 0, detections, 30);
+    assertSame(detections, cache.getDetections(VIEW, 0, 40));
+    assertNull(cache.getDetections(OTHER_VIEW, 0, 40));
+  }
+
+  @Test
+  public void clearForgetsEverything() {
+    cache.putDetections(VIEW, 0, detections, 0);
+    cache.putDepthSummary(VIEW, 0, summary, 0);
+    cache.clear();
+    assertNull(cache.getDetections(VIEW, 0, 0));
+    assertNull(cache.getDepthSummary(VIEW, 0, 0));
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class StartupOrchestratorTest {
+  private final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+  private final List<RuntimeException> errors =
+      Collections.synchronizedList(new ArrayList<RuntimeException>());
+  private final CountDownLatch reported = new CountDownLatch(1);
+  private final StartupOrchestrator startup =
+      new StartupOrchestrator(
+          new StartupOrchestrator.FailureListener() {
+            @Override
+            public void onTaskFailed(final String name, final RuntimeException e) {
+              failed.add(name);
+              errors.add(e);
+              reported.countDown();
+            }
+          });
+
+  @After
+  public void tearDown() {
+    startup.shutdown();
+  }
+
+  @Test
+  public void reportsTaskThatThrows() throws InterruptedException {
+    final RuntimeException error = new IllegalStateException("model is corrupt");
+    startup.submit(
+        "detector",
+        new Runnable() {
+          @Override
+          public void run() {
+            throw error;
+          }
+        });
+    assertTrue(reported.await(10, TimeUnit.SECONDS));
+
+    assertEquals(Collections.singletonList("detector"), failed);
+    assertSame(error, errors.get(0));
+  }
+
+  @Test
+  public void tasksThatSucceedAreNotReported() throws InterruptedException {
+    final CountDownLatch ran = new CountDownLatch(2);
+    final Runnable task =
+        new Runnable() {
+          @Override
+          public void run() {
+            ran.countDown();
+          }
+        };
+    startup.submit("labels", task);
+    startup.submit("depth model", task);
+    assertTrue(ran.await(10, TimeUnit.SECONDS));
+    assertTrue(failed.isEmpty());
+  }
+
+  @Test
+  public void failureDoesNotStopOtherTasks() throws InterruptedException {
+    final CountDownLatch ran = new CountDownLatch(1);
+    startup.submit(
+        "detector",
+        new Runnable() {
+          @Override
+          public void run() {
+            throw new IllegalArgumentException();
+          }
+        });
+    startup.submit(
+        "labels",
+        new Runnable() {
+          @Override
+          public void run() {
+            ran.countDown();
+          }
+        });
+    assertTrue(ran.await(10, TimeUnit.SECONDS));
+    assertTrue(reported.await(10, TimeUnit.SECONDS));
+    assertEquals(Collections.singletonList("detector"), failed);
+  }
+
+  @Test
+  public void tasksRunInParallel() throws InterruptedException {
+    // Each task waits for the other, so they only finish if they run at the same time.
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch finished = new CountDownLatch(2);
+    final Runnable task =
+        new Runnable() {
+          @Override
+          public void run() {
+            started.countDown();
+            try {
+              if (started.await(5, TimeUnit.SECONDS)) {
+                finished.countDown();
+              }
+            } catch (final InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        };
+    startup.submit("detector", task);
+    startup.submit("depth model", task);
+    assertTrue(finished.await(10, TimeUnit.SECONDS));
+  }
+}
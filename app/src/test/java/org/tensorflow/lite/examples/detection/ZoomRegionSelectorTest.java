@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.RectF;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class ZoomRegionSelectorTest {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  private final ZoomRegionSelector selector = new ZoomRegionSelector(WIDTH, HEIGHT, 0.5f, 0.8f);
+  private final RectF region = new RectF();
+
+  @Test
+  public void smallBoundsGetSmallestRegionCenteredOnThem() {
+    assertTrue(selector.select(new RectF(300, 220, 340, 260), region));
+    assertEquals(new RectF(160, 120, 480, 360), region);
+  }
+
+  @Test
+  public void regionCoversBoundsWithMarginAtFrameAspectRatio() {
+    // 240 px wide with a quarter of that on each side needs 360 px, 0.5625 of the frame width.
+    final RectF bounds = new RectF(200, 150, 440, 250);
+    assertTrue(selector.select(bounds, region));
+    assertEquals(new RectF(140, 65, 500, 335), region);
+    assertEquals((float) WIDTH / HEIGHT, region.width() / region.height(), 1e-6f);
+    assertTrue(region.contains(bounds));
+  }
+
+  @Test
+  public void regionIsShiftedBackInsideFrame() {
+    assertTrue(selector.select(new RectF(10, 10, 50, 50), region));
+    assertEquals(new RectF(0, 0, 320, 240), region);
+
+    assertTrue(selector.select(new RectF(600, 440, 630, 470), region));
+    assertEquals(new RectF(320, 240, 640, 480), region);
+  }
+
+  @Test
+  public void noRegionWhenNearlyWholeFrameIsNeeded() {
+    region.set(1, 2, 3, 4);
+    // 400 px wide needs 600 px with the margins, beyond 0.8 of the frame.
+    assertFalse(selector.select(new RectF(100, 100, 500, 300), region));
+    assertEquals(new RectF(1, 2, 3, 4), region);
+
+    // Tall bounds are limited by the frame height the same way.
+    assertFalse(selector.select(new RectF(300, 40, 340, 340), region));
+  }
+
+  @Test
+  public void regionsAreInWholePixels() {
+    assertTrue(selector.select(new RectF(201.3f, 150.7f, 440.2f, 250.1f), region));
+    assertEquals(Math.round(region.left), region.left, 0);
+    assertEquals(Math.round(region.top), region.top, 0);
+    assertEquals(Math.round(region.right), region.right, 0);
+    assertEquals(Math.round(region.bottom), region.bottom, 0);
+  }
+}
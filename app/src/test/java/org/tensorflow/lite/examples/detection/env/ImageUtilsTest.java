@@ -0,0 +1,70 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Checks the table-driven YUV to ARGB conversion against the per-pixel reference formula. */
+@RunWith(RobolectricTestRunner.class)
+public final class ImageUtilsTest {
+  private final Random random = new Random(35);
+
+  @Test
+  public void convertPixelMatchesReferenceForEveryInput() {
+    for (int y = 0; y < 256; ++y) {
+      for (int u = 0; u < 256; ++u) {
+        for (int v = 0; v < 256; ++v) {
+          final int expected = ImageUtils.YUV2RGB(y, u, v);
+          final int actual = ImageUtils.convertPixel(y, u, v);
+          if (actual != expected) {
+            throw new AssertionError(
+                String.format(
+                    "y=%d u=%d v=%d: expected %08x, was %08x", y, u, v, expected, actual));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void semiPlanarConversionMatchesReferenceFormula() {
+    // Odd sizes leave a last row and column without a second pixel in their 2x2 block.
+    for (final int[] size : new int[][] {{1, 1}, {5, 2}, {7, 9}, {30, 22}}) {
+      final int width = size[0];
+      final int height = size[1];
+      final byte[] nv21 = new byte[ImageUtils.getYUVByteSize(width, height)];
+      random.nextBytes(nv21);
+      final int[] argb = new int[width * height];
+      ImageUtils.convertYUV420SPToARGB8888(nv21, width, height, argb);
+
+      // Interleaved V and U samples follow the luma, each chroma row width bytes after the last.
+      for (int y = 0; y < height; ++y) {
+        for (int x = 0; x < width; ++x) {
+          final int uv = width * height + (y >> 1) * width + (x >> 1) * 2;
+          assertEquals(
+              "pixel " + x + "," + y,
+              ImageUtils.YUV2RGB(0xff & nv21[y * width + x], 0xff & nv21[uv + 1], 0xff & nv21[uv]),
+              argb[y * width + x]);
+        }
+      }
+    }
+  }
+}
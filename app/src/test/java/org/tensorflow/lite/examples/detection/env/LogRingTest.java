@@ -0,0 +1,99 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLog;
+
+@RunWith(RobolectricTestRunner.class)
+public final class LogRingTest {
+  private static final String TAG = "LogRingTest";
+  private static final long TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
+
+  private final Logger logger = new Logger(TAG, "");
+
+  @Test
+  public void startsDrainThreadOnFirstRecord() throws InterruptedException {
+    logger.i("start");
+    awaitMessage("start");
+    assertTrue(findDrainThread().isDaemon());
+  }
+
+  @Test
+  public void drainThreadParksWithoutTimeoutWhenIdle() throws InterruptedException {
+    logger.i("first %d", 1);
+    awaitMessage("first 1");
+
+    final Thread drain = findDrainThread();
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (drain.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    // Parked with a timeout it would show as TIMED_WAITING.
+    assertEquals(Thread.State.WAITING, drain.getState());
+
+    logger.i("second %d", 2);
+    awaitMessage("second 2");
+  }
+
+  @Test
+  public void everyRecordIsDrainedWhetherOrNotTheThreadParked() throws InterruptedException {
+    for (int i = 0; i < 200; ++i) {
+      logger.w("burst %d", i);
+      if (i % 3 == 0) {
+        // Gives the drain thread time to go idle between some of the records.
+        Thread.sleep(1);
+      }
+    }
+    awaitMessage("burst 199");
+    int count = 0;
+    for (final ShadowLog.LogItem item : ShadowLog.getLogsForTag(TAG)) {
+      if (item.msg.startsWith("burst ")) {
+        assertEquals("burst " + count, item.msg);
+        ++count;
+      }
+    }
+    assertEquals(200, count);
+  }
+
+  private static void awaitMessage(final String message) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (System.currentTimeMillis() < deadline) {
+      for (final ShadowLog.LogItem item : ShadowLog.getLogsForTag(TAG)) {
+        if (message.equals(item.msg)) {
+          return;
+        }
+      }
+      Thread.sleep(1);
+    }
+    throw new AssertionError("Not logged within " + TIMEOUT_MS + "ms: " + message);
+  }
+
+  private static Thread findDrainThread() {
+    for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+      if ("LoggerDrain".equals(thread.getName())) {
+        return thread;
+      }
+    }
+    throw new AssertionError("No drain thread");
+  }
+}
@@ -0,0 +1,150 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class LumaPyramidPoolTest {
+  private static final int WIDTH = 123;
+  // Not a multiple of the band alignment, so the last band is shorter than the others.
+  private static final int HEIGHT = 97;
+  private static final int LEVELS = 4;
+  private static final int NUM_BANDS = 4;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(NUM_BANDS - 1);
+  private final Random random = new Random(23);
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void multiBandBuildEqualsSingleBand() {
+    final LumaPyramidPool banded =
+        new LumaPyramidPool(WIDTH, HEIGHT, LEVELS, NUM_BANDS, executor);
+    final LumaPyramidPool single = new LumaPyramidPool(WIDTH, HEIGHT, LEVELS, 1, null);
+    final int rowStride = WIDTH + 5;
+    for (int i = 0; i < 3; ++i) {
+      final byte[] luma = randomBytes(rowStride * HEIGHT);
+      final LumaPyramidPool.Frame expected = single.build(luma, rowStride, i);
+      final LumaPyramidPool.Frame actual = banded.build(luma, rowStride, i);
+      LumaPyramidTest.assertSameLevels(expected.getPyramid(), actual.getPyramid());
+      assertEquals(i, actual.getTimestamp());
+      expected.release();
+      actual.release();
+    }
+  }
+
+  @Test
+  public void releasedFrameIsReused() {
+    final LumaPyramidPool pool = new LumaPyramidPool(WIDTH, HEIGHT, LEVELS, 1, null);
+    final LumaPyramidPool.Frame first = pool.build(randomBytes(WIDTH * HEIGHT), WIDTH, 1);
+    first.release();
+    final LumaPyramidPool.Frame second = pool.build(randomBytes(WIDTH * HEIGHT), WIDTH, 2);
+    assertSame(first, second);
+    assertEquals(2, second.getTimestamp());
+  }
+
+  @Test
+  public void poolGrowsWhileFramesAreHeldAndSettles() {
+    final LumaPyramidPool pool = new LumaPyramidPool(WIDTH, HEIGHT, LEVELS, 1, null);
+    final byte[] luma = randomBytes(WIDTH * HEIGHT);
+    final LumaPyramidPool.Frame first = pool.build(luma, WIDTH, 1);
+    // A consumer keeps the first frame beyond the owner's release.
+    first.retain();
+    first.release();
+    final LumaPyramidPool.Frame second = pool.build(luma, WIDTH, 2);
+    assertNotSame(first, second);
+
+    // Once both are free again, later builds cycle through them without growing further.
+    first.release();
+    second.release();
+    final LumaPyramidPool.Frame third = pool.build(luma, WIDTH, 3);
+    final LumaPyramidPool.Frame fourth = pool.build(luma, WIDTH, 4);
+    assertSame(first, third);
+    assertSame(second, fourth);
+  }
+
+  @Test
+  public void retainAfterLastReleaseThrows() {
+    final LumaPyramidPool pool = new LumaPyramidPool(WIDTH, HEIGHT, LEVELS, 1, null);
+    final LumaPyramidPool.Frame frame = pool.build(randomBytes(WIDTH * HEIGHT), WIDTH, 1);
+    frame.release();
+    try {
+      frame.retain();
+      fail("Retained a released frame");
+    } catch (final IllegalStateException expected) {
+      // The pool may already have handed it out again.
+    }
+  }
+
+  @Test
+  public void releasingTooOftenThrows() {
+    final LumaPyramidPool pool = new LumaPyramidPool(WIDTH, HEIGHT, LEVELS, 1, null);
+    final LumaPyramidPool.Frame frame = pool.build(randomBytes(WIDTH * HEIGHT), WIDTH, 1);
+    frame.retain();
+    frame.release();
+    frame.release();
+    try {
+      frame.release();
+      fail("Released a frame more often than it was retained");
+    } catch (final IllegalStateException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void failedBandIsRethrownAndPoolStaysUsable() {
+    final LumaPyramidPool pool = new LumaPyramidPool(WIDTH, HEIGHT, LEVELS, NUM_BANDS, executor);
+    // Too short for the later bands.
+    final byte[] truncated = randomBytes(WIDTH * HEIGHT / 2);
+    try {
+      pool.build(truncated, WIDTH, 1);
+      fail("Built a pyramid from a truncated plane");
+    } catch (final ArrayIndexOutOfBoundsException expected) {
+      // Thrown by a band on an executor thread.
+    }
+
+    final byte[] luma = randomBytes(WIDTH * HEIGHT);
+    final LumaPyramid expected = new LumaPyramid(WIDTH, HEIGHT, LEVELS);
+    expected.build(luma, WIDTH);
+    LumaPyramidTest.assertSameLevels(expected, pool.build(luma, WIDTH, 2).getPyramid());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void severalBandsNeedAnExecutor() {
+    new LumaPyramidPool(WIDTH, HEIGHT, LEVELS, 2, null);
+  }
+
+  private byte[] randomBytes(final int size) {
+    final byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,119 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public final class LumaPyramidTest {
+  private final Random random = new Random(17);
+
+  @Test
+  public void levelsAverageTwoByTwoBlocks() {
+    final int width = 7;
+    final int height = 5;
+    final byte[] luma = randomBytes(width * height);
+    final LumaPyramid pyramid = new LumaPyramid(width, height, 3);
+    pyramid.build(luma, width);
+
+    assertEquals(2, pyramid.getNumLevels());
+    assertArrayEquals(luma, pyramid.getLevel(0));
+    // The odd last row and column are dropped.
+    assertEquals(3, pyramid.getWidth(1));
+    assertEquals(2, pyramid.getHeight(1));
+    for (int y = 0; y < 2; ++y) {
+      for (int x = 0; x < 3; ++x) {
+        final int sum =
+            (luma[2 * y * width + 2 * x] & 0xff)
+                + (luma[2 * y * width + 2 * x + 1] & 0xff)
+                + (luma[(2 * y + 1) * width + 2 * x] & 0xff)
+                + (luma[(2 * y + 1) * width + 2 * x + 1] & 0xff);
+        assertEquals((sum + 2) / 4, pyramid.getLevel(1)[y * 3 + x] & 0xff);
+      }
+    }
+  }
+
+  @Test
+  public void stopsBeforeLevelsDropBelowTwoPixels() {
+    final LumaPyramid pyramid = new LumaPyramid(64, 6, 5);
+    assertEquals(2, pyramid.getNumLevels());
+    assertEquals(32, pyramid.getWidth(1));
+    assertEquals(3, pyramid.getHeight(1));
+  }
+
+  @Test
+  public void paddedRowStrideIsHonoured() {
+    final int width = 30;
+    final int height = 20;
+    final int rowStride = width + 6;
+    final byte[] tight = randomBytes(width * height);
+    // The padding holds garbage that must not leak into any level.
+    final byte[] padded = randomBytes(rowStride * height);
+    for (int y = 0; y < height; ++y) {
+      System.arraycopy(tight, y * width, padded, y * rowStride, width);
+    }
+
+    final LumaPyramid expected = new LumaPyramid(width, height, 3);
+    expected.build(tight, width);
+    final LumaPyramid actual = new LumaPyramid(width, height, 3);
+    actual.build(padded, rowStride);
+    assertSameLevels(expected, actual);
+  }
+
+  @Test
+  public void rowRangesBuildSameAsWholePlane() {
+    final int width = 40;
+    final int height = 30;
+    final byte[] luma = randomBytes(width * height);
+    final LumaPyramid expected = new LumaPyramid(width, height, 3);
+    expected.build(luma, width);
+
+    // Ranges aligned to 2^(levels - 1) rows, the last one ending at the odd full height.
+    final LumaPyramid actual = new LumaPyramid(width, height, 3);
+    actual.buildRows(luma, width, 16, height);
+    actual.buildRows(luma, width, 0, 8);
+    actual.buildRows(luma, width, 8, 16);
+    assertSameLevels(expected, actual);
+  }
+
+  @Test
+  public void rebuildReplacesEveryLevel() {
+    final LumaPyramid pyramid = new LumaPyramid(16, 16, 4);
+    pyramid.build(randomBytes(256), 16);
+    final byte[] luma = randomBytes(256);
+    pyramid.build(luma, 16);
+
+    final LumaPyramid fresh = new LumaPyramid(16, 16, 4);
+    fresh.build(luma, 16);
+    assertSameLevels(fresh, pyramid);
+  }
+
+  static void assertSameLevels(final LumaPyramid expected, final LumaPyramid actual) {
+    assertEquals(expected.getNumLevels(), actual.getNumLevels());
+    for (int i = 0; i < expected.getNumLevels(); ++i) {
+      assertArrayEquals("level " + i, expected.getLevel(i), actual.getLevel(i));
+    }
+  }
+
+  private byte[] randomBytes(final int size) {
+    final byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
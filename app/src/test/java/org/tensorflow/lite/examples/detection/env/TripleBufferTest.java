@@ -0,0 +1,172 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public final class TripleBufferTest {
+  private static final int PAYLOAD_SIZE = 64;
+  private static final long PUBLISHES = 200_000;
+
+  /** A reusable table whose every entry is derived from the version it was filled for. */
+  private static final class Table {
+    final long[] payload = new long[PAYLOAD_SIZE];
+
+    void fill(final long version) {
+      for (int i = 0; i < PAYLOAD_SIZE; ++i) {
+        payload[i] = version * PAYLOAD_SIZE + i;
+      }
+    }
+
+    boolean isConsistent(final long version) {
+      for (int i = 0; i < PAYLOAD_SIZE; ++i) {
+        if (payload[i] != version * PAYLOAD_SIZE + i) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSharedValues() {
+    final Table table = new Table();
+    new TripleBuffer<Table>(table, new Table(), table);
+  }
+
+  @Test
+  public void nothingToTakeBeforePublish() {
+    final TripleBuffer<Table> buffer = newBuffer();
+    assertFalse(buffer.update());
+    assertEquals(Long.MIN_VALUE, buffer.getFrontVersion());
+  }
+
+  @Test
+  public void consumerTakesLatestPublishOnce() {
+    final TripleBuffer<Table> buffer = newBuffer();
+    for (long version = 1; version <= 3; ++version) {
+      buffer.getBack().fill(version);
+      buffer.publish(version);
+    }
+    assertTrue(buffer.update());
+    assertEquals(3, buffer.getFrontVersion());
+    assertTrue(buffer.getFront().isConsistent(3));
+    assertFalse(buffer.update());
+    assertEquals(3, buffer.getFrontVersion());
+  }
+
+  @Test
+  public void producerNeverFillsTheFrontValue() {
+    final TripleBuffer<Table> buffer = newBuffer();
+    buffer.getBack().fill(1);
+    buffer.publish(1);
+    assertTrue(buffer.update());
+    final Table front = buffer.getFront();
+    for (long version = 2; version <= 10; ++version) {
+      assertNotSame(front, buffer.getBack());
+      buffer.getBack().fill(version);
+      buffer.publish(version);
+    }
+    assertTrue(front.isConsistent(1));
+    assertTrue(buffer.update());
+    assertNotSame(front, buffer.getFront());
+    assertTrue(buffer.getFront().isConsistent(10));
+  }
+
+  @Test
+  public void valuesAreReused() {
+    final Table[] tables = {new Table(), new Table(), new Table()};
+    final TripleBuffer<Table> buffer = new TripleBuffer<Table>(tables[0], tables[1], tables[2]);
+    for (long version = 0; version < 10; ++version) {
+      final Table back = buffer.getBack();
+      assertTrue(back == tables[0] || back == tables[1] || back == tables[2]);
+      buffer.publish(version);
+      buffer.update();
+      assertSame(back, buffer.getFront());
+    }
+  }
+
+  @Test
+  public void concurrentConsumerSeesMonotonicUntornValues() throws Exception {
+    final TripleBuffer<Table> buffer = newBuffer();
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    final CountDownLatch start = new CountDownLatch(1);
+    final long[] takes = new long[1];
+    final Thread consumer =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                awaitQuietly(start);
+                long lastVersion = Long.MIN_VALUE;
+                while (!done.get() && failure.get() == null) {
+                  if (!buffer.update()) {
+                    continue;
+                  }
+                  final long version = buffer.getFrontVersion();
+                  if (version <= lastVersion) {
+                    failure.compareAndSet(
+                        null, "version went from " + lastVersion + " to " + version);
+                  } else if (!buffer.getFront().isConsistent(version)) {
+                    failure.compareAndSet(null, "torn value at version " + version);
+                  }
+                  lastVersion = version;
+                  ++takes[0];
+                }
+              }
+            });
+    consumer.start();
+
+    start.countDown();
+    for (long version = 0; version < PUBLISHES; ++version) {
+      buffer.getBack().fill(version);
+      buffer.publish(version);
+    }
+    done.set(true);
+    consumer.join(TimeUnit.SECONDS.toMillis(10));
+
+    assertNull(failure.get(), failure.get());
+    assertTrue("consumer never took a value", takes[0] > 0);
+    if (buffer.update()) {
+      assertTrue(buffer.getFront().isConsistent(buffer.getFrontVersion()));
+    }
+    assertEquals(PUBLISHES - 1, buffer.getFrontVersion());
+  }
+
+  private static TripleBuffer<Table> newBuffer() {
+    return new TripleBuffer<Table>(new Table(), new Table(), new Table());
+  }
+
+  private static void awaitQuietly(final CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public final class VersionedReferenceTest {
+  private static final int PAYLOAD_SIZE = 64;
+  private static final long PUBLISHES = 200_000;
+  private static final int READERS = 4;
+
+  /** A frame result whose every field is derived from its version, so tearing is detectable. */
+  private static final class Frame {
+    final long version;
+    final long[] payload = new long[PAYLOAD_SIZE];
+    final long checksum;
+
+    Frame(final long version) {
+      this.version = version;
+      long sum = 0;
+      for (int i = 0; i < PAYLOAD_SIZE; ++i) {
+        payload[i] = version * PAYLOAD_SIZE + i;
+        sum += payload[i];
+      }
+      checksum = sum;
+    }
+
+    boolean isConsistent(final long expectedVersion) {
+      if (version != expectedVersion) {
+        return false;
+      }
+      long sum = 0;
+      for (int i = 0; i < PAYLOAD_SIZE; ++i) {
+        if (payload[i] != version * PAYLOAD_SIZE + i) {
+          return false;
+        }
+        sum += payload[i];
+      }
+      return sum == checksum;
+    }
+  }
+
+  @Test
+  public void startsWithInitialValueAtLowestVersion() {
+    final VersionedReference<String> reference = new VersionedReference<String>(null);
+    assertNull(reference.get());
+    assertEquals(Long.MIN_VALUE, reference.getVersion());
+  }
+
+  @Test
+  public void rejectsSameOrOlderVersion() {
+    final VersionedReference<String> reference = new VersionedReference<String>("initial");
+    assertTrue(reference.publish(5, "five"));
+    assertFalse(reference.publish(5, "five again"));
+    assertFalse(reference.publish(3, "three"));
+    assertEquals("five", reference.get());
+    assertEquals(5, reference.getVersion());
+  }
+
+  @Test
+  public void snapshotPairsValueWithItsVersion() {
+    final VersionedReference<String> reference = new VersionedReference<String>("initial");
+    reference.publish(1, "one");
+    final VersionedReference.Versioned<String> snapshot = reference.snapshot();
+    reference.publish(2, "two");
+    assertEquals(1, snapshot.getVersion());
+    assertEquals("one", snapshot.getValue());
+  }
+
+  @Test
+  public void concurrentReadersSeeMonotonicConsistentSnapshots() throws Exception {
+    final VersionedReference<Frame> reference = new VersionedReference<Frame>(new Frame(-1));
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> readers = new ArrayList<Thread>();
+    final long[] reads = new long[READERS];
+    for (int r = 0; r < READERS; ++r) {
+      final int reader = r;
+      final Thread thread =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  awaitQuietly(start);
+                  long lastVersion = Long.MIN_VALUE;
+                  while (!done.get() && failure.get() == null) {
+                    final VersionedReference.Versioned<Frame> snapshot = reference.snapshot();
+                    final long version = snapshot.getVersion();
+                    if (version < lastVersion) {
+                      failure.compareAndSet(null, "version went back from " + lastVersion);
+                    } else if (version != Long.MIN_VALUE
+                        && !snapshot.getValue().isConsistent(version)) {
+                      failure.compareAndSet(null, "torn snapshot at version " + version);
+                    }
+                    lastVersion = version;
+                    ++reads[reader];
+                  }
+                }
+              });
+      readers.add(thread);
+      thread.start();
+    }
+
+    start.countDown();
+    for (long version = 0; version < PUBLISHES; ++version) {
+      assertTrue(reference.publish(version, new Frame(version)));
+    }
+    done.set(true);
+    for (final Thread thread : readers) {
+      thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    assertNull(failure.get(), failure.get());
+    assertEquals(PUBLISHES - 1, reference.getVersion());
+    for (int r = 0; r < READERS; ++r) {
+      assertTrue("reader " + r + " never ran", reads[r] > 0);
+    }
+  }
+
+  @Test
+  public void concurrentProducersNeverRollBackVersion() throws Exception {
+    final VersionedReference<Frame> reference = new VersionedReference<Frame>(new Frame(-1));
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> producers = new ArrayList<Thread>();
+    for (int p = 0; p < 2; ++p) {
+      final int producer = p;
+      final Thread thread =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  awaitQuietly(start);
+                  // Interleaved versions, so the producers keep overtaking each other.
+                  for (long version = producer; version < PUBLISHES; version += 2) {
+                    reference.publish(version, new Frame(version));
+                  }
+                }
+              });
+      producers.add(thread);
+      thread.start();
+    }
+    start.countDown();
+    for (final Thread thread : producers) {
+      thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    final VersionedReference.Versioned<Frame> last = reference.snapshot();
+    assertEquals(PUBLISHES - 1, last.getVersion());
+    assertTrue(last.getValue().isConsistent(PUBLISHES - 1));
+  }
+
+  @Test
+  public void readerHoldingSnapshotDoesNotBlockProducer() throws Exception {
+    final VersionedReference<Frame> reference = new VersionedReference<Frame>(new Frame(0));
+    reference.publish(0, new Frame(0));
+    final CountDownLatch held = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicReference<VersionedReference.Versioned<Frame>> heldSnapshot =
+        new AtomicReference<VersionedReference.Versioned<Frame>>();
+    final Thread reader =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                heldSnapshot.set(reference.snapshot());
+                held.countDown();
+                // Parks mid-read for as long as the producer runs.
+                awaitQuietly(release);
+              }
+            });
+    reader.start();
+    assertTrue(held.await(10, TimeUnit.SECONDS));
+
+    final Thread producer =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                for (long version = 1; version <= 1000; ++version) {
+                  reference.publish(version, new Frame(version));
+                }
+              }
+            });
+    producer.start();
+    producer.join(TimeUnit.SECONDS.toMillis(10));
+    assertFalse("producer blocked by a reader", producer.isAlive());
+    assertEquals(1000, reference.getVersion());
+
+    release.countDown();
+    reader.join(TimeUnit.SECONDS.toMillis(10));
+    final VersionedReference.Versioned<Frame> snapshot = heldSnapshot.get();
+    assertEquals(0, snapshot.getVersion());
+    assertTrue(snapshot.getValue().isConsistent(0));
+  }
+
+  private static void awaitQuietly(final CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
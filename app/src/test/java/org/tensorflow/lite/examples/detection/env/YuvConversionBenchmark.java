@@ -0,0 +1,173 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Times the table-driven YUV to ARGB converters against the per-pixel converters they replaced,
+ * on 640x480 camera frames. Skipped unless run with -Pbenchmark, e.g.
+ *
+ * <pre>./gradlew testDebugUnitTest -Pbenchmark --tests '*YuvConversionBenchmark'</pre>
+ *
+ * JVM timings only show the relative speedup; frame times on a device need a device run.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class YuvConversionBenchmark {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final int WARM_UP_RUNS = 200;
+  private static final int TIMED_RUNS = 200;
+
+  private final Random random = new Random(35);
+  private final int[] out = new int[WIDTH * HEIGHT];
+  private byte[] y;
+  private byte[] u;
+  private byte[] v;
+  private byte[] nv21;
+
+  @Before
+  public void setUp() {
+    assumeTrue("Run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+    // Camera2 delivers interleaved chroma: U and V planes with a pixel stride of 2.
+    y = randomBytes(WIDTH * HEIGHT);
+    u = randomBytes(WIDTH * HEIGHT / 2);
+    v = randomBytes(WIDTH * HEIGHT / 2);
+    nv21 = randomBytes(ImageUtils.getYUVByteSize(WIDTH, HEIGHT));
+  }
+
+  @Test
+  public void planarConversion() {
+    final double reference =
+        time(
+            new Runnable() {
+              @Override
+              public void run() {
+                referenceYUV420ToARGB8888(y, u, v, WIDTH, HEIGHT, WIDTH, WIDTH, 2, out);
+              }
+            });
+    final double tables =
+        time(
+            new Runnable() {
+              @Override
+              public void run() {
+                ImageUtils.convertYUV420ToARGB8888(y, u, v, WIDTH, HEIGHT, WIDTH, WIDTH, 2, out);
+              }
+            });
+    report("YUV_420_888", reference, tables);
+  }
+
+  @Test
+  public void semiPlanarConversion() {
+    final double reference =
+        time(
+            new Runnable() {
+              @Override
+              public void run() {
+                referenceYUV420SPToARGB8888(nv21, WIDTH, HEIGHT, out);
+              }
+            });
+    final double tables =
+        time(
+            new Runnable() {
+              @Override
+              public void run() {
+                ImageUtils.convertYUV420SPToARGB8888(nv21, WIDTH, HEIGHT, out);
+              }
+            });
+    report("NV21", reference, tables);
+  }
+
+  /** Returns the median time of one run in ms, after warming the code up. */
+  private static double time(final Runnable conversion) {
+    for (int i = 0; i < WARM_UP_RUNS; ++i) {
+      conversion.run();
+    }
+    final long[] times = new long[TIMED_RUNS];
+    for (int i = 0; i < TIMED_RUNS; ++i) {
+      final long start = System.nanoTime();
+      conversion.run();
+      times[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(times);
+    return times[TIMED_RUNS / 2] / 1e6;
+  }
+
+  private static void report(final String format, final double reference, final double tables) {
+    System.out.println(
+        String.format(
+            "%s %dx%d: per-pixel %.2fms, tables %.2fms, %.1fx faster",
+            format, WIDTH, HEIGHT, reference, tables, reference / tables));
+    assertTrue(format + " conversion got slower", tables < reference);
+  }
+
+  /** The per-pixel planar converter the table-driven one replaced. */
+  private static void referenceYUV420ToARGB8888(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    int yp = 0;
+    for (int j = 0; j < height; j++) {
+      final int pY = yRowStride * j;
+      final int pUV = uvRowStride * (j >> 1);
+      for (int i = 0; i < width; i++) {
+        final int uvOffset = pUV + (i >> 1) * uvPixelStride;
+        out[yp++] =
+            ImageUtils.YUV2RGB(
+                0xff & yData[pY + i], 0xff & uData[uvOffset], 0xff & vData[uvOffset]);
+      }
+    }
+  }
+
+  /** The per-pixel NV21 converter the table-driven one replaced. */
+  private static void referenceYUV420SPToARGB8888(
+      final byte[] input, final int width, final int height, final int[] output) {
+    final int frameSize = width * height;
+    for (int j = 0, yp = 0; j < height; j++) {
+      int uvp = frameSize + (j >> 1) * width;
+      int u = 0;
+      int v = 0;
+      for (int i = 0; i < width; i++, yp++) {
+        final int y = 0xff & input[yp];
+        if ((i & 1) == 0) {
+          v = 0xff & input[uvp++];
+          u = 0xff & input[uvp++];
+        }
+        output[yp] = ImageUtils.YUV2RGB(y, u, v);
+      }
+    }
+  }
+
+  private byte[] randomBytes(final int size) {
+    final byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,299 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Matrix;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Checks the banded, multi-target resampler against the whole-frame YUV to ARGB conversion, and
+ * that conversion against the per-pixel reference formula. Both convert through the same lookup
+ * tables, so every channel must match exactly.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class YuvResamplerTest {
+  private static final int NUM_BANDS = 4;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(NUM_BANDS - 1);
+  private final Random random = new Random(42);
+
+  /** A YUV_420_888 frame with padded rows, as Camera2 may deliver it. */
+  private static final class Frame {
+    final int width;
+    final int height;
+    final int yRowStride;
+    final int uvRowStride;
+    final int uvPixelStride;
+    final byte[] y;
+    final byte[] u;
+    final byte[] v;
+    final int[] argb;
+
+    Frame(final Random random, final int width, final int height, final int uvPixelStride) {
+      this.width = width;
+      this.height = height;
+      this.uvPixelStride = uvPixelStride;
+      // Odd paddings, so that no row starts at a multiple of the width.
+      yRowStride = width + 3;
+      uvRowStride = ((width + 1) / 2) * uvPixelStride + 5;
+      y = randomBytes(random, yRowStride * height);
+      u = randomBytes(random, uvRowStride * ((height + 1) / 2));
+      v = randomBytes(random, uvRowStride * ((height + 1) / 2));
+      argb = new int[width * height];
+      ImageUtils.convertYUV420ToARGB8888(
+          y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, argb);
+    }
+
+    int referencePixel(final int x, final int y) {
+      final int uvOffset = (y >> 1) * uvRowStride + (x >> 1) * uvPixelStride;
+      return ImageUtils.YUV2RGB(
+          0xff & this.y[y * yRowStride + x], 0xff & u[uvOffset], 0xff & v[uvOffset]);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void wholeFrameConversionMatchesReferenceFormula() {
+    for (final int pixelStride : new int[] {1, 2}) {
+      final Frame frame = new Frame(random, 37, 23, pixelStride);
+      for (int y = 0; y < frame.height; ++y) {
+        for (int x = 0; x < frame.width; ++x) {
+          assertEquals(
+              "pixel " + x + "," + y, frame.referencePixel(x, y), frame.argb[y * frame.width + x]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void identityTargetMatchesConversion() {
+    for (final int pixelStride : new int[] {1, 2}) {
+      final Frame frame = new Frame(random, 61, 45, pixelStride);
+      final YuvResampler.Target target = YuvResampler.Target.uint8(frame.width, frame.height);
+      resample(frame, target);
+      assertMatches(frame, target, 1, 0, 0, 1, 0, 0);
+    }
+  }
+
+  @Test
+  public void severalScaledTargetsMatchConversionInOnePass() {
+    for (final int pixelStride : new int[] {1, 2}) {
+      final Frame frame = new Frame(random, 97, 71, pixelStride);
+      // A half-size view of the whole frame and a 1.5x zoom into its middle.
+      final YuvResampler.Target half = YuvResampler.Target.uint8(48, 35);
+      half.setInverseTransform(affine(2, 0, 0, 0, 2, 0));
+      final YuvResampler.Target zoom = YuvResampler.Target.uint8(40, 30);
+      zoom.setInverseTransform(affine(1 / 1.5f, 0, 30, 0, 1 / 1.5f, 20));
+      resample(frame, half, zoom);
+      assertMatches(frame, half, 2, 0, 0, 2, 0, 0);
+      assertMatches(frame, zoom, 1 / 1.5f, 0, 30, 1 / 1.5f, 0, 20);
+    }
+  }
+
+  @Test
+  public void rotatedTargetFromMatrixMatchesConversion() {
+    final Frame frame = new Frame(random, 64, 48, 2);
+    final YuvResampler.Target target = YuvResampler.Target.uint8(48, 64);
+    target.setTransform(ImageUtils.getTransformationMatrix(64, 48, 48, 64, 90, false));
+    resample(frame, target);
+
+    // A quarter turn clockwise: target (x, y) shows frame (y, height - 1 - x).
+    final ByteBuffer out = target.getBuffer();
+    for (int y = 0; y < target.getHeight(); ++y) {
+      for (int x = 0; x < target.getWidth(); ++x) {
+        final int expected = frame.argb[(frame.height - 1 - x) * frame.width + y];
+        assertPixel(expected, out, (y * target.getWidth() + x) * 3, x, y);
+      }
+    }
+  }
+
+  @Test
+  public void floatTargetIsNormalizedConversion() {
+    final float mean = 127.5f;
+    final float std = 127.5f;
+    for (final int pixelStride : new int[] {1, 2}) {
+      final Frame frame = new Frame(random, 33, 27, pixelStride);
+      final YuvResampler.Target target =
+          YuvResampler.Target.float32(frame.width, frame.height, mean, std);
+      resample(frame, target);
+
+      final FloatBuffer out = target.getFloatBuffer();
+      for (int i = 0; i < frame.width * frame.height; ++i) {
+        final int argb = frame.argb[i];
+        final int[] channels = {(argb >> 16) & 0xff, (argb >> 8) & 0xff, argb & 0xff};
+        for (int c = 0; c < 3; ++c) {
+          // The channels are exact; only the float arithmetic of the normalization may differ.
+          assertEquals((channels[c] - mean) / std, out.get(i * 3 + c), 1 / std);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void pixelsOutsideFrameAreZero() {
+    final Frame frame = new Frame(random, 20, 20, 1);
+    final YuvResampler.Target target = YuvResampler.Target.uint8(10, 10);
+    // Shifted so that the right half of the target lies beyond the frame.
+    target.setInverseTransform(affine(1, 0, 15, 0, 1, 0));
+    resample(frame, target);
+
+    final ByteBuffer out = target.getBuffer();
+    for (int y = 0; y < 10; ++y) {
+      for (int x = 5; x < 10; ++x) {
+        for (int c = 0; c < 3; ++c) {
+          assertEquals(0, out.get((y * 10 + x) * 3 + c));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void nv21MatchesSemiPlanarConversion() {
+    final int width = 30;
+    final int height = 22;
+    final byte[] nv21 = randomBytes(random, ImageUtils.getYUVByteSize(width, height));
+    final int[] argb = new int[width * height];
+    ImageUtils.convertYUV420SPToARGB8888(nv21, width, height, argb);
+
+    final YuvResampler.Target target = YuvResampler.Target.uint8(width, height);
+    new YuvResampler(NUM_BANDS, executor)
+        .writeNV21(new YuvResampler.Target[] {target}, nv21, width, height);
+    final ByteBuffer out = target.getBuffer();
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        assertPixel(argb[y * width + x], out, (y * width + x) * 3, x, y);
+      }
+    }
+  }
+
+  @Test
+  public void resamplerIsReusableAcrossFrames() {
+    final YuvResampler resampler = new YuvResampler(NUM_BANDS, executor);
+    final YuvResampler.Target target = YuvResampler.Target.uint8(25, 19);
+    for (int i = 0; i < 3; ++i) {
+      final Frame frame = new Frame(random, 25, 19, 2);
+      resampler.writeYUV420(
+          new YuvResampler.Target[] {target},
+          frame.y,
+          frame.u,
+          frame.v,
+          frame.width,
+          frame.height,
+          frame.yRowStride,
+          frame.uvRowStride,
+          frame.uvPixelStride);
+      assertMatches(frame, target, 1, 0, 0, 1, 0, 0);
+    }
+  }
+
+  private void resample(final Frame frame, final YuvResampler.Target... targets) {
+    new YuvResampler(NUM_BANDS, executor)
+        .writeYUV420(
+            targets,
+            frame.y,
+            frame.u,
+            frame.v,
+            frame.width,
+            frame.height,
+            frame.yRowStride,
+            frame.uvRowStride,
+            frame.uvPixelStride);
+  }
+
+  /**
+   * Checks every pixel of a uint8 target against the converted frame sampled at the nearest pixel
+   * under the target-to-frame transform sx = scaleX * x + skewX * y + transX and likewise sy.
+   */
+  private static void assertMatches(
+      final Frame frame,
+      final YuvResampler.Target target,
+      final float scaleX,
+      final float skewX,
+      final float transX,
+      final float scaleY,
+      final float skewY,
+      final float transY) {
+    final ByteBuffer out = target.getBuffer();
+    int inside = 0;
+    for (int y = 0; y < target.getHeight(); ++y) {
+      for (int x = 0; x < target.getWidth(); ++x) {
+        final int sx = (int) Math.floor(scaleX * (x + 0.5f) + skewX * (y + 0.5f) + transX);
+        final int sy = (int) Math.floor(skewY * (x + 0.5f) + scaleY * (y + 0.5f) + transY);
+        final boolean isInside = sx >= 0 && sy >= 0 && sx < frame.width && sy < frame.height;
+        final int expected = isInside ? frame.argb[sy * frame.width + sx] : 0;
+        assertPixel(expected, out, (y * target.getWidth() + x) * 3, x, y);
+        if (isInside) {
+          ++inside;
+        }
+      }
+    }
+    assertTrue("target samples no part of the frame", inside > 0);
+  }
+
+  private static void assertPixel(
+      final int expectedArgb, final ByteBuffer out, final int index, final int x, final int y) {
+    final int[] expected = {
+      (expectedArgb >> 16) & 0xff, (expectedArgb >> 8) & 0xff, expectedArgb & 0xff
+    };
+    for (int c = 0; c < 3; ++c) {
+      final int actual = out.get(index + c) & 0xff;
+      if (actual != expected[c]) {
+        throw new AssertionError(
+            String.format(
+                "pixel %d,%d channel %d: expected %d, was %d", x, y, c, expected[c], actual));
+      }
+    }
+  }
+
+  private static float[] affine(
+      final float scaleX,
+      final float skewX,
+      final float transX,
+      final float skewY,
+      final float scaleY,
+      final float transY) {
+    final float[] values = new float[9];
+    values[Matrix.MSCALE_X] = scaleX;
+    values[Matrix.MSKEW_X] = skewX;
+    values[Matrix.MTRANS_X] = transX;
+    values[Matrix.MSKEW_Y] = skewY;
+    values[Matrix.MSCALE_Y] = scaleY;
+    values[Matrix.MTRANS_Y] = transY;
+    values[Matrix.MPERSP_2] = 1;
+    return values;
+  }
+
+  private static byte[] randomBytes(final Random random, final int size) {
+    final byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
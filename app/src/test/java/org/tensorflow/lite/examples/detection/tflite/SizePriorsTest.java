@@ -0,0 +1,75 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import org.junit.Test;
+
+public final class SizePriorsTest {
+  @Test
+  public void readsHeightAndWidthPerLabel() throws IOException {
+    final SizePriors priors =
+        read(
+            "# label,height,width\n"
+                + "person,1.70,0.50\n"
+                + "\n"
+                + "  traffic light , 0.90 , 0.35  \n"
+                + "# car,1.50,1.80\n");
+    assertEquals(1.70f, priors.getHeight("person"), 0);
+    assertEquals(0.50f, priors.getWidth("person"), 0);
+    // Labels may contain spaces; the fields around them are trimmed.
+    assertEquals(0.90f, priors.getHeight("traffic light"), 0);
+    assertEquals(0.35f, priors.getWidth("traffic light"), 0);
+  }
+
+  @Test
+  public void classWithoutLineHasNoPrior() throws IOException {
+    final SizePriors priors = read("person,1.70,0.50\n# car,1.50,1.80\n");
+    assertTrue(Float.isNaN(priors.getHeight("car")));
+    assertTrue(Float.isNaN(priors.getWidth("car")));
+    assertTrue(Float.isNaN(priors.getHeight(null)));
+  }
+
+  @Test
+  public void wrongFieldCountIsRejected() {
+    try {
+      read("person,1.70\n");
+      fail("Accepted a line without a width");
+    } catch (final IOException expected) {
+      assertTrue(expected.getMessage().contains("person,1.70"));
+    }
+  }
+
+  @Test
+  public void badNumberIsRejected() {
+    try {
+      read("person,tall,0.50\n");
+      fail("Accepted a height that is not a number");
+    } catch (final IOException expected) {
+      assertTrue(expected.getCause() instanceof NumberFormatException);
+    }
+  }
+
+  private static SizePriors read(final String text) throws IOException {
+    return SizePriors.read(new ByteArrayInputStream(text.getBytes(Charset.forName("UTF-8"))));
+  }
+}
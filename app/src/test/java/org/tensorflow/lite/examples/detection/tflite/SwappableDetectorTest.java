@@ -0,0 +1,209 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class SwappableDetectorTest {
+  private static final DetectorManifest FIRST = manifest("first");
+  private static final DetectorManifest SECOND = manifest("second");
+  private static final DetectorManifest THIRD = manifest("third");
+
+  /** Records what the detector does with the models it manages. */
+  private static final class FakeClassifier implements Classifier {
+    final LabelTable labels;
+    int recognitions;
+    int numThreads = -1;
+    Boolean useNNAPI;
+    boolean closed;
+
+    FakeClassifier(final LabelTable labels) {
+      this.labels = labels;
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(final Bitmap bitmap) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void recognizeImage(final Bitmap bitmap, final Detections results) {
+      ++recognitions;
+    }
+
+    @Override
+    public void recognizeImage(final ByteBuffer input, final Detections results) {
+      ++recognitions;
+    }
+
+    @Override
+    public LabelTable getLabels() {
+      return labels;
+    }
+
+    @Override
+    public void enableStatLogging(final boolean debug) {}
+
+    @Override
+    public String getStatString() {
+      return "";
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public void setNumThreads(final int numThreads) {
+      this.numThreads = numThreads;
+    }
+
+    @Override
+    public void setUseNNAPI(final boolean isChecked) {
+      useNNAPI = isChecked;
+    }
+  }
+
+  private final Map<String, FakeClassifier> created = new HashMap<String, FakeClassifier>();
+  private final Queue<Runnable> loads = new ArrayDeque<Runnable>();
+  private final Executor loader =
+      new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+          loads.add(command);
+        }
+      };
+  private SwappableDetector detector;
+
+  @Before
+  public void setUp() throws IOException {
+    final LabelTable labels = LabelTable.read(new ByteArrayInputStream("a\nb\n".getBytes("UTF-8")));
+    // Replaces the TFLite engine for the rest of this test run; unit tests load no real models.
+    DetectorRegistry.registerEngine(
+        DetectorManifest.OutputLayout.SSD_POSTPROCESSED,
+        new DetectorRegistry.Engine() {
+          @Override
+          public Classifier create(
+              final AssetManager assetManager,
+              final ModelCache modelCache,
+              final DetectorManifest manifest) {
+            final FakeClassifier classifier = new FakeClassifier(labels);
+            created.put(manifest.getName(), classifier);
+            return classifier;
+          }
+        });
+    detector = SwappableDetector.create(null, null, FIRST);
+  }
+
+  @Test
+  public void createLoadsAndWarmsUpInitialModel() {
+    assertSame(FIRST, detector.getManifest());
+    assertEquals(1, created.get("first").recognitions);
+  }
+
+  @Test
+  public void cutOverWithoutLoadedModelKeepsCurrent() {
+    detector.swapTo(SECOND, loader);
+    assertNull(detector.cutOverIfReady());
+    assertSame(FIRST, detector.getManifest());
+  }
+
+  @Test
+  public void cutOverHandsBackReplacedModelWithoutClosingIt() {
+    detector.swapTo(SECOND, loader);
+    runLoads();
+    final Classifier replaced = detector.cutOverIfReady();
+
+    assertSame(created.get("first"), replaced);
+    assertFalse(created.get("first").closed);
+    assertSame(SECOND, detector.getManifest());
+    assertEquals(1, created.get("second").recognitions);
+    assertNull(detector.cutOverIfReady());
+  }
+
+  @Test
+  public void settingsCarryOverToNewModel() {
+    detector.setNumThreads(2);
+    detector.setUseNNAPI(true);
+    detector.swapTo(SECOND, loader);
+    runLoads();
+    detector.cutOverIfReady();
+
+    assertEquals(2, created.get("second").numThreads);
+    assertEquals(Boolean.TRUE, created.get("second").useNNAPI);
+  }
+
+  @Test
+  public void laterRequestSupersedesEarlierOne() {
+    detector.swapTo(SECOND, loader);
+    detector.swapTo(THIRD, loader);
+    runLoads();
+
+    assertFalse(created.containsKey("second"));
+    detector.cutOverIfReady();
+    assertSame(THIRD, detector.getManifest());
+  }
+
+  @Test
+  public void closeClosesCurrentAndLoadedModels() {
+    detector.swapTo(SECOND, loader);
+    runLoads();
+    detector.close();
+
+    assertTrue(created.get("first").closed);
+    assertTrue(created.get("second").closed);
+  }
+
+  private void runLoads() {
+    for (Runnable load = loads.poll(); load != null; load = loads.poll()) {
+      load.run();
+    }
+  }
+
+  private static DetectorManifest manifest(final String name) {
+    return new DetectorManifest(
+        name,
+        name + ".tflite",
+        "labels.txt",
+        8,
+        true,
+        DetectorManifest.OutputLayout.SSD_POSTPROCESSED,
+        10,
+        0);
+  }
+}
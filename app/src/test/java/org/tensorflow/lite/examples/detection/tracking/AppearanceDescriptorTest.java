@@ -0,0 +1,134 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.RectF;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.tensorflow.lite.examples.detection.env.LumaPyramid;
+
+@RunWith(RobolectricTestRunner.class)
+public final class AppearanceDescriptorTest {
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 240;
+  private static final int LENGTH = AppearanceDescriptor.LENGTH;
+  // The tracker's threshold for a new detection to be a lost track reappearing.
+  private static final float MAX_REIDENTIFY_DISTANCE = 0.2f;
+  private static final RectF BOX = new RectF(100, 60, 200, 160);
+
+  private final byte[] luma = new byte[WIDTH * HEIGHT];
+  private final LumaPyramid pyramid = new LumaPyramid(WIDTH, HEIGHT, 3);
+  private final float[] a = new float[LENGTH];
+  private final float[] b = new float[LENGTH];
+
+  @Before
+  public void setUp() {
+    new Random(3).nextBytes(luma);
+  }
+
+  @Test
+  public void sameViewIsIdentical() {
+    paintGradient(BOX, false, 0);
+    describe(BOX, a);
+    describe(BOX, b);
+    assertEquals(0, AppearanceDescriptor.distance(a, 0, b, 0), 1e-6f);
+  }
+
+  @Test
+  public void slightlyShiftedBoxStaysWithinThreshold() {
+    paintGradient(BOX, false, 0);
+    describe(BOX, a);
+    describe(new RectF(104, 56, 204, 156), b);
+    assertTrue(AppearanceDescriptor.distance(a, 0, b, 0) < MAX_REIDENTIFY_DISTANCE);
+  }
+
+  @Test
+  public void differentLayoutIsBeyondThreshold() {
+    paintGradient(BOX, false, 0);
+    describe(BOX, a);
+    // Same brightness histogram, mirrored layout.
+    paintGradient(BOX, true, 0);
+    describe(BOX, b);
+    assertTrue(AppearanceDescriptor.distance(a, 0, b, 0) > MAX_REIDENTIFY_DISTANCE);
+  }
+
+  @Test
+  public void layoutIgnoresExposure() {
+    paintGradient(BOX, false, 0);
+    describe(BOX, a);
+    paintGradient(BOX, false, 60);
+    describe(BOX, b);
+    for (int i = LENGTH / 2; i < LENGTH; ++i) {
+      assertEquals(a[i], b[i], 1e-3f);
+    }
+    // Only the histogram, half of the distance, sees the brighter view.
+    final float distance = AppearanceDescriptor.distance(a, 0, b, 0);
+    assertTrue(distance > 0);
+    assertTrue(distance <= 0.5f);
+  }
+
+  @Test
+  public void distanceIsSymmetric() {
+    paintGradient(BOX, false, 0);
+    describe(BOX, a);
+    describe(new RectF(20, 20, 90, 120), b);
+    assertEquals(
+        AppearanceDescriptor.distance(a, 0, b, 0),
+        AppearanceDescriptor.distance(b, 0, a, 0),
+        1e-6f);
+  }
+
+  @Test
+  public void tinyBoxIsNotDescribed() {
+    pyramid.build(luma, WIDTH);
+    final float[] out = new float[LENGTH];
+    out[0] = 7;
+    assertFalse(AppearanceDescriptor.compute(pyramid, new RectF(10, 10, 12, 12), out, 0));
+    assertEquals(7, out[0], 0);
+  }
+
+  @Test
+  public void blendMovesPartOfTheWay() {
+    final float[] stored = new float[LENGTH];
+    final float[] latest = new float[LENGTH];
+    latest[3] = 1;
+    AppearanceDescriptor.blend(stored, 0, latest, 0, 0.3f);
+    assertEquals(0.3f, stored[3], 1e-6f);
+    assertEquals(0, stored[4], 0);
+  }
+
+  /** Paints a horizontal brightness ramp over the box, leaving noise around it. */
+  private void paintGradient(final RectF box, final boolean mirrored, final int offset) {
+    final int width = (int) box.width();
+    for (int y = (int) box.top; y < (int) box.bottom; ++y) {
+      for (int x = 0; x < width; ++x) {
+        final int ramp = (mirrored ? width - 1 - x : x) * 180 / width;
+        luma[y * WIDTH + (int) box.left + x] = (byte) (ramp + offset);
+      }
+    }
+  }
+
+  private void describe(final RectF box, final float[] out) {
+    pyramid.build(luma, WIDTH);
+    assertTrue(AppearanceDescriptor.compute(pyramid, box, out, 0));
+  }
+}
@@ -0,0 +1,187 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.RectF;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.tensorflow.lite.examples.detection.env.CameraIntrinsics;
+
+@RunWith(RobolectricTestRunner.class)
+public final class GyroMotionCompensatorTest {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final CameraIntrinsics INTRINSICS =
+      CameraIntrinsics.fromViewAngle(WIDTH, HEIGHT, 60);
+  private static final long MS = 1000000L;
+  // Pixels; the homography is computed in floats.
+  private static final float TOLERANCE = 0.05f;
+
+  /** Samples of a constant rate about the device's y axis every 5 ms for 100 ms from time 0. */
+  private static ReplayGyroSource steadyYaw(final float rate) {
+    return steady(0, rate, 0);
+  }
+
+  private static ReplayGyroSource steady(final float x, final float y, final float z) {
+    final int count = 21;
+    final long[] timestamps = new long[count];
+    final float[][] rates = new float[count][];
+    for (int i = 0; i < count; ++i) {
+      timestamps[i] = i * 5 * MS;
+      rates[i] = new float[] {x, y, z};
+    }
+    return new ReplayGyroSource(timestamps, rates);
+  }
+
+  private static GyroMotionCompensator compensator(
+      final int sensorOrientation, final GyroSource source) {
+    final GyroMotionCompensator compensator =
+        new GyroMotionCompensator(INTRINSICS, sensorOrientation);
+    assertTrue(source.start(compensator));
+    return compensator;
+  }
+
+  private static float[] map(final float[] h, final float x, final float y) {
+    final float w = h[6] * x + h[7] * y + h[8];
+    return new float[] {
+      (h[0] * x + h[1] * y + h[2]) / w, (h[3] * x + h[4] * y + h[5]) / w
+    };
+  }
+
+  @Test
+  public void noRotationIsIdentity() {
+    final float[] h = new float[9];
+    assertTrue(compensator(90, steadyYaw(0)).getHomography(10 * MS, 90 * MS, h));
+    for (int i = 0; i < 9; ++i) {
+      // The translations are differences of terms of the order of the frame size.
+      assertEquals(i % 4 == 0 ? 1 : 0, h[i], i % 3 == 2 ? 1e-4f : 1e-6f);
+    }
+  }
+
+  @Test
+  public void yawShiftsCenteredBoxByFocalLengthTimesTangent() {
+    // Turning the phone left about its vertical axis moves the scene right in an upright frame.
+    final float rate = 0.5f;
+    final long from = 20 * MS;
+    final long to = 80 * MS;
+    final double angle = rate * (to - from) / 1e9;
+    final float shift = (float) (INTRINSICS.getFocalLength() * Math.tan(angle));
+
+    final float[] h = new float[9];
+    assertTrue(compensator(0, steadyYaw(rate)).getHomography(from, to, h));
+    final RectF box = new RectF(300, 220, 340, 260);
+    GyroMotionCompensator.mapRect(h, box);
+    assertEquals(320 + shift, box.centerX(), TOLERANCE);
+    assertEquals(240, box.centerY(), TOLERANCE);
+  }
+
+  @Test
+  public void yawMapsOffCenterPointsThroughTheirViewingAngle() {
+    final float rate = -1.5f;
+    final double angle = rate * 0.1;
+    final float f = INTRINSICS.getFocalLength();
+    final float[] h = new float[9];
+    assertTrue(compensator(0, steadyYaw(rate)).getHomography(0, 100 * MS, h));
+    for (final float x : new float[] {40, 200, 500, 620}) {
+      final double ray = Math.atan((x - INTRINSICS.getCenterX()) / f);
+      final float expected = (float) (INTRINSICS.getCenterX() + f * Math.tan(ray + angle));
+      assertEquals(expected, map(h, x, INTRINSICS.getCenterY())[0], TOLERANCE);
+    }
+  }
+
+  @Test
+  public void sensorOrientationTurnsTheShift() {
+    // With the usual back camera mounted at 90 degrees, the device's horizontal is the frame's
+    // vertical, so the same left turn moves the scene up the frame.
+    final float rate = 0.5f;
+    final float shift = (float) (INTRINSICS.getFocalLength() * Math.tan(rate * 0.06));
+    final float[] h = new float[9];
+    assertTrue(compensator(90, steadyYaw(rate)).getHomography(20 * MS, 80 * MS, h));
+    final float[] center = map(h, INTRINSICS.getCenterX(), INTRINSICS.getCenterY());
+    assertEquals(INTRINSICS.getCenterX(), center[0], TOLERANCE);
+    assertEquals(INTRINSICS.getCenterY() - shift, center[1], TOLERANCE);
+  }
+
+  @Test
+  public void pitchShiftsVertically() {
+    // Tilting the top of the phone back looks up, moving the scene down the frame.
+    final float rate = 0.8f;
+    final float shift = (float) (INTRINSICS.getFocalLength() * Math.tan(rate * 0.05));
+    final float[] h = new float[9];
+    assertTrue(compensator(0, steady(rate, 0, 0)).getHomography(30 * MS, 80 * MS, h));
+    final float[] center = map(h, INTRINSICS.getCenterX(), INTRINSICS.getCenterY());
+    assertEquals(INTRINSICS.getCenterX(), center[0], TOLERANCE);
+    assertEquals(INTRINSICS.getCenterY() + shift, center[1], TOLERANCE);
+  }
+
+  @Test
+  public void integratesChangingRatesBetweenSamples() {
+    // Turning one way and then back by the same angle ends where it started.
+    final ReplayGyroSource source =
+        new ReplayGyroSource(
+            new long[] {0, 40 * MS, 80 * MS},
+            new float[][] {{0, 1, 0}, {0, -1, 0}, {0, 0, 0}});
+    final float[] h = new float[9];
+    assertTrue(compensator(0, source).getHomography(0, 80 * MS, h));
+    final float[] center = map(h, INTRINSICS.getCenterX(), INTRINSICS.getCenterY());
+    assertEquals(INTRINSICS.getCenterX(), center[0], TOLERANCE);
+    assertEquals(INTRINSICS.getCenterY(), center[1], TOLERANCE);
+
+    // Halfway through, only the first turn counts.
+    final float shift = (float) (INTRINSICS.getFocalLength() * Math.tan(0.04));
+    assertTrue(compensator(0, source).getHomography(0, 40 * MS, h));
+    assertEquals(
+        INTRINSICS.getCenterX() + shift,
+        map(h, INTRINSICS.getCenterX(), INTRINSICS.getCenterY())[0],
+        TOLERANCE);
+  }
+
+  @Test
+  public void rollTurnsBoxesAroundTheCenter() {
+    // A rotation about the view direction keeps the center in place.
+    final float[] h = new float[9];
+    assertTrue(compensator(0, steady(0, 0, 2)).getHomography(0, 50 * MS, h));
+    final float[] center = map(h, INTRINSICS.getCenterX(), INTRINSICS.getCenterY());
+    assertEquals(INTRINSICS.getCenterX(), center[0], TOLERANCE);
+    assertEquals(INTRINSICS.getCenterY(), center[1], TOLERANCE);
+    final float[] corner = map(h, 0, 0);
+    final float radius = (float) Math.hypot(INTRINSICS.getCenterX(), INTRINSICS.getCenterY());
+    assertEquals(
+        radius,
+        (float) Math.hypot(corner[0] - center[0], corner[1] - center[1]),
+        TOLERANCE * 10);
+  }
+
+  @Test
+  public void refusesIntervalsTheSamplesDoNotCover() {
+    final float[] h = new float[9];
+    assertFalse(new GyroMotionCompensator(INTRINSICS, 90).getHomography(0, 10 * MS, h));
+
+    final GyroMotionCompensator compensator = compensator(90, steadyYaw(1));
+    // Before the first sample.
+    assertFalse(compensator.getHomography(-10 * MS, 10 * MS, h));
+    // Backwards.
+    assertFalse(compensator.getHomography(50 * MS, 40 * MS, h));
+    // Too far past the newest sample to extrapolate.
+    assertFalse(compensator.getHomography(50 * MS, 200 * MS, h));
+    // Shortly past it is fine.
+    assertTrue(compensator.getHomography(50 * MS, 140 * MS, h));
+  }
+}
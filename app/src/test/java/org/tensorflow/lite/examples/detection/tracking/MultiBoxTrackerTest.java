@@ -0,0 +1,222 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.RectF;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.tensorflow.lite.examples.detection.env.LumaPyramidPool;
+import org.tensorflow.lite.examples.detection.tflite.Detections;
+import org.tensorflow.lite.examples.detection.tflite.LabelTable;
+
+@RunWith(RobolectricTestRunner.class)
+public final class MultiBoxTrackerTest {
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 240;
+  // How many frames the tracker remembers a lost track for.
+  private static final int GALLERY_MAX_AGE = 150;
+  private static final float[] BOX = {100, 60, 200, 160};
+  // A crowd of boxes on a grid, each overlapping its neighbours a little.
+  private static final int CROWD_PITCH = 16;
+  private static final int CROWD_COLUMNS = WIDTH / CROWD_PITCH;
+  private static final int CROWD_ROWS = HEIGHT / CROWD_PITCH;
+  private static final int CROWD_SIZE = CROWD_COLUMNS * CROWD_ROWS;
+
+  private final LumaPyramidPool pool = new LumaPyramidPool(WIDTH, HEIGHT, 3, 1, null);
+  private final byte[] luma = new byte[WIDTH * HEIGHT];
+  private LabelTable labels;
+  private MultiBoxTracker tracker;
+  private long timestamp;
+
+  @Before
+  public void setUp() throws IOException {
+    labels = LabelTable.read(new ByteArrayInputStream("person\n".getBytes("UTF-8")));
+    tracker = new MultiBoxTracker(RuntimeEnvironment.application);
+    tracker.setFrameConfiguration(WIDTH, HEIGHT, 90);
+    new Random(11).nextBytes(luma);
+    paintObject(false);
+    nextFrame();
+  }
+
+  @Test
+  public void detectionsStartTracksWithFreshIds() {
+    detect(BOX, new float[] {10, 10, 60, 60});
+    assertEquals(2, ids().size());
+    assertTrue(ids().contains(0L));
+    assertTrue(ids().contains(1L));
+  }
+
+  @Test
+  public void reappearingObjectKeepsItsId() {
+    detect(BOX);
+    assertEquals(0L, (long) ids().get(0));
+
+    // Hidden behind something for a few frames.
+    detect();
+    assertTrue(ids().isEmpty());
+    assertTrue(tracker.isLost(0));
+    nextFrame();
+    nextFrame();
+
+    detect(BOX);
+    assertEquals(1, ids().size());
+    assertEquals(0L, (long) ids().get(0));
+    assertFalse(tracker.isLost(0));
+  }
+
+  @Test
+  public void newcomerGetsFreshId() {
+    detect(BOX);
+    detect();
+
+    // Something that looks different steps into the same spot.
+    paintObject(true);
+    nextFrame();
+    detect(BOX);
+    assertEquals(1, ids().size());
+    assertEquals(1L, (long) ids().get(0));
+    assertTrue(tracker.isLost(0));
+  }
+
+  @Test
+  public void lostTrackIsForgottenAfterMaxAge() {
+    detect(BOX);
+    detect();
+    for (int i = 1; i < GALLERY_MAX_AGE; ++i) {
+      nextFrame();
+    }
+    assertTrue(tracker.isLost(0));
+    nextFrame();
+    assertFalse(tracker.isLost(0));
+
+    detect(BOX);
+    assertEquals(1L, (long) ids().get(0));
+  }
+
+  @Test
+  public void crowdKeepsItsIdsAndClasses() throws IOException {
+    labels = LabelTable.read(new ByteArrayInputStream("person\ncar\n".getBytes("UTF-8")));
+    detectCrowd(0, false);
+    final Map<String, Long> before = crowdIds();
+    assertEquals(CROWD_SIZE, before.size());
+
+    // The crowd shifts a little, and every box is also seen as the other class.
+    detectCrowd(1, true);
+    final Map<String, Long> after = crowdIds();
+    assertEquals(2 * CROWD_SIZE, after.size());
+    final Set<Long> newIds = new HashSet<Long>();
+    for (final Map.Entry<String, Long> entry : after.entrySet()) {
+      final Long previous = before.get(entry.getKey());
+      if (previous != null) {
+        assertEquals(entry.getKey(), previous, entry.getValue());
+      } else {
+        assertTrue(entry.getKey(), entry.getValue() >= CROWD_SIZE);
+        newIds.add(entry.getValue());
+      }
+    }
+    assertEquals(CROWD_SIZE, newIds.size());
+  }
+
+  /** Paints a horizontal brightness ramp over BOX, leaving noise around it. */
+  private void paintObject(final boolean mirrored) {
+    final int left = (int) BOX[0];
+    final int width = (int) (BOX[2] - BOX[0]);
+    for (int y = (int) BOX[1]; y < (int) BOX[3]; ++y) {
+      for (int x = 0; x < width; ++x) {
+        luma[y * WIDTH + left + x] = (byte) ((mirrored ? width - 1 - x : x) * 200 / width);
+      }
+    }
+  }
+
+  /** Detects the boxes on the current frame and moves on to the next one, which takes them over. */
+  private void detect(final float[]... boxes) {
+    final Detections results = new Detections(labels, boxes.length);
+    for (final float[] box : boxes) {
+      results.add(0, 0.8f, box[0], box[1], box[2], box[3]);
+    }
+    tracker.trackResults(results, timestamp);
+    nextFrame();
+  }
+
+  /**
+   * Detects a box 18 px wide in every grid cell, offset by shift, classed alternately; with both,
+   * each box is detected as either class.
+   */
+  private void detectCrowd(final float shift, final boolean both) {
+    final Detections results = new Detections(labels, 2 * CROWD_SIZE);
+    for (int row = 0; row < CROWD_ROWS; ++row) {
+      for (int column = 0; column < CROWD_COLUMNS; ++column) {
+        final float left = column * CROWD_PITCH + shift;
+        final float top = row * CROWD_PITCH + shift;
+        final int label = (row + column) % 2;
+        results.add(label, 0.8f, left, top, left + 18, top + 18);
+        if (both) {
+          results.add(1 - label, 0.8f, left, top, left + 18, top + 18);
+        }
+      }
+    }
+    tracker.trackResults(results, timestamp);
+    nextFrame();
+  }
+
+  private void nextFrame() {
+    final LumaPyramidPool.Frame frame = pool.build(luma, WIDTH, ++timestamp);
+    tracker.onFrame(frame, timestamp * 33000000L);
+    frame.release();
+  }
+
+  private List<Long> ids() {
+    final List<Long> ids = new ArrayList<Long>();
+    tracker.getTracks(
+        new MultiBoxTracker.TrackVisitor() {
+          @Override
+          public void visit(final long id, final String title, final RectF location) {
+            ids.add(id);
+          }
+        });
+    return ids;
+  }
+
+  /** The ids of the tracks by class and the grid cell they are in. */
+  private Map<String, Long> crowdIds() {
+    final Map<String, Long> ids = new HashMap<String, Long>();
+    tracker.getTracks(
+        new MultiBoxTracker.TrackVisitor() {
+          @Override
+          public void visit(final long id, final String title, final RectF location) {
+            final int column = Math.round(location.left / CROWD_PITCH);
+            final int row = Math.round(location.top / CROWD_PITCH);
+            assertEquals(null, ids.put(title + " " + column + "," + row, id));
+          }
+        });
+    return ids;
+  }
+}
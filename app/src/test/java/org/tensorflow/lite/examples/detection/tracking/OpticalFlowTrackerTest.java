@@ -0,0 +1,213 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.RectF;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.tensorflow.lite.examples.detection.env.LumaPyramidPool;
+
+/**
+ * Moves a box between two views of a smooth synthetic texture, the second shifted and scaled by a
+ * known amount, and checks the recovered box against the true one.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class OpticalFlowTrackerTest {
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 240;
+  private static final int LEVELS = 4;
+  // The texture extends one frame beyond each edge, so views may be shifted and scaled that far.
+  private static final int TEXTURE_WIDTH = 3 * WIDTH;
+  private static final int TEXTURE_HEIGHT = 3 * HEIGHT;
+  // Overlapping rectangles of random brightness give corners at every pyramid level.
+  private static final int NUM_RECTANGLES = 1500;
+  private static final int MIN_RECTANGLE_SIZE = 4;
+  private static final int MAX_RECTANGLE_SIZE = 64;
+
+  private final LumaPyramidPool pool = new LumaPyramidPool(WIDTH, HEIGHT, LEVELS, 1, null);
+  private final OpticalFlowTracker tracker = new OpticalFlowTracker();
+  private final float[] texture = randomTexture(new Random(5));
+  private final byte[] luma = new byte[WIDTH * HEIGHT];
+
+  @After
+  public void tearDown() {
+    tracker.clear();
+  }
+
+  @Test
+  public void recoversShiftAndScale() {
+    // Off the frame center the scaling also moves the box, by 0.08 of its offset.
+    final RectF box = new RectF(60, 50, 160, 130);
+    addView(0, 0, 1, 1);
+    addView(25, 10, 1.08f, 2);
+
+    assertTrue(tracker.track(1, box));
+    assertEquals(160 + 1.08f * (110 - 160) + 25, box.centerX(), 0.5f);
+    assertEquals(120 + 1.08f * (90 - 120) + 10, box.centerY(), 0.5f);
+    assertEquals(100 * 1.08f, box.width(), 1);
+    assertEquals(80 * 1.08f, box.height(), 1);
+  }
+
+  @Test
+  public void recoversScaleOfBoxTexturedOnOneSide() {
+    // All keypoints are in the left half, so their mean offset from the box center is not zero.
+    final RectF box = new RectF(60, 50, 160, 130);
+    fill(texture, new RectF(110, 40, 200, 140), 128);
+    addView(0, 0, 1, 1);
+    addView(25, 10, 1.08f, 2);
+
+    assertTrue(tracker.track(1, box));
+    assertEquals(160 + 1.08f * (110 - 160) + 25, box.centerX(), 0.5f);
+    assertEquals(120 + 1.08f * (90 - 120) + 10, box.centerY(), 0.5f);
+    assertEquals(100 * 1.08f, box.width(), 1);
+  }
+
+  @Test
+  public void followsBoxAcrossSeveralFrames() {
+    final RectF box = new RectF(110, 70, 190, 150);
+    addView(0, 0, 1, 1);
+    addView(-6, 4, 1, 2);
+    addView(-12, 8, 1, 3);
+
+    // Straight from the frame the box was found on to the newest one.
+    assertTrue(tracker.track(1, box));
+    assertEquals(150 - 12, box.centerX(), 1);
+    assertEquals(110 + 8, box.centerY(), 1);
+    assertEquals(80, box.width(), 2);
+  }
+
+  @Test
+  public void rejectsJumpBeyondCaptureRange() {
+    final RectF box = new RectF(100, 80, 200, 160);
+    addView(0, 0, 1, 1);
+    addView(110, 0, 1, 2);
+
+    assertFalse(tracker.track(1, box));
+    assertEquals(new RectF(100, 80, 200, 160), box);
+  }
+
+  @Test
+  public void rejectsUnrelatedScene() {
+    final RectF box = new RectF(100, 80, 200, 160);
+    addView(0, 0, 1, 1);
+    final float[] other = randomTexture(new Random(6));
+    render(other, 0, 0, 1);
+    addFrame(2);
+
+    assertFalse(tracker.track(1, box));
+    assertEquals(new RectF(100, 80, 200, 160), box);
+  }
+
+  @Test
+  public void frameOutOfHistoryIsNotTracked() {
+    final RectF box = new RectF(100, 80, 200, 160);
+    for (int i = 1; i <= 7; ++i) {
+      addView(0, 0, 1, i);
+    }
+    assertFalse(tracker.track(1, box));
+    assertTrue(tracker.track(2, box));
+  }
+
+  /**
+   * Adds a view of the texture in which the content around the frame center is scaled by scale
+   * and then moved by (shiftX, shiftY).
+   */
+  private void addView(
+      final float shiftX, final float shiftY, final float scale, final long timestamp) {
+    render(texture, shiftX, shiftY, scale);
+    addFrame(timestamp);
+  }
+
+  /** Passes the current luma to the tracker, which retains the frame for as long as it needs. */
+  private void addFrame(final long timestamp) {
+    final LumaPyramidPool.Frame frame = pool.build(luma, WIDTH, timestamp);
+    tracker.nextFrame(frame);
+    frame.release();
+  }
+
+  private void render(
+      final float[] texture, final float shiftX, final float shiftY, final float scale) {
+    final float centerX = WIDTH / 2f;
+    final float centerY = HEIGHT / 2f;
+    for (int y = 0; y < HEIGHT; ++y) {
+      for (int x = 0; x < WIDTH; ++x) {
+        final float u = (x - shiftX - centerX) / scale + centerX;
+        final float v = (y - shiftY - centerY) / scale + centerY;
+        luma[y * WIDTH + x] = (byte) Math.round(sampleTexture(texture, u, v));
+      }
+    }
+  }
+
+  /** Sets the part of the texture the unmoved view shows in rect to a single value. */
+  private static void fill(final float[] texture, final RectF rect, final float value) {
+    for (int y = (int) rect.top; y < rect.bottom; ++y) {
+      final int row = (y + HEIGHT) * TEXTURE_WIDTH + WIDTH;
+      Arrays.fill(texture, row + (int) rect.left, row + (int) rect.right, value);
+    }
+  }
+
+  /** Bilinearly interpolates the texture at (u, v), relative to the frame it is centered on. */
+  private static float sampleTexture(final float[] texture, final float u, final float v) {
+    final float tx = u + WIDTH;
+    final float ty = v + HEIGHT;
+    final int ix = (int) Math.floor(tx);
+    final int iy = (int) Math.floor(ty);
+    final float fx = tx - ix;
+    final float fy = ty - iy;
+    final int i = iy * TEXTURE_WIDTH + ix;
+    return (1 - fx) * (1 - fy) * texture[i]
+        + fx * (1 - fy) * texture[i + 1]
+        + (1 - fx) * fy * texture[i + TEXTURE_WIDTH]
+        + fx * fy * texture[i + TEXTURE_WIDTH + 1];
+  }
+
+  /** Paints random rectangles and softens their edges with a 3x3 box blur. */
+  private static float[] randomTexture(final Random random) {
+    final float[] painted = new float[TEXTURE_WIDTH * TEXTURE_HEIGHT];
+    for (int r = 0; r < NUM_RECTANGLES; ++r) {
+      final int size = MAX_RECTANGLE_SIZE - MIN_RECTANGLE_SIZE;
+      final int width = MIN_RECTANGLE_SIZE + random.nextInt(size);
+      final int height = MIN_RECTANGLE_SIZE + random.nextInt(size);
+      final int left = random.nextInt(TEXTURE_WIDTH - width);
+      final int top = random.nextInt(TEXTURE_HEIGHT - height);
+      final float value = 20 + random.nextInt(216);
+      for (int y = top; y < top + height; ++y) {
+        Arrays.fill(painted, y * TEXTURE_WIDTH + left, y * TEXTURE_WIDTH + left + width, value);
+      }
+    }
+    final float[] texture = new float[painted.length];
+    for (int y = 1; y < TEXTURE_HEIGHT - 1; ++y) {
+      for (int x = 1; x < TEXTURE_WIDTH - 1; ++x) {
+        float sum = 0;
+        for (int dy = -1; dy <= 1; ++dy) {
+          for (int dx = -1; dx <= 1; ++dx) {
+            sum += painted[(y + dy) * TEXTURE_WIDTH + x + dx];
+          }
+        }
+        texture[y * TEXTURE_WIDTH + x] = sum / 9;
+      }
+    }
+    return texture;
+  }
+}
@@ -0,0 +1,49 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+/**
+ * Replays recorded gyroscope readings. All samples are delivered at once, on the thread calling
+ * {@link #start(Listener)}; consumers look samples up by timestamp, so they need not arrive in real
+ * time.
+ */
+final class ReplayGyroSource implements GyroSource {
+  private final long[] timestampsNs;
+  private final float[][] rates;
+
+  /**
+   * @param timestampsNs Sample times in increasing order, in nanoseconds.
+   * @param rates For each sample, the {x, y, z} rates of rotation in radians per second.
+   */
+  ReplayGyroSource(final long[] timestampsNs, final float[][] rates) {
+    if (timestampsNs.length != rates.length) {
+      throw new IllegalArgumentException(
+          timestampsNs.length + " timestamps for " + rates.length + " samples");
+    }
+    this.timestampsNs = timestampsNs;
+    this.rates = rates;
+  }
+
+  @Override
+  public boolean start(final Listener listener) {
+    for (int i = 0; i < timestampsNs.length; ++i) {
+      listener.onGyroSample(timestampsNs[i], rates[i][0], rates[i][1], rates[i][2]);
+    }
+    return timestampsNs.length > 0;
+  }
+
+  @Override
+  public void stop() {}
+}
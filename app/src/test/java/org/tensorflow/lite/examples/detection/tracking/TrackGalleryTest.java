@@ -0,0 +1,109 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class TrackGalleryTest {
+  private static final long MAX_AGE = 10;
+  private static final float MAX_DISTANCE = 0.2f;
+  private static final float AREA = 100;
+
+  private final TrackGallery gallery = new TrackGallery(2, MAX_AGE, MAX_DISTANCE);
+
+  @Test
+  public void matchesLookalikeOfSameClass() {
+    add(1, "person", 0, 0);
+    add(2, "person", 5, 0);
+    assertEquals(2, gallery.getId(match("person", AREA, 5, 1)));
+    assertEquals(-1, match("dog", AREA, 5, 1));
+  }
+
+  @Test
+  public void skipsDescriptorsFurtherThanMaxDistance() {
+    add(1, "person", 0, 0);
+    // Same layout, but half of the brightness histogram moved to another bin.
+    final float[] descriptor = descriptor(0);
+    descriptor[0] = 0.5f;
+    descriptor[1] = 0.5f;
+    assertEquals(0.25f, AppearanceDescriptor.distance(descriptor(0), 0, descriptor, 0), 1e-6f);
+    assertEquals(-1, gallery.match("person", AREA, descriptor, 0, 1));
+
+    descriptor[0] = 0.7f;
+    descriptor[1] = 0.3f;
+    assertEquals(1, gallery.getId(gallery.match("person", AREA, descriptor, 0, 1)));
+  }
+
+  @Test
+  public void skipsMuchLargerOrSmallerBoxes() {
+    add(1, "person", 0, 0);
+    assertEquals(-1, match("person", 4.5f * AREA, 0, 1));
+    assertEquals(-1, match("person", AREA / 4.5f, 0, 1));
+    assertEquals(1, gallery.getId(match("person", 3 * AREA, 0, 1)));
+  }
+
+  @Test
+  public void evictsTrackLostLongestAgoWhenFull() {
+    add(1, "person", 0, 0);
+    add(2, "person", 1, 2);
+    add(3, "person", 2, 4);
+    assertEquals(2, gallery.size());
+    assertFalse(gallery.contains(1, 4));
+    assertTrue(gallery.contains(2, 4));
+    assertTrue(gallery.contains(3, 4));
+    assertEquals(-1, match("person", AREA, 0, 4));
+  }
+
+  @Test
+  public void forgetsTracksAfterMaxAge() {
+    add(1, "person", 0, 0);
+    assertTrue(gallery.contains(1, MAX_AGE));
+    assertFalse(gallery.contains(1, MAX_AGE + 1));
+    assertEquals(-1, match("person", AREA, 0, MAX_AGE + 1));
+    assertEquals(0, gallery.size());
+  }
+
+  @Test
+  public void removedTrackIsNoLongerContained() {
+    add(1, "person", 0, 0);
+    final int entry = match("person", AREA, 0, 1);
+    gallery.remove(entry);
+    assertFalse(gallery.contains(1, 1));
+    assertEquals(0, gallery.size());
+  }
+
+  private void add(final long id, final String title, final int bin, final long frame) {
+    gallery.add(id, 0, title, AREA, descriptor(bin), 0, frame);
+  }
+
+  private int match(final String title, final float area, final int bin, final long frame) {
+    return gallery.match(title, area, descriptor(bin), 0, frame);
+  }
+
+  /** Returns a descriptor with all brightness in one histogram bin and a fixed layout. */
+  private static float[] descriptor(final int bin) {
+    final float[] descriptor = new float[AppearanceDescriptor.LENGTH];
+    descriptor[bin] = 1;
+    descriptor[AppearanceDescriptor.LENGTH - 1] = 1;
+    return descriptor;
+  }
+}
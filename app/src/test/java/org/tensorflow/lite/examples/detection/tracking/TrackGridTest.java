@@ -0,0 +1,140 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.RectF;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class TrackGridTest {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final String[] TITLES = {"person", "car", null};
+  private static final float MIN_IOU = 0.3f;
+
+  private final Random random = new Random(5);
+  private final TrackTable tracks = new TrackTable();
+  private final TrackGrid grid = new TrackGrid();
+  private final RectF box = new RectF();
+
+  @Test
+  public void matchesFullScan() {
+    for (int round = 0; round < 20; ++round) {
+      tracks.clear();
+      for (int i = 0; i < 300; ++i) {
+        final int slot = tracks.add();
+        randomBox(box);
+        tracks.setLocation(slot, box);
+        tracks.titles[slot] = TITLES[random.nextInt(TITLES.length)];
+      }
+      // Freed slots, and a few boxes partly off the frame.
+      for (int i = 0; i < 30; ++i) {
+        final int slot = random.nextInt(tracks.getSlotCount());
+        if (tracks.live[slot]) {
+          tracks.remove(slot);
+        }
+      }
+      for (int i = 0; i < 10; ++i) {
+        tracks.left[i] -= WIDTH / 4;
+        tracks.bottom[i] += HEIGHT / 4;
+      }
+
+      final boolean[] claimed = new boolean[tracks.live.length];
+      grid.build(tracks, tracks.getSlotCount(), WIDTH, HEIGHT);
+      for (int i = 0; i < 300; ++i) {
+        // Half the boxes near a track, so most find a match.
+        if (i % 2 == 0) {
+          tracks.getLocation(random.nextInt(tracks.getSlotCount()), box);
+          box.offset(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10);
+        } else {
+          randomBox(box);
+        }
+        final String title = TITLES[random.nextInt(TITLES.length)];
+        final int expected = fullScan(box, title, claimed);
+        assertEquals(expected, grid.bestMatch(tracks, box, title, claimed, MIN_IOU));
+        if (expected >= 0) {
+          claimed[expected] = true;
+        }
+      }
+    }
+  }
+
+  @Test
+  public void tiesGoToHighestSlot() {
+    for (int i = 0; i < 3; ++i) {
+      final int slot = tracks.add();
+      tracks.setLocation(slot, new RectF(100, 100, 200, 200));
+      tracks.titles[slot] = "person";
+    }
+    final boolean[] claimed = new boolean[tracks.live.length];
+    grid.build(tracks, tracks.getSlotCount(), WIDTH, HEIGHT);
+    final RectF detection = new RectF(110, 100, 210, 200);
+    assertEquals(2, grid.bestMatch(tracks, detection, "person", claimed, MIN_IOU));
+    claimed[2] = true;
+    assertEquals(1, grid.bestMatch(tracks, detection, "person", claimed, MIN_IOU));
+    assertEquals(-1, grid.bestMatch(tracks, detection, "car", claimed, MIN_IOU));
+  }
+
+  @Test
+  public void rebuildForgetsEarlierTracks() {
+    final int slot = tracks.add();
+    tracks.setLocation(slot, new RectF(100, 100, 200, 200));
+    tracks.titles[slot] = "person";
+    final boolean[] claimed = new boolean[tracks.live.length];
+    grid.build(tracks, tracks.getSlotCount(), WIDTH, HEIGHT);
+    final RectF detection = new RectF(100, 100, 200, 200);
+    assertEquals(slot, grid.bestMatch(tracks, detection, "person", claimed, MIN_IOU));
+
+    tracks.remove(slot);
+    grid.build(tracks, tracks.getSlotCount(), WIDTH, HEIGHT);
+    assertEquals(-1, grid.bestMatch(tracks, detection, "person", claimed, MIN_IOU));
+  }
+
+  /** The match adoptPending used to find by testing every track. */
+  private int fullScan(final RectF box, final String title, final boolean[] claimed) {
+    int best = -1;
+    float bestIou = MIN_IOU;
+    for (int slot = 0; slot < tracks.getSlotCount(); ++slot) {
+      if (!tracks.live[slot] || claimed[slot] || !equal(tracks.titles[slot], title)) {
+        continue;
+      }
+      final float iou =
+          TrackGrid.intersectionOverUnion(
+              tracks.left[slot], tracks.top[slot], tracks.right[slot], tracks.bottom[slot], box);
+      if (iou >= bestIou) {
+        best = slot;
+        bestIou = iou;
+      }
+    }
+    return best;
+  }
+
+  private void randomBox(final RectF out) {
+    final float width = 16 + random.nextFloat() * 120;
+    final float height = 16 + random.nextFloat() * 120;
+    final float left = random.nextFloat() * (WIDTH - width);
+    final float top = random.nextFloat() * (HEIGHT - height);
+    out.set(left, top, left + width, top + height);
+  }
+
+  private static boolean equal(final String a, final String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
@@ -0,0 +1,170 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public final class TrackTableTest {
+  @Test
+  public void addTakesNewSlotsInOrder() {
+    final TrackTable table = new TrackTable();
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(i, table.add());
+      assertTrue(table.live[i]);
+    }
+    assertEquals(3, table.getSlotCount());
+    assertEquals(3, table.getLiveCount());
+  }
+
+  @Test
+  public void removedSlotsAreReusedLastFirst() {
+    final TrackTable table = new TrackTable();
+    for (int i = 0; i < 5; ++i) {
+      fill(table, table.add(), i);
+    }
+    table.remove(1);
+    table.remove(3);
+    assertFalse(table.live[1]);
+    assertNull(table.titles[1]);
+    assertNull(table.labels[3]);
+    assertEquals(5, table.getSlotCount());
+    assertEquals(3, table.getLiveCount());
+
+    assertEquals(3, table.add());
+    assertEquals(1, table.add());
+    assertEquals(5, table.add());
+    assertEquals(6, table.getSlotCount());
+    assertEquals(6, table.getLiveCount());
+  }
+
+  @Test
+  public void reusedSlotStartsUndescribedAndStale() {
+    final TrackTable table = new TrackTable();
+    final int slot = table.add();
+    table.described[slot] = true;
+    table.fresh[slot] = true;
+    table.remove(slot);
+    assertEquals(slot, table.add());
+    assertFalse(table.described[slot]);
+    assertFalse(table.fresh[slot]);
+  }
+
+  @Test
+  public void growingKeepsEverySlot() {
+    final TrackTable table = new TrackTable();
+    final int initialCapacity = table.live.length;
+    final int count = 4 * initialCapacity + 3;
+    for (int i = 0; i < count; ++i) {
+      fill(table, table.add(), i);
+      table.descriptors[i * AppearanceDescriptor.LENGTH] = i;
+    }
+    assertEquals(8 * initialCapacity, table.live.length);
+    assertEquals(table.live.length * AppearanceDescriptor.LENGTH, table.descriptors.length);
+    for (int i = 0; i < count; ++i) {
+      assertFilled(table, i, i);
+      assertEquals(i, table.descriptors[i * AppearanceDescriptor.LENGTH], 0);
+    }
+    assertEquals(count, table.getLiveCount());
+  }
+
+  @Test
+  public void freeSlotsAreTakenBeforeGrowing() {
+    final TrackTable table = new TrackTable();
+    final int capacity = table.live.length;
+    for (int i = 0; i < capacity; ++i) {
+      table.add();
+    }
+    table.remove(7);
+    assertEquals(7, table.add());
+    assertEquals(capacity, table.live.length);
+    assertEquals(capacity, table.add());
+    assertEquals(2 * capacity, table.live.length);
+  }
+
+  @Test
+  public void clearEmptiesTableAndFreeList() {
+    final TrackTable table = new TrackTable();
+    for (int i = 0; i < 4; ++i) {
+      fill(table, table.add(), i);
+    }
+    table.remove(2);
+    table.clear();
+    assertEquals(0, table.getSlotCount());
+    assertEquals(0, table.getLiveCount());
+    for (int i = 0; i < 4; ++i) {
+      assertFalse(table.live[i]);
+      assertNull(table.titles[i]);
+    }
+    // The freed slot is forgotten along with the rest.
+    assertEquals(0, table.add());
+    assertEquals(1, table.add());
+  }
+
+  @Test
+  public void copyPacksLiveSlots() {
+    final TrackTable source = new TrackTable();
+    final int count = 40;
+    for (int i = 0; i < count; ++i) {
+      fill(source, source.add(), i);
+    }
+    for (int i = 0; i < count; i += 3) {
+      source.remove(i);
+    }
+
+    final TrackTable copy = new TrackTable();
+    fill(copy, copy.add(), 99);
+    copy.copyFrom(source);
+    assertEquals(source.getLiveCount(), copy.getSlotCount());
+    assertEquals(source.getLiveCount(), copy.getLiveCount());
+    int slot = 0;
+    for (int i = 0; i < count; ++i) {
+      if (i % 3 != 0) {
+        assertTrue(copy.live[slot]);
+        assertFilled(copy, slot++, i);
+      }
+    }
+  }
+
+  private static void fill(final TrackTable table, final int slot, final int value) {
+    table.left[slot] = value;
+    table.top[slot] = value + 1;
+    table.right[slot] = value + 2;
+    table.bottom[slot] = value + 3;
+    table.confidence[slot] = value / 100f;
+    table.ids[slot] = value;
+    table.frameIds[slot] = 1000 + value;
+    table.colors[slot] = value;
+    table.titles[slot] = "title " + value;
+    table.labels[slot] = "label " + value;
+  }
+
+  private static void assertFilled(final TrackTable table, final int slot, final int value) {
+    assertEquals(value, table.left[slot], 0);
+    assertEquals(value + 1, table.top[slot], 0);
+    assertEquals(value + 2, table.right[slot], 0);
+    assertEquals(value + 3, table.bottom[slot], 0);
+    assertEquals(value / 100f, table.confidence[slot], 0);
+    assertEquals(value, table.ids[slot]);
+    assertEquals(1000 + value, table.frameIds[slot]);
+    assertEquals(value, table.colors[slot]);
+    assertEquals("title " + value, table.titles[slot]);
+    assertEquals("label " + value, table.labels[slot]);
+  }
+}